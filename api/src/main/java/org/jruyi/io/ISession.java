@@ -136,4 +136,34 @@ public interface ISession {
 	 * @return the attachment that is detached
 	 */
 	public Object detach();
+
+	/**
+	 * Tests whether the outbound data pending on this session is below the
+	 * high watermark. Producers are supposed to hold back writing while this
+	 * method returns {@code false}, until
+	 * {@link ISessionListener#onWritabilityChanged(ISession, boolean)} is
+	 * called back with {@code true}.
+	 * 
+	 * @return {@code true} if this session is writable, otherwise
+	 *         {@code false}
+	 * @since 2.0
+	 */
+	public boolean isWritable();
+
+	/**
+	 * Stops reading from this session. The read in progress, if any, still
+	 * completes, but the interest in reading is not registered again until
+	 * {@link #resumeRead()} is called. As a consequence, the peer is throttled
+	 * by TCP flow control once the receive buffer of the socket fills up.
+	 * 
+	 * @since 2.0
+	 */
+	public void suspendRead();
+
+	/**
+	 * Resumes reading from this session suspended by {@link #suspendRead()}.
+	 * 
+	 * @since 2.0
+	 */
+	public void resumeRead();
 }
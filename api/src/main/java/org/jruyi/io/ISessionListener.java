@@ -87,4 +87,17 @@ public interface ISessionListener {
 	 *            the read timed out session
 	 */
 	public void onSessionReadTimedOut(ISession session);
+
+	/**
+	 * Callback method on the outbound data pending on the session going above
+	 * the high watermark or falling back to the low watermark.
+	 * 
+	 * @param session
+	 *            the session whose writability changed
+	 * @param writable
+	 *            {@code false} if the pending data went above the high
+	 *            watermark, {@code true} if it fell back to the low watermark
+	 * @since 2.0
+	 */
+	public void onWritabilityChanged(ISession session, boolean writable);
 }
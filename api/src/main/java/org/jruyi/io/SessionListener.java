@@ -74,4 +74,11 @@ public class SessionListener implements ISessionListener {
 	@Override
 	public void onSessionReadTimedOut(ISession session) {
 	}
+
+	/**
+	 * Empty implementation.
+	 */
+	@Override
+	public void onWritabilityChanged(ISession session, boolean writable) {
+	}
 }
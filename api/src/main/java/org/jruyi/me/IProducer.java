@@ -13,6 +13,8 @@
  */
 package org.jruyi.me;
 
+import java.util.Collection;
+
 /**
  * A producer is used to create messages able to be put into the message queue
  * for routing.
@@ -31,6 +33,39 @@ public interface IProducer {
 	 * 
 	 * @param message
 	 *            the message to be put into the message queue
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if the mailbox of the destination endpoint is full and
+	 *             rejects the message, which is left to the caller then
 	 */
 	public void send(IMessage message);
+
+	/**
+	 * Puts the specified {@code messages} into the message queue for routing.
+	 * The messages routed to the same endpoint are consumed one at a time in
+	 * the given order.
+	 * 
+	 * @param messages
+	 *            the messages to be put into the message queue
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if any of the messages is rejected by the full mailbox of
+	 *             its destination endpoint, after the others are put into
+	 *             the message queue and the rejected ones are closed
+	 * @since 2.0
+	 */
+	public void send(IMessage[] messages);
+
+	/**
+	 * Puts the specified {@code messages} into the message queue for routing.
+	 * The messages routed to the same endpoint are consumed one at a time in
+	 * the iteration order of the given collection.
+	 * 
+	 * @param messages
+	 *            the messages to be put into the message queue
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if any of the messages is rejected by the full mailbox of
+	 *             its destination endpoint, after the others are put into
+	 *             the message queue and the rejected ones are closed
+	 * @since 2.0
+	 */
+	public void send(Collection<? extends IMessage> messages);
 }
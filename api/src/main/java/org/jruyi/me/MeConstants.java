@@ -34,6 +34,32 @@ public final class MeConstants {
 	 * Property name of posthandler chain.
 	 */
 	public static final String EP_POSTHANDLERS = "jruyi.me.endpoint.posthandlers";
+	/**
+	 * Name of the {@code Integer} property specifying the max number of
+	 * messages waiting in the mailbox of the endpoint. The endpoint has no
+	 * mailbox if not specified.
+	 * 
+	 * @since 2.0
+	 */
+	public static final String EP_MAILBOX_CAPACITY = "jruyi.me.endpoint.mailbox.capacity";
+	/**
+	 * Name of the {@code Integer} property specifying the max number of
+	 * messages the endpoint consumes at a time if it has a mailbox. Defaults
+	 * to 1. While the message queue orders messages by an ordering key, the
+	 * endpoint consumes one message at a time instead, in the order queued.
+	 * 
+	 * @since 2.0
+	 */
+	public static final String EP_MAILBOX_MAXINFLIGHT = "jruyi.me.endpoint.mailbox.maxInflight";
+	/**
+	 * Name of the property specifying what to do with a message sent to the
+	 * endpoint when its mailbox is full, one of <i>reject</i>(default) to
+	 * reject it to the sender, <i>dropOldest</i> to drop the oldest message in
+	 * the mailbox, or <i>block</i> to block the sender until there is room.
+	 * 
+	 * @since 2.0
+	 */
+	public static final String EP_MAILBOX_OVERFLOWPOLICY = "jruyi.me.endpoint.mailbox.overflowPolicy";
 
 	/**
 	 * Property name of handler ID.
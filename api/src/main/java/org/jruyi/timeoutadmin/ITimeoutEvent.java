@@ -26,7 +26,8 @@ public interface ITimeoutEvent {
 	public Object getSubject();
 
 	/**
-	 * Gets the time in seconds that is out.
+	 * Gets the time in seconds that is out. A timeout scheduled in a finer
+	 * unit is rounded up to whole seconds.
 	 * 
 	 * @return the time is out
 	 */
@@ -15,6 +15,7 @@
 package org.jruyi.timeoutadmin;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@code ITimeoutNotifier} is used to schedule a timeout notification of the
@@ -89,6 +90,53 @@ public interface ITimeoutNotifier {
 	 */
 	public boolean schedule(int timeout);
 
+	/**
+	 * Schedules a notification to be sent out in the given {@code timeout}.
+	 * The previous schedule will be dropped. The notification is sent out no
+	 * earlier than half a tick of the timeout admin before the timeout
+	 * elapses.
+	 * 
+	 * @param timeout
+	 *            time in the given {@code unit} in which the notifier will be
+	 *            sent
+	 * @param unit
+	 *            the time unit of {@code timeout}
+	 * @return false if this notifier timed out or is closed, otherwise true
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is not positive
+	 * @since 2.0
+	 */
+	public boolean schedule(long timeout, TimeUnit unit);
+
+	/**
+	 * Schedules a notification to be sent out once no {@link #touch()} has
+	 * been made for the given {@code timeout}. The previous schedule will be
+	 * dropped. Touching this notifier does not reschedule it. Instead, when
+	 * the scheduled time comes, the notification is postponed to the last
+	 * touch plus {@code timeout} if that is still ahead.
+	 * 
+	 * @param timeout
+	 *            time in the given {@code unit} of inactivity after which the
+	 *            notifier will be sent
+	 * @param unit
+	 *            the time unit of {@code timeout}
+	 * @return false if this notifier timed out or is closed, otherwise true
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is not positive
+	 * @since 2.0
+	 */
+	public boolean scheduleLazily(long timeout, TimeUnit unit);
+
+	/**
+	 * Records an activity which postpones a notification scheduled by
+	 * {@link #scheduleLazily(long, TimeUnit)}. It takes no lock.
+	 * 
+	 * @return true if a lazy schedule is pending, otherwise false, in which
+	 *         case nothing is done
+	 * @since 2.0
+	 */
+	public boolean touch();
+
 	/**
 	 * Cancels the notifier.
 	 * 
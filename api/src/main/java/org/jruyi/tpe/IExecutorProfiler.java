@@ -121,6 +121,36 @@ public interface IExecutorProfiler {
 	 */
 	public double getAverageResponseTime();
 
+	/**
+	 * Returns the service time in seconds at the given {@code percentile},
+	 * within about 2%.
+	 *
+	 * @param percentile
+	 *            the percentile from 0 to 100, e.g. 99.9
+	 * @return the service time at the given percentile
+	 */
+	public double getServiceTimePercentile(double percentile);
+
+	/**
+	 * Returns the time in seconds a request waits in pool at the given
+	 * {@code percentile}, within about 2%.
+	 *
+	 * @param percentile
+	 *            the percentile from 0 to 100, e.g. 99.9
+	 * @return the time waiting in pool at the given percentile
+	 */
+	public double getTimeWaitingInPoolPercentile(double percentile);
+
+	/**
+	 * Returns the response time in seconds at the given {@code percentile},
+	 * within about 2%.
+	 *
+	 * @param percentile
+	 *            the percentile from 0 to 100, e.g. 99.9
+	 * @return the response time at the given percentile
+	 */
+	public double getResponseTimePercentile(double percentile);
+
 	/**
 	 * Returns the estimated average number of active requests.
 	 *
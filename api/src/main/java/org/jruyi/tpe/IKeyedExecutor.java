@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe;
+
+/**
+ * Service for executing requests in order per key.
+ *
+ * <p>
+ * Requests with equal keys are run one at a time, in the order they are
+ * submitted. Requests with different keys may run concurrently.
+ *
+ * @since 2.0
+ */
+public interface IKeyedExecutor {
+
+	/**
+	 * Executes the given {@code command} after all the commands previously
+	 * submitted with a key equal to the given {@code key}.
+	 *
+	 * @param key
+	 *            the key to order the given {@code command} by
+	 * @param command
+	 *            the command to execute
+	 */
+	public void execute(Object key, Runnable command);
+}
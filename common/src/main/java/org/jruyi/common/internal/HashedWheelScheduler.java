@@ -0,0 +1,500 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.common.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduled executor backed by hashed timing wheels. Scheduling and
+ * cancelling take O(1), lock-free queueing, and each tick expires a whole
+ * bucket in one pass. Tasks are spread over the wheels round robin, each of
+ * which runs its due tasks on its own thread, no earlier than their delays
+ * and no later than a tick after. A wheel with no task parks its thread until
+ * a task is scheduled, instead of ticking.
+ * <p>
+ * On shutdown, periodic tasks are cancelled while delayed tasks still run, as
+ * {@link java.util.concurrent.ScheduledThreadPoolExecutor} does by default.
+ */
+final class HashedWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+	private static final Logger c_logger = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+	private final Wheel[] m_wheels;
+	private final AtomicInteger m_next = new AtomicInteger();
+	private volatile boolean m_shutdown;
+	private volatile boolean m_stopped;
+
+	final class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+		private final Wheel m_wheel;
+		// System.nanoTime based
+		private volatile long m_time;
+		// positive for fixed rate, negative for fixed delay, 0 for one-shot
+		private final long m_period;
+
+		// touched by the wheel thread only
+		ScheduledTask<?> m_previous;
+		ScheduledTask<?> m_next;
+		Bucket m_bucket;
+		long m_remainingRounds;
+
+		ScheduledTask(Runnable runnable, V result, long time, long period, Wheel wheel) {
+			super(runnable, result);
+			m_time = time;
+			m_period = period;
+			m_wheel = wheel;
+		}
+
+		ScheduledTask(Callable<V> callable, long time, Wheel wheel) {
+			super(callable);
+			m_time = time;
+			m_period = 0L;
+			m_wheel = wheel;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(m_time - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			if (other == this)
+				return 0;
+
+			final long d = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+			return d < 0L ? -1 : (d > 0L ? 1 : 0);
+		}
+
+		@Override
+		public boolean isPeriodic() {
+			return m_period != 0L;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled)
+				m_wheel.onCancelled(this);
+			return cancelled;
+		}
+
+		// Called on the wheel thread
+		@Override
+		public void run() {
+			if (!isPeriodic()) {
+				super.run();
+				return;
+			}
+
+			if (!super.runAndReset())
+				return;
+
+			if (m_shutdown) {
+				super.cancel(false);
+				return;
+			}
+
+			final long period = m_period;
+			m_time = period > 0L ? m_time + period : System.nanoTime() - period;
+			m_wheel.reschedule(this);
+		}
+
+		long time() {
+			return m_time;
+		}
+	}
+
+	static final class Bucket {
+
+		private ScheduledTask<?> m_head;
+		private ScheduledTask<?> m_tail;
+
+		void add(ScheduledTask<?> task) {
+			task.m_bucket = this;
+			final ScheduledTask<?> tail = m_tail;
+			if (tail == null)
+				m_head = task;
+			else {
+				tail.m_next = task;
+				task.m_previous = tail;
+			}
+			m_tail = task;
+		}
+
+		void remove(ScheduledTask<?> task) {
+			final ScheduledTask<?> previous = task.m_previous;
+			final ScheduledTask<?> next = task.m_next;
+			if (previous == null)
+				m_head = next;
+			else
+				previous.m_next = next;
+
+			if (next == null)
+				m_tail = previous;
+			else
+				next.m_previous = previous;
+
+			task.m_previous = null;
+			task.m_next = null;
+			task.m_bucket = null;
+		}
+
+		ScheduledTask<?> head() {
+			return m_head;
+		}
+
+		ScheduledTask<?> tail() {
+			return m_tail;
+		}
+	}
+
+	final class Wheel implements Runnable {
+
+		private final Bucket[] m_buckets;
+		private final int m_mask;
+		private final long m_tickInNanos;
+		private final ConcurrentLinkedQueue<ScheduledTask<?>> m_scheduled = new ConcurrentLinkedQueue<ScheduledTask<?>>();
+		private final ConcurrentLinkedQueue<ScheduledTask<?>> m_cancelled = new ConcurrentLinkedQueue<ScheduledTask<?>>();
+		private final CountDownLatch m_terminated = new CountDownLatch(1);
+		private Thread m_thread;
+		// whether the wheel thread is parked or about to park for no task
+		private volatile boolean m_idle;
+
+		// touched by the wheel thread only
+		private long m_startTime;
+		private long m_tick;
+		private int m_size;
+		private boolean m_swept;
+
+		Wheel(int ticksPerWheel, long tickInNanos) {
+			final Bucket[] buckets = new Bucket[ticksPerWheel];
+			for (int i = 0; i < ticksPerWheel; ++i)
+				buckets[i] = new Bucket();
+			m_buckets = buckets;
+			m_mask = ticksPerWheel - 1;
+			m_tickInNanos = tickInNanos;
+		}
+
+		void start(ThreadFactory threadFactory) {
+			final Thread thread = threadFactory.newThread(this);
+			m_thread = thread;
+			thread.start();
+		}
+
+		void schedule(ScheduledTask<?> task) {
+			m_scheduled.offer(task);
+			if (m_idle)
+				wakeup();
+		}
+
+		void onCancelled(ScheduledTask<?> task) {
+			m_cancelled.offer(task);
+		}
+
+		void wakeup() {
+			LockSupport.unpark(m_thread);
+		}
+
+		boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return m_terminated.await(timeout, unit);
+		}
+
+		boolean isTerminated() {
+			return m_terminated.getCount() == 0L;
+		}
+
+		@Override
+		public void run() {
+			m_startTime = System.nanoTime();
+			try {
+				while (!m_stopped && (!m_shutdown || m_size > 0 || !m_scheduled.isEmpty())) {
+					if (m_size < 1 && m_scheduled.isEmpty()) {
+						idle();
+						continue;
+					}
+
+					if (!waitForNextTick())
+						continue;
+
+					removeCancelled();
+					transferScheduled();
+					if (m_shutdown && !m_swept)
+						sweepPeriodic();
+					expire(m_buckets[(int) (m_tick & m_mask)]);
+					++m_tick;
+				}
+			} catch (Throwable t) {
+				c_logger.error("Scheduler wheel stopped unexpectedly", t);
+			} finally {
+				cancelAll();
+				m_terminated.countDown();
+			}
+		}
+
+		// Called on the wheel thread, for periodic tasks
+		void reschedule(ScheduledTask<?> task) {
+			// the bucket being expired is not visited again until next round
+			place(task, m_tick + 1L);
+		}
+
+		// Returns false if woken up before the end of the current tick
+		private boolean waitForNextTick() {
+			final long deadline = m_tickInNanos * (m_tick + 1L);
+			final long sleepTime = deadline - (System.nanoTime() - m_startTime);
+			if (sleepTime <= 0L)
+				return true;
+
+			LockSupport.parkNanos(this, sleepTime);
+			return System.nanoTime() - m_startTime >= deadline;
+		}
+
+		// Parks until a task is scheduled or the scheduler is shut down. The
+		// ticks elapsed meanwhile are skipped, as there is nothing to expire.
+		private void idle() {
+			m_idle = true;
+			try {
+				// re-check after m_idle is set, not to miss a wakeup
+				while (m_scheduled.isEmpty() && !m_shutdown)
+					LockSupport.park(this);
+			} finally {
+				m_idle = false;
+			}
+
+			removeCancelled();
+			m_tick = (System.nanoTime() - m_startTime) / m_tickInNanos;
+		}
+
+		private void removeCancelled() {
+			ScheduledTask<?> task;
+			while ((task = m_cancelled.poll()) != null) {
+				final Bucket bucket = task.m_bucket;
+				if (bucket != null) {
+					bucket.remove(task);
+					--m_size;
+				}
+			}
+		}
+
+		private void transferScheduled() {
+			ScheduledTask<?> task;
+			while ((task = m_scheduled.poll()) != null) {
+				if (!task.isCancelled())
+					place(task, m_tick);
+			}
+		}
+
+		// The given task is put into the bucket of its due tick, or of the
+		// given tick if overdue. The rounds to wait are counted from the given
+		// tick, which must be the next visit of the bucket at that tick.
+		private void place(ScheduledTask<?> task, long nextTick) {
+			final long tick = Math.max((task.time() - m_startTime) / m_tickInNanos, nextTick);
+			task.m_remainingRounds = (tick - nextTick) / m_buckets.length;
+			m_buckets[(int) (tick & m_mask)].add(task);
+			++m_size;
+		}
+
+		private void expire(Bucket bucket) {
+			// tasks rescheduled into this bucket meanwhile wait for next round
+			final ScheduledTask<?> last = bucket.tail();
+			ScheduledTask<?> task = bucket.head();
+			while (task != null) {
+				final ScheduledTask<?> next = task == last ? null : task.m_next;
+				if (task.m_remainingRounds > 0L)
+					--task.m_remainingRounds;
+				else {
+					bucket.remove(task);
+					--m_size;
+					try {
+						task.run();
+					} catch (Throwable t) {
+						c_logger.error("Unexpected Error", t);
+					}
+				}
+				task = next;
+			}
+		}
+
+		private void sweepPeriodic() {
+			for (Bucket bucket : m_buckets) {
+				ScheduledTask<?> task = bucket.head();
+				while (task != null) {
+					final ScheduledTask<?> next = task.m_next;
+					if (task.isPeriodic()) {
+						bucket.remove(task);
+						--m_size;
+						task.cancel(false);
+					}
+					task = next;
+				}
+			}
+			m_swept = true;
+		}
+
+		private void cancelAll() {
+			for (Bucket bucket : m_buckets) {
+				ScheduledTask<?> task;
+				while ((task = bucket.head()) != null) {
+					bucket.remove(task);
+					task.cancel(false);
+				}
+			}
+			m_size = 0;
+
+			ScheduledTask<?> task;
+			while ((task = m_scheduled.poll()) != null)
+				task.cancel(false);
+			m_cancelled.clear();
+		}
+	}
+
+	HashedWheelScheduler(int numberOfWheels, long tickInMillis, int ticksPerWheel, ThreadFactory threadFactory) {
+		int n = 1;
+		while (n < ticksPerWheel)
+			n <<= 1;
+
+		final long tickInNanos = TimeUnit.MILLISECONDS.toNanos(tickInMillis);
+		final Wheel[] wheels = new Wheel[numberOfWheels];
+		for (int i = 0; i < numberOfWheels; ++i)
+			wheels[i] = new Wheel(n, tickInNanos);
+		m_wheels = wheels;
+
+		for (Wheel wheel : wheels)
+			wheel.start(threadFactory);
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		if (command == null || unit == null)
+			throw new NullPointerException();
+
+		final Wheel wheel = nextWheel();
+		return schedule(new ScheduledTask<Void>(command, null, triggerTime(delay, unit), 0L, wheel), wheel);
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		if (callable == null || unit == null)
+			throw new NullPointerException();
+
+		final Wheel wheel = nextWheel();
+		return schedule(new ScheduledTask<V>(callable, triggerTime(delay, unit), wheel), wheel);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		if (command == null || unit == null)
+			throw new NullPointerException();
+		if (period <= 0L)
+			throw new IllegalArgumentException();
+
+		final Wheel wheel = nextWheel();
+		return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period),
+				wheel), wheel);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		if (command == null || unit == null)
+			throw new NullPointerException();
+		if (delay <= 0L)
+			throw new IllegalArgumentException();
+
+		final Wheel wheel = nextWheel();
+		return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay),
+				wheel), wheel);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		schedule(command, 0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void shutdown() {
+		m_shutdown = true;
+		for (Wheel wheel : m_wheels)
+			wheel.wakeup();
+	}
+
+	// Tasks not run yet are cancelled instead of being returned
+	@Override
+	public List<Runnable> shutdownNow() {
+		m_shutdown = true;
+		m_stopped = true;
+		for (Wheel wheel : m_wheels)
+			wheel.wakeup();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return m_shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		for (Wheel wheel : m_wheels) {
+			if (!wheel.isTerminated())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Wheel wheel : m_wheels) {
+			if (!wheel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+				return false;
+		}
+		return true;
+	}
+
+	private <V> ScheduledFuture<V> schedule(ScheduledTask<V> task, Wheel wheel) {
+		if (m_shutdown)
+			throw new RejectedExecutionException("Scheduler is shut down");
+
+		wheel.schedule(task);
+		return task;
+	}
+
+	private Wheel nextWheel() {
+		final Wheel[] wheels = m_wheels;
+		return wheels[(m_next.getAndIncrement() & Integer.MAX_VALUE) % wheels.length];
+	}
+
+	private static long triggerTime(long delay, TimeUnit unit) {
+		return System.nanoTime() + (delay < 0L ? 0L : unit.toNanos(delay));
+	}
+}
@@ -16,6 +16,7 @@ package org.jruyi.common.internal;
 
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
@@ -33,14 +34,23 @@ public final class Scheduler implements IScheduler {
 	private static final Logger c_logger = LoggerFactory.getLogger(Scheduler.class);
 
 	private Configuration m_conf;
-	private ScheduledThreadPoolExecutor m_executor;
+	private ScheduledExecutorService m_executor;
 
 	static final class Configuration {
 
+		static final String TYPE_THREAD_POOL = "threadPool";
+		static final String TYPE_HASHED_WHEEL = "hashedWheel";
+
+		private static final String P_TYPE = "type";
 		private static final String P_NUMBER_OF_THREADS = "numberOfThreads";
+		private static final String P_TICK_IN_MILLIS = "tickInMillis";
+		private static final String P_TICKS_PER_WHEEL = "ticksPerWheel";
 		private static final String P_TERM_WAITTIME_IN_SECONDS = "terminationWaitTimeInSeconds";
 
+		private String m_type = TYPE_THREAD_POOL;
 		private int m_numberOfThreads = 1;
+		private int m_tickInMillis = 1;
+		private int m_ticksPerWheel = 512;
 		private int m_terminationWaitTimeInSeconds = 60;
 
 		private Configuration() {
@@ -48,11 +58,25 @@ public final class Scheduler implements IScheduler {
 
 		static Configuration create(Map<String, ?> properties) {
 			final Configuration conf = new Configuration();
+			conf.type((String) properties.get(P_TYPE));
 			conf.numberOfThreads((Integer) properties.get(P_NUMBER_OF_THREADS));
+			conf.tickInMillis((Integer) properties.get(P_TICK_IN_MILLIS));
+			conf.ticksPerWheel((Integer) properties.get(P_TICKS_PER_WHEEL));
 			conf.terminationWaitTimeInSeconds((Integer) properties.get(P_TERM_WAITTIME_IN_SECONDS));
 			return conf;
 		}
 
+		public String type() {
+			return m_type;
+		}
+
+		public void type(String type) {
+			if (TYPE_HASHED_WHEEL.equals(type))
+				m_type = TYPE_HASHED_WHEEL;
+			else
+				m_type = TYPE_THREAD_POOL;
+		}
+
 		public int numberOfThreads() {
 			return m_numberOfThreads;
 		}
@@ -63,6 +87,26 @@ public final class Scheduler implements IScheduler {
 			m_numberOfThreads = numberOfThreads;
 		}
 
+		public int tickInMillis() {
+			return m_tickInMillis;
+		}
+
+		public void tickInMillis(Integer tickInMillis) {
+			if (tickInMillis == null || tickInMillis < 1)
+				return;
+			m_tickInMillis = tickInMillis;
+		}
+
+		public int ticksPerWheel() {
+			return m_ticksPerWheel;
+		}
+
+		public void ticksPerWheel(Integer ticksPerWheel) {
+			if (ticksPerWheel == null || ticksPerWheel < 1)
+				return;
+			m_ticksPerWheel = ticksPerWheel;
+		}
+
 		public int terminationWaitTimeInSeconds() {
 			return m_terminationWaitTimeInSeconds;
 		}
@@ -112,25 +156,36 @@ public final class Scheduler implements IScheduler {
 	@Modified
 	public void modified(Map<String, ?> properties) {
 		final Configuration conf = Configuration.create(properties);
+		final ScheduledExecutorService executor = m_executor;
+		// The type and the wheels cannot be changed without dropping
+		// the scheduled tasks. They take effect on reactivation.
+		if (executor instanceof ScheduledThreadPoolExecutor)
+			((ScheduledThreadPoolExecutor) executor).setCorePoolSize(conf.numberOfThreads());
+		else
+			c_logger.info("Scheduler of type {} will be reconfigured on reactivation", m_conf.type());
 		m_conf = conf;
 
-		final int numberOfThreads = conf.numberOfThreads();
-		m_executor.setCorePoolSize(numberOfThreads);
-
-		c_logger.info("Scheduler modified: numberOfThreads={}", numberOfThreads);
+		c_logger.info("Scheduler modified: numberOfThreads={}", conf.numberOfThreads());
 	}
 
 	public void activate(Map<String, ?> properties) {
 		final Configuration conf = Configuration.create(properties);
 		final int numberOfThreads = conf.numberOfThreads();
-		m_executor = new ScheduledThreadPoolExecutor(numberOfThreads, SchedulerThreadFactory.INST);
+		final String type = conf.type();
+		if (Configuration.TYPE_HASHED_WHEEL.equals(type)) {
+			m_executor = new HashedWheelScheduler(numberOfThreads, conf.tickInMillis(), conf.ticksPerWheel(),
+					SchedulerThreadFactory.INST);
+			c_logger.info("Scheduler activated: type={}, numberOfThreads={}, tickInMillis={}, ticksPerWheel={}", type,
+					numberOfThreads, conf.tickInMillis(), conf.ticksPerWheel());
+		} else {
+			m_executor = new ScheduledThreadPoolExecutor(numberOfThreads, SchedulerThreadFactory.INST);
+			c_logger.info("Scheduler activated: type={}, numberOfThreads={}", type, numberOfThreads);
+		}
 		m_conf = conf;
-
-		c_logger.info("Scheduler activated: numberOfThreads={}", numberOfThreads);
 	}
 
 	public void deactivate() {
-		final ScheduledThreadPoolExecutor executor = m_executor;
+		final ScheduledExecutorService executor = m_executor;
 		executor.shutdown();
 		try {
 			executor.awaitTermination(m_conf.terminationWaitTimeInSeconds(), TimeUnit.SECONDS);
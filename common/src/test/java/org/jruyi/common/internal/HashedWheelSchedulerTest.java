@@ -0,0 +1,285 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.common.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelSchedulerTest {
+
+	private static final long TICK_IN_MILLIS = 1L;
+	private static final int TICKS_PER_WHEEL = 64;
+
+	private HashedWheelScheduler m_scheduler;
+
+	@Before
+	public void setUp() {
+		m_scheduler = new HashedWheelScheduler(2, TICK_IN_MILLIS, TICKS_PER_WHEEL, Executors.defaultThreadFactory());
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		m_scheduler.shutdownNow();
+		m_scheduler.awaitTermination(5L, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void test_noEarlyFiring() throws Exception {
+		// some of the delays wrap around the wheel
+		final long[] delays = { 0L, 1L, 5L, 20L, 63L, 64L, 65L, 130L, 200L };
+		final long[] lateness = new long[delays.length];
+		final CountDownLatch latch = new CountDownLatch(delays.length);
+		for (int i = 0; i < delays.length; ++i) {
+			final int index = i;
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delays[i]);
+			m_scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					lateness[index] = System.nanoTime() - deadline;
+					latch.countDown();
+				}
+			}, delays[i], TimeUnit.MILLISECONDS);
+		}
+
+		Assert.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+		for (int i = 0; i < delays.length; ++i)
+			Assert.assertTrue("Fired early: delay=" + delays[i], lateness[i] >= 0L);
+	}
+
+	@Test
+	public void test_callable() throws Exception {
+		final ScheduledFuture<String> future = m_scheduler.schedule(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return "done";
+			}
+		}, 10L, TimeUnit.MILLISECONDS);
+
+		Assert.assertEquals("done", future.get(5L, TimeUnit.SECONDS));
+		Assert.assertTrue(future.isDone());
+	}
+
+	@Test
+	public void test_cancel() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final ScheduledFuture<?> future = m_scheduler.schedule(new Counter(runs), 50L, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(future.cancel(false));
+		Assert.assertTrue(future.isCancelled());
+		Assert.assertTrue(future.isDone());
+		Assert.assertFalse(future.cancel(false));
+
+		Thread.sleep(150L);
+		Assert.assertEquals(0, runs.get());
+
+		try {
+			future.get();
+			Assert.fail("CancellationException expected");
+		} catch (CancellationException e) {
+		}
+	}
+
+	@Test
+	public void test_cancelPeriodic() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(3);
+		final ScheduledFuture<?> future = m_scheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+				latch.countDown();
+			}
+		}, 0L, 5L, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+
+		Assert.assertTrue(future.cancel(false));
+		// a run in progress may still finish
+		Thread.sleep(20L);
+		final int n = runs.get();
+		Thread.sleep(50L);
+		Assert.assertEquals(n, runs.get());
+	}
+
+	@Test
+	public void test_fixedRate() throws Exception {
+		final int runs = 10;
+		final long period = 20L;
+		final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+		final CountDownLatch latch = new CountDownLatch(runs);
+		final long t0 = System.nanoTime();
+		final ScheduledFuture<?> future = m_scheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				starts.add(System.nanoTime());
+				sleep(10L);
+				latch.countDown();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+		future.cancel(false);
+
+		// The n-th run starts no earlier than n periods, and the time spent
+		// running does not accumulate as a drift.
+		for (int i = 0; i < runs; ++i)
+			Assert.assertTrue(starts.get(i) - t0 >= TimeUnit.MILLISECONDS.toNanos(period * (i + 1)));
+		Assert.assertTrue(starts.get(runs - 1) - starts.get(0) < TimeUnit.MILLISECONDS.toNanos(period * runs));
+	}
+
+	@Test
+	public void test_fixedRateOfWheelSpan() throws Exception {
+		// each run is rescheduled into the bucket being expired
+		final int runs = 5;
+		final long period = TICK_IN_MILLIS * TICKS_PER_WHEEL;
+		final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+		final CountDownLatch latch = new CountDownLatch(runs);
+		final long t0 = System.nanoTime();
+		final ScheduledFuture<?> future = m_scheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				starts.add(System.nanoTime());
+				latch.countDown();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+		future.cancel(false);
+
+		// no run is a round late
+		for (int i = 0; i < runs; ++i) {
+			final long elapsed = starts.get(i) - t0;
+			Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(period * (i + 1)));
+			Assert.assertTrue("Run " + i + " is late: " + elapsed,
+					elapsed < TimeUnit.MILLISECONDS.toNanos(period * (i + 1) + period / 2));
+		}
+	}
+
+	@Test
+	public void test_fixedDelay() throws Exception {
+		final int runs = 10;
+		final long delay = 20L;
+		final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+		final List<Long> ends = Collections.synchronizedList(new ArrayList<Long>());
+		final CountDownLatch latch = new CountDownLatch(runs);
+		final ScheduledFuture<?> future = m_scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				starts.add(System.nanoTime());
+				sleep(10L);
+				ends.add(System.nanoTime());
+				latch.countDown();
+			}
+		}, 0L, delay, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+		future.cancel(false);
+
+		// each run starts no earlier than the delay after the previous one ends
+		for (int i = 1; i < runs; ++i)
+			Assert.assertTrue(starts.get(i) - ends.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(delay));
+	}
+
+	@Test
+	public void test_shutdown() throws Exception {
+		final AtomicInteger delayedRuns = new AtomicInteger();
+		final AtomicInteger periodicRuns = new AtomicInteger();
+		final ScheduledFuture<?> delayed = m_scheduler.schedule(new Counter(delayedRuns), 50L, TimeUnit.MILLISECONDS);
+		final ScheduledFuture<?> periodic = m_scheduler.scheduleAtFixedRate(new Counter(periodicRuns), 0L, 5L,
+				TimeUnit.MILLISECONDS);
+
+		m_scheduler.shutdown();
+		Assert.assertTrue(m_scheduler.isShutdown());
+		try {
+			m_scheduler.schedule(new Counter(delayedRuns), 0L, TimeUnit.MILLISECONDS);
+			Assert.fail("RejectedExecutionException expected");
+		} catch (RejectedExecutionException e) {
+		}
+
+		// delayed tasks still run, while periodic tasks are cancelled
+		Assert.assertTrue(m_scheduler.awaitTermination(5L, TimeUnit.SECONDS));
+		Assert.assertTrue(m_scheduler.isTerminated());
+		Assert.assertTrue(delayed.isDone());
+		Assert.assertFalse(delayed.isCancelled());
+		Assert.assertEquals(1, delayedRuns.get());
+		Assert.assertTrue(periodic.isCancelled());
+	}
+
+	@Test
+	public void test_shutdownNow() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final ScheduledFuture<?> delayed = m_scheduler.schedule(new Counter(runs), 100L, TimeUnit.MILLISECONDS);
+
+		m_scheduler.shutdownNow();
+		Assert.assertTrue(m_scheduler.awaitTermination(5L, TimeUnit.SECONDS));
+		Assert.assertTrue(delayed.isCancelled());
+		Assert.assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void test_scheduleAfterIdle() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		m_scheduler.schedule(new Counter(runs), 0L, TimeUnit.MILLISECONDS).get(5L, TimeUnit.SECONDS);
+
+		// let the wheels go idle
+		Thread.sleep(100L);
+
+		final long t0 = System.nanoTime();
+		final ScheduledFuture<?> future = m_scheduler.schedule(new Counter(runs), 10L, TimeUnit.MILLISECONDS);
+		future.get(5L, TimeUnit.SECONDS);
+		Assert.assertTrue(System.nanoTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(10L));
+		Assert.assertEquals(2, runs.get());
+	}
+
+	static final class Counter implements Runnable {
+
+		private final AtomicInteger m_runs;
+
+		Counter(AtomicInteger runs) {
+			m_runs = runs;
+		}
+
+		@Override
+		public void run() {
+			m_runs.incrementAndGet();
+		}
+	}
+
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -15,9 +15,7 @@ package org.jruyi.io.buffer;
 
 import java.util.Map;
 
-import org.jruyi.common.IThreadLocalCache;
 import org.jruyi.common.StrUtil;
-import org.jruyi.common.ThreadLocalCache;
 import org.jruyi.io.IBuffer;
 import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IUnit;
@@ -32,10 +30,19 @@ public final class BufferFactory implements IBufferFactory {
 	private static final Logger c_logger = LoggerFactory.getLogger(BufferFactory.class);
 
 	private static final String UNIT_CAPACITY = "unitCapacity";
+	private static final String UNIT_TYPE = "unitType";
+	private static final String SLAB_CAPACITY = "slabCapacity";
+	private static final String MAGAZINE_CAPACITY = "magazineCapacity";
+	private static final String DEPOT_CAPACITY = "depotCapacity";
 	private static final int MIN_UNIT_CAPACITY = 8;
 
-	private final IThreadLocalCache<HeapUnit> m_unitCache = ThreadLocalCache.weakLinkedCache();
+	private String m_name;
 	private int m_unitCapacity;
+	private UnitPool m_pool;
+	// index of the size class of unitCapacity in the pool
+	private int m_unitClass;
+	// null if heap units are used
+	private SlabArena m_arena;
 
 	@Override
 	public IBuffer create() {
@@ -50,10 +57,76 @@ public final class BufferFactory implements IBufferFactory {
 		else
 			m_unitCapacity = value > MIN_UNIT_CAPACITY ? value : MIN_UNIT_CAPACITY;
 
+		final UnitPool pool = new UnitPool(m_unitCapacity, magazineCapacity(properties), depotCapacity(properties));
+		m_unitClass = pool.classIndexOf(m_unitCapacity);
+		m_pool = pool;
+
+		final String unitType = (String) properties.get(UNIT_TYPE);
+		if ("direct".equals(unitType)) {
+			final SlabArena arena = m_arena;
+			if (arena == null || arena.unitCapacity() != m_unitCapacity)
+				m_arena = new SlabArena(m_unitCapacity, slabCapacity(properties));
+		} else
+			m_arena = null;
+
 		final String id = (String) properties.get("id");
 		final String bfName = id != null ? StrUtil.join("BufferFactory[", id, "]") : "BufferFactory";
+		m_name = bfName;
+
+		c_logger.info("{}: unitCapacity={}, unitType={}", bfName, m_unitCapacity, isDirect() ? "direct" : "heap");
+	}
+
+	@Override
+	public String toString() {
+		return m_name;
+	}
+
+	/**
+	 * Returns the number of heap units handed out from the pool.
+	 * 
+	 * @return the number of pool hits
+	 */
+	public long poolHits() {
+		return m_pool.hits();
+	}
+
+	/**
+	 * Returns the number of heap units newly allocated because the pool had
+	 * none to hand out.
+	 * 
+	 * @return the number of pool misses
+	 */
+	public long poolMisses() {
+		return m_pool.misses();
+	}
+
+	/**
+	 * Returns the number of heap units returned to the pool on a thread other
+	 * than the one they were taken on.
+	 * 
+	 * @return the number of cross-thread frees
+	 */
+	public long crossThreadFrees() {
+		return m_pool.crossThreadFrees();
+	}
 
-		c_logger.info("{}: unitCapacity={}", bfName, m_unitCapacity);
+	/**
+	 * Returns the total capacity of the heap units currently held by the pool.
+	 * 
+	 * @return the number of bytes pooled
+	 */
+	public long pooledBytes() {
+		return m_pool.pooledBytes();
+	}
+
+	/**
+	 * Tests whether the buffers created by this factory consist of direct
+	 * units, which channels can read into and write out without copying.
+	 * 
+	 * @return true if direct units are used, otherwise false
+	 */
+	public boolean isDirect() {
+		return m_arena != null;
 	}
 
 	void activate(Map<String, ?> properties) {
@@ -61,39 +134,56 @@ public final class BufferFactory implements IBufferFactory {
 	}
 
 	IUnit getUnit() {
-		HeapUnit unit = m_unitCache.take();
-		if (unit == null)
-			unit = new HeapUnit(m_unitCapacity);
-		else {
-			final int capacity = m_unitCapacity;
-			if (unit.capacity() < capacity)
-				unit.setCapacity(capacity);
-
-			unit.clear();
-		}
+		final SlabArena arena = m_arena;
+		if (arena != null)
+			return getDirectUnit(arena);
 
-		return unit;
+		return m_pool.take(m_unitClass);
 	}
 
 	IUnit getUnit(int capacity) {
 		if (capacity < m_unitCapacity)
 			capacity = m_unitCapacity;
 
-		HeapUnit unit = m_unitCache.take();
-		if (unit == null)
-			unit = new HeapUnit(capacity);
-		else {
-			if (unit.capacity() < capacity)
-				unit.setCapacity(capacity);
+		final SlabArena arena = m_arena;
+		if (arena != null)
+			return capacity > arena.unitCapacity() ? new DirectUnit(capacity) : getDirectUnit(arena);
 
-			unit.clear();
+		final UnitPool pool = m_pool;
+		final int classIndex = pool.classIndexOf(capacity);
+		return classIndex < 0 ? new HeapUnit(capacity) : pool.take(classIndex);
+	}
+
+	void putUnit(IUnit unit) {
+		if (unit instanceof HeapUnit) {
+			if (m_arena == null)
+				m_pool.put((HeapUnit) unit);
+		} else if (unit instanceof DirectUnit) {
+			// units not carved from the current arena are left to GC
+			final SlabArena arena = ((DirectUnit) unit).arena();
+			if (arena != null && arena == m_arena)
+				arena.put((DirectUnit) unit);
 		}
+	}
 
+	private static IUnit getDirectUnit(SlabArena arena) {
+		final DirectUnit unit = arena.take();
+		unit.clear();
 		return unit;
 	}
 
-	void putUnit(IUnit unit) {
-		if (unit instanceof HeapUnit)
-			m_unitCache.put((HeapUnit) unit);
+	private static int magazineCapacity(Map<String, ?> properties) {
+		final Integer value = (Integer) properties.get(MAGAZINE_CAPACITY);
+		return value == null || value < 1 ? 32 : value;
+	}
+
+	private static int depotCapacity(Map<String, ?> properties) {
+		final Integer value = (Integer) properties.get(DEPOT_CAPACITY);
+		return value == null || value < 0 ? 64 : value;
+	}
+
+	private static int slabCapacity(Map<String, ?> properties) {
+		final Integer value = (Integer) properties.get(SLAB_CAPACITY);
+		return value == null ? 1024 * 1024 * 4 : value;
 	}
 }
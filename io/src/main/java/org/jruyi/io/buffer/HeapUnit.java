@@ -48,6 +48,9 @@ final class HeapUnit implements IUnit {
 
 	private ByteBuffer m_bb;
 
+	// ID of the thread this unit was last taken from the pool on
+	private long m_owner;
+
 	public HeapUnit(int capacity) {
 		final byte[] array = new byte[capacity];
 		m_array = array;
@@ -60,6 +63,14 @@ final class HeapUnit implements IUnit {
 		m_bb = ByteBuffer.wrap(array);
 	}
 
+	long owner() {
+		return m_owner;
+	}
+
+	void owner(long owner) {
+		m_owner = owner;
+	}
+
 	@Override
 	public HeapUnit set(int index, byte b) {
 		c_unsafe.putByte(m_array, byteArrayOffset(index), b);
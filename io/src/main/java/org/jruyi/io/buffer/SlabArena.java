@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Carves {@link DirectUnit}s of a fixed capacity out of large direct memory
+ * slabs. Units are recycled through a lock-free free list, so the slabs are
+ * never released once allocated.
+ */
+final class SlabArena {
+
+	private final int m_unitCapacity;
+	private final int m_unitsPerSlab;
+	private final ConcurrentLinkedQueue<DirectUnit> m_freeUnits;
+
+	SlabArena(int unitCapacity, int slabCapacity) {
+		m_unitCapacity = unitCapacity;
+		m_unitsPerSlab = slabCapacity > unitCapacity ? slabCapacity / unitCapacity : 1;
+		m_freeUnits = new ConcurrentLinkedQueue<DirectUnit>();
+	}
+
+	int unitCapacity() {
+		return m_unitCapacity;
+	}
+
+	DirectUnit take() {
+		final DirectUnit unit = m_freeUnits.poll();
+		return unit == null ? allocateSlab() : unit;
+	}
+
+	void put(DirectUnit unit) {
+		m_freeUnits.offer(unit);
+	}
+
+	private synchronized DirectUnit allocateSlab() {
+		// another thread may have just refilled the free list
+		final DirectUnit unit = m_freeUnits.poll();
+		if (unit != null)
+			return unit;
+
+		final int unitCapacity = m_unitCapacity;
+		final int n = m_unitsPerSlab;
+		final ByteBuffer slab = ByteBuffer.allocateDirect(unitCapacity * n);
+		for (int i = 1; i < n; ++i)
+			m_freeUnits.offer(new DirectUnit(slice(slab, i * unitCapacity, unitCapacity), this));
+
+		return new DirectUnit(slice(slab, 0, unitCapacity), this);
+	}
+
+	private static ByteBuffer slice(ByteBuffer slab, int offset, int length) {
+		slab.limit(offset + length);
+		slab.position(offset);
+		return slab.slice();
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.buffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of heap units segregated into size classes.
+ * <p>
+ * Each thread caches units in a bounded magazine per size class. A thread
+ * freeing more units than it allocates hands its full magazines over to a
+ * shared depot, and a thread running short takes full magazines from there.
+ * So units allocated on IO threads and freed on worker threads are recycled
+ * instead of piling up on one side.
+ */
+final class UnitPool {
+
+	static final int MIN_CLASS_CAPACITY = 512;
+	static final int MAX_CLASS_CAPACITY = 1024 * 64;
+
+	// number of pool operations a thread does before publishing its counters
+	private static final int FLUSH_INTERVAL = 256;
+
+	private final int[] m_classCapacities;
+	private final Depot[] m_depots;
+	private final int m_magazineCapacity;
+	private final ThreadLocal<ThreadCache> m_threadCache;
+
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+	private final AtomicLong m_crossThreadFrees = new AtomicLong();
+	private final AtomicLong m_pooledBytes = new AtomicLong();
+
+	static final class Magazine {
+
+		private final HeapUnit[] m_units;
+		private int m_size;
+
+		Magazine(int capacity) {
+			m_units = new HeapUnit[capacity];
+		}
+
+		HeapUnit pop() {
+			int size = m_size;
+			if (size < 1)
+				return null;
+
+			final HeapUnit[] units = m_units;
+			final HeapUnit unit = units[--size];
+			units[size] = null;
+			m_size = size;
+			return unit;
+		}
+
+		boolean push(HeapUnit unit) {
+			final int size = m_size;
+			final HeapUnit[] units = m_units;
+			if (size >= units.length)
+				return false;
+
+			units[size] = unit;
+			m_size = size + 1;
+			return true;
+		}
+
+		int size() {
+			return m_size;
+		}
+	}
+
+	static final class Depot {
+
+		private final ConcurrentLinkedQueue<Magazine> m_magazines = new ConcurrentLinkedQueue<Magazine>();
+		private final AtomicInteger m_size = new AtomicInteger();
+		private final int m_capacity;
+
+		Depot(int capacity) {
+			m_capacity = capacity;
+		}
+
+		Magazine poll() {
+			final Magazine magazine = m_magazines.poll();
+			if (magazine != null)
+				m_size.decrementAndGet();
+			return magazine;
+		}
+
+		boolean offer(Magazine magazine) {
+			final AtomicInteger size = m_size;
+			if (size.incrementAndGet() > m_capacity) {
+				size.decrementAndGet();
+				return false;
+			}
+			m_magazines.offer(magazine);
+			return true;
+		}
+	}
+
+	final class ThreadCache {
+
+		private final long m_threadId;
+		private final Magazine[] m_magazines;
+		private int m_ops;
+		private long m_hits;
+		private long m_misses;
+		private long m_crossThreadFrees;
+		private long m_pooledBytes;
+
+		ThreadCache() {
+			m_threadId = Thread.currentThread().getId();
+			final int n = m_classCapacities.length;
+			final Magazine[] magazines = new Magazine[n];
+			for (int i = 0; i < n; ++i)
+				magazines[i] = new Magazine(m_magazineCapacity);
+			m_magazines = magazines;
+		}
+
+		HeapUnit take(int classIndex) {
+			final int capacity = m_classCapacities[classIndex];
+			HeapUnit unit = m_magazines[classIndex].pop();
+			if (unit == null) {
+				final Magazine magazine = m_depots[classIndex].poll();
+				if (magazine != null) {
+					m_magazines[classIndex] = magazine;
+					unit = magazine.pop();
+				}
+			}
+
+			if (unit == null) {
+				unit = new HeapUnit(capacity);
+				++m_misses;
+			} else {
+				unit.clear();
+				++m_hits;
+				m_pooledBytes -= capacity;
+			}
+			unit.owner(m_threadId);
+
+			tick();
+			return unit;
+		}
+
+		void put(int classIndex, HeapUnit unit) {
+			final int capacity = m_classCapacities[classIndex];
+			if (unit.owner() != m_threadId)
+				++m_crossThreadFrees;
+
+			final Magazine[] magazines = m_magazines;
+			Magazine magazine = magazines[classIndex];
+			if (!magazine.push(unit)) {
+				if (m_depots[classIndex].offer(magazine))
+					magazine = new Magazine(m_magazineCapacity);
+				else {
+					// the depot is full, let GC have the whole magazine
+					m_pooledBytes -= (long) magazine.size() * capacity;
+					while (magazine.pop() != null)
+						;
+				}
+				magazines[classIndex] = magazine;
+				magazine.push(unit);
+			}
+			m_pooledBytes += capacity;
+
+			tick();
+		}
+
+		private void tick() {
+			if (++m_ops < FLUSH_INTERVAL)
+				return;
+
+			m_ops = 0;
+			final UnitPool pool = UnitPool.this;
+			pool.m_hits.addAndGet(m_hits);
+			pool.m_misses.addAndGet(m_misses);
+			pool.m_crossThreadFrees.addAndGet(m_crossThreadFrees);
+			pool.m_pooledBytes.addAndGet(m_pooledBytes);
+			m_hits = 0L;
+			m_misses = 0L;
+			m_crossThreadFrees = 0L;
+			m_pooledBytes = 0L;
+		}
+	}
+
+	UnitPool(int unitCapacity, int magazineCapacity, int depotCapacity) {
+		int[] classCapacities = new int[0];
+		for (int capacity = MIN_CLASS_CAPACITY; capacity <= MAX_CLASS_CAPACITY; capacity <<= 1)
+			classCapacities = addClass(classCapacities, capacity);
+		classCapacities = addClass(classCapacities, unitCapacity);
+
+		final int n = classCapacities.length;
+		final Depot[] depots = new Depot[n];
+		for (int i = 0; i < n; ++i)
+			depots[i] = new Depot(depotCapacity);
+
+		m_classCapacities = classCapacities;
+		m_depots = depots;
+		m_magazineCapacity = magazineCapacity;
+		m_threadCache = new ThreadLocal<ThreadCache>() {
+
+			@Override
+			protected ThreadCache initialValue() {
+				return new ThreadCache();
+			}
+		};
+	}
+
+	/**
+	 * Returns the index of the smallest size class holding at least the given
+	 * {@code capacity}, or -1 if the {@code capacity} exceeds all of them.
+	 */
+	int classIndexOf(int capacity) {
+		final int[] classCapacities = m_classCapacities;
+		for (int i = 0; i < classCapacities.length; ++i) {
+			if (classCapacities[i] >= capacity)
+				return i;
+		}
+		return -1;
+	}
+
+	HeapUnit take(int classIndex) {
+		return m_threadCache.get().take(classIndex);
+	}
+
+	void put(HeapUnit unit) {
+		final int i = Arrays.binarySearch(m_classCapacities, unit.capacity());
+		// units not sized to a class are left to GC
+		if (i >= 0)
+			m_threadCache.get().put(i, unit);
+	}
+
+	long hits() {
+		return m_hits.get();
+	}
+
+	long misses() {
+		return m_misses.get();
+	}
+
+	long crossThreadFrees() {
+		return m_crossThreadFrees.get();
+	}
+
+	long pooledBytes() {
+		return m_pooledBytes.get();
+	}
+
+	private static int[] addClass(int[] classCapacities, int capacity) {
+		final int i = Arrays.binarySearch(classCapacities, capacity);
+		if (i >= 0)
+			return classCapacities;
+
+		final int index = -(i + 1);
+		final int n = classCapacities.length;
+		final int[] newCapacities = new int[n + 1];
+		System.arraycopy(classCapacities, 0, newCapacities, 0, index);
+		newCapacities[index] = capacity;
+		System.arraycopy(classCapacities, index, newCapacities, index + 1, n - index);
+		return newCapacities;
+	}
+}
@@ -14,6 +14,7 @@
 package org.jruyi.io.channel;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
@@ -21,7 +22,9 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.WritableByteChannel;
 import java.util.IdentityHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.jruyi.common.ICloseable;
@@ -35,6 +38,8 @@ import org.jruyi.io.IBuffer;
 import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IFilter;
 import org.jruyi.io.IFilterOutput;
+import org.jruyi.io.IUnitChain;
+import org.jruyi.io.buffer.BufferFactory;
 import org.jruyi.io.common.LinkedQueue;
 import org.jruyi.timeoutadmin.ITimeoutEvent;
 import org.jruyi.timeoutadmin.ITimeoutListener;
@@ -46,9 +51,13 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(Channel.class);
 	private static final AtomicLong c_sequence = new AtomicLong(0L);
+	// read state bits
+	private static final int READ_SUSPENDED = 0x01;
+	private static final int READ_PARKED = 0x02;
 	private final Long m_id;
 	private final IChannelService m_channelService;
 	private final AtomicBoolean m_closed;
+	private final AtomicInteger m_readState;
 	private ConcurrentHashMap<String, Object> m_attributes;
 	private IdentityHashMap<Object, Object> m_storage;
 	private Object m_attachment;
@@ -58,6 +67,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 	private ITimeoutNotifier m_timeoutNotifier;
 	private ReadThread m_readThread;
 	private WriteThread m_writeThread;
+	private volatile boolean m_writable;
 
 	static final class MsgArrayList implements ICloseable, IFilterOutput {
 
@@ -197,7 +207,37 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		@Override
 		public void run() {
 			final Channel channel = m_channel;
+			if (!read(channel))
+				return;
+
+			try {
+				channel.onReadRequired();
+			} catch (Throwable t) {
+				channel.onException(t);
+			}
+		}
+
+		// Runs on the selector thread with OP_READ left set. The interest in
+		// reading is only dropped if reading gets suspended or throttled.
+		void readInline() {
+			final Channel channel = m_channel;
+			if (!read(channel) || !channel.isReadPaused())
+				return;
+
+			try {
+				channel.clearReadInterest();
+				channel.onReadRequired();
+			} catch (Throwable t) {
+				channel.onException(t);
+			}
+		}
+
+		// Returns false if the channel is closed or failed
+		private static boolean read(Channel channel) {
 			final IChannelService cs = channel.channelService();
+			if (isDirect(cs.getBufferFactory()))
+				return readIntoUnits(channel, cs);
+
 			final ByteBuffer bb = cs.getChannelAdmin().recvDirectBuffer();
 			final ReadableByteChannel rbc = channel.readableByteChannel();
 			final long throttle = cs.throttle();
@@ -210,12 +250,12 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 				} catch (Throwable t) {
 					if (!channel.isClosed())
 						channel.onException(t);
-					return;
+					return false;
 				}
 
 				if (n < 0) {
 					channel.close();
-					return;
+					return false;
 				} else if (n == 0)
 					break;
 
@@ -225,12 +265,12 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 					ok = channel.onReadIn(bb);
 				} catch (Throwable t) {
 					channel.onException(t);
-					return;
+					return false;
 				}
 
 				if (!ok) {
 					channel.close();
-					return;
+					return false;
 				}
 
 				if (n < capacity || (length += n) >= throttle)
@@ -239,11 +279,56 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 				bb.clear();
 			}
 
-			try {
-				channel.onReadRequired();
-			} catch (Throwable t) {
-				channel.onException(t);
+			return true;
+		}
+
+		// Reads straight into the direct units of new buffers instead of
+		// copying out of the receive direct buffer
+		private static boolean readIntoUnits(Channel channel, IChannelService cs) {
+			final IBufferFactory bf = cs.getBufferFactory();
+			final ReadableByteChannel rbc = channel.readableByteChannel();
+			final long throttle = cs.throttle();
+			long length = 0L;
+			for (;;) {
+				final IBuffer data = bf.create();
+				final int capacity = ((IUnitChain) data).lastUnit().available();
+				int n;
+				try {
+					n = data.readIn(rbc);
+				} catch (Throwable t) {
+					data.close();
+					if (!channel.isClosed())
+						channel.onException(t);
+					return false;
+				}
+
+				if (n < 0) {
+					data.close();
+					channel.close();
+					return false;
+				} else if (n == 0) {
+					data.close();
+					break;
+				}
+
+				final boolean ok;
+				try {
+					ok = channel.onReadIn(data);
+				} catch (Throwable t) {
+					channel.onException(t);
+					return false;
+				}
+
+				if (!ok) {
+					channel.close();
+					return false;
+				}
+
+				if (n < capacity || (length += n) >= throttle)
+					break;
 			}
+
+			return true;
 		}
 	}
 
@@ -254,6 +339,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		private Object m_msg;
 		private IFilter<?, ?>[] m_filters;
 		private int m_filterCount;
+		private long m_size;
 
 		private OutMsg() {
 		}
@@ -266,6 +352,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 			outMsg.m_msg = msg;
 			outMsg.m_filters = filters;
 			outMsg.m_filterCount = filterCount;
+			outMsg.m_size = sizeOf(msg);
 
 			return outMsg;
 		}
@@ -273,6 +360,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		Object attachMsg(Object msg) {
 			final Object oldMsg = m_msg;
 			m_msg = msg;
+			m_size = sizeOf(msg);
 			return oldMsg;
 		}
 
@@ -300,6 +388,11 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 			return m_filterCount;
 		}
 
+		// the estimated number of bytes the message takes once filtered
+		long size() {
+			return m_size;
+		}
+
 		@Override
 		public void close() {
 			m_msg = null;
@@ -308,36 +401,56 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		}
 	}
 
-	static final class WriteThread implements IIoTask {
+	static final class WriteThread implements IIoTask, Runnable {
 
 		private final Channel m_channel;
 		private final LinkedQueue<OutMsg> m_queue;
 		private IBuffer m_data;
 		private Object m_msg;
+		private long m_dataSize;
+		private long m_pendingBytes;
+
+		private final boolean m_coalescing;
+
+		// coalescing mode only
+		private MsgArrayList m_pendingMsgs;
+		private MsgArrayList m_pendingData;
+		private boolean m_flushDeferred;
+		private boolean m_blocked;
 
 		WriteThread(Channel channel) {
 			m_channel = channel;
 			m_queue = new LinkedQueue<OutMsg>();
+			m_coalescing = channel.channelService().maxMessagesPerFlush() > 1;
 		}
 
 		@Override
 		public void run(Object msg, IFilter<?, ?>[] filters, int filterCount) {
 			final Channel channel = m_channel;
+			final IChannelService cs = channel.channelService();
+			if (m_coalescing) {
+				coalesce(msg, filters, filterCount, cs);
+				return;
+			}
+
 			final boolean newMsg;
 			IBuffer data = m_data;
 			if (data == null) {
 				final OutMsg outMsg = m_queue.poll();
 				if (outMsg != null) {
+					final long size = outMsg.size();
 					if (msg != null) {
 						msg = outMsg.attachMsg(msg);
 						filters = outMsg.attachFilters(filters);
 						filterCount = outMsg.attachFilterCount(filterCount);
 						m_queue.put(outMsg);
+						pending(outMsg.size() - size);
 					} else {
 						msg = outMsg.msg();
 						filters = outMsg.filters();
 						filterCount = outMsg.filterCount();
 						outMsg.close();
+						pending(-size);
 					}
 				}
 
@@ -352,36 +465,24 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 					return;
 				newMsg = true;
 			} else {
-				m_queue.put(OutMsg.get(msg, filters, filterCount));
+				final OutMsg outMsg = OutMsg.get(msg, filters, filterCount);
+				m_queue.put(outMsg);
+				pending(outMsg.size());
 				newMsg = false;
 				msg = m_msg;
 			}
 
-			final IChannelService cs = channel.channelService();
-			final ByteBuffer bb = cs.getChannelAdmin().sendDirectBuffer();
 			final WritableByteChannel wbc = channel.writableByteChannel();
 			try {
-				while (!data.isEmpty()) {
-					data.mark();
-					data.read(bb, Codec.byteBuffer());
-					bb.flip();
-					int len = 0;
-					do {
-						final int n = wbc.write(bb);
-						len += n;
-						if (n < 1) {
-							data.reset();
-							data.skip(len);
-							data.compact();
-							if (newMsg) {
-								m_data = data;
-								m_msg = msg;
-							}
-							channel.onWriteRequired();
-							return;
-						}
-					} while (bb.hasRemaining());
-					bb.clear();
+				final boolean done = write(data, cs, wbc);
+				if (!done) {
+					if (newMsg) {
+						m_data = data;
+						m_msg = msg;
+					}
+					hold(data);
+					channel.onWriteRequired();
+					return;
 				}
 				cs.onMessageSent(channel, msg);
 				clear(newMsg, data);
@@ -392,14 +493,204 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 			}
 		}
 
+		// Flushes the messages coalesced during the last batch of IO events
+		@Override
+		public void run() {
+			m_flushDeferred = false;
+			flush(m_channel.channelService());
+		}
+
+		// Departing messages are filtered and appended to the pending data.
+		// The pending data is written out at the end of the current batch of
+		// IO events, or as soon as it reaches the flush limits. A null msg
+		// means the channel gets writable again.
+		private void coalesce(Object msg, IFilter<?, ?>[] filters, int filterCount, IChannelService cs) {
+			if (msg != null) {
+				if (m_blocked) {
+					final OutMsg outMsg = OutMsg.get(msg, filters, filterCount);
+					m_queue.put(outMsg);
+					pending(outMsg.size());
+					return;
+				}
+				if (append(msg, filters, filterCount, cs) && !m_flushDeferred) {
+					m_flushDeferred = true;
+					m_channel.m_ioWorker.defer(this);
+				}
+				return;
+			}
+
+			m_blocked = false;
+			if (!flush(cs))
+				return;
+
+			OutMsg outMsg;
+			while ((outMsg = m_queue.poll()) != null) {
+				msg = outMsg.msg();
+				filters = outMsg.filters();
+				filterCount = outMsg.filterCount();
+				pending(-outMsg.size());
+				outMsg.close();
+				append(msg, filters, filterCount, cs);
+				if (m_blocked)
+					return;
+			}
+
+			flush(cs);
+		}
+
+		// Returns true if the pending data is left to be flushed
+		private boolean append(Object msg, IFilter<?, ?>[] filters, int filterCount, IChannelService cs) {
+			final Channel channel = m_channel;
+			final IBuffer data;
+			try {
+				data = filter(msg, filters, filterCount, channel);
+			} catch (Throwable t) {
+				if (!channel.isClosed())
+					channel.onException(t);
+				return m_data != null;
+			}
+			if (data == null)
+				return m_data != null;
+
+			MsgArrayList pendingMsgs = m_pendingMsgs;
+			if (pendingMsgs == null) {
+				pendingMsgs = new MsgArrayList();
+				m_pendingMsgs = pendingMsgs;
+				m_pendingData = new MsgArrayList();
+			}
+
+			final IBuffer pending = m_data;
+			if (pending == null)
+				m_data = data;
+			else
+				data.drainTo(pending);
+
+			// The data drained is kept open until the message is sent
+			pendingMsgs.add(msg);
+			m_pendingData.add(data);
+
+			if (pendingMsgs.size() < cs.maxMessagesPerFlush() && m_data.remaining() < cs.maxBytesPerFlush())
+				return true;
+
+			return !flush(cs);
+		}
+
+		// Returns false if the socket buffer is full and the rest of the
+		// pending data has to be written on the next OP_WRITE
+		private boolean flush(IChannelService cs) {
+			final IBuffer data = m_data;
+			if (data == null || m_blocked)
+				return !m_blocked;
+
+			final Channel channel = m_channel;
+			try {
+				if (!write(data, cs, channel.writableByteChannel())) {
+					m_blocked = true;
+					hold(data);
+					channel.onWriteRequired();
+					return false;
+				}
+			} catch (Throwable t) {
+				unhold();
+				releasePending();
+				if (!channel.isClosed())
+					channel.onException(t);
+				return true;
+			}
+
+			final MsgArrayList pendingMsgs = m_pendingMsgs;
+			final MsgArrayList pendingData = m_pendingData;
+			final int n = pendingMsgs.size();
+			m_data = null;
+			unhold();
+			for (int i = 0; i < n; ++i) {
+				final IBuffer sent = (IBuffer) pendingData.take(i);
+				try {
+					cs.onMessageSent(channel, pendingMsgs.take(i));
+				} finally {
+					sent.close();
+				}
+			}
+			pendingMsgs.size(0);
+			pendingData.size(0);
+			return true;
+		}
+
+		private void releasePending() {
+			m_data = null;
+			m_pendingData.release();
+			m_pendingMsgs.size(0);
+		}
+
+		private static boolean write(IBuffer data, IChannelService cs, WritableByteChannel wbc) throws IOException {
+			return cs.gatheringWrite() || isDirect(cs.getBufferFactory()) ? gatheringWrite(data, wbc)
+					: copyWrite(data, cs, wbc);
+		}
+
+		// If returns false, the socket buffer is full and the rest of the data
+		// has to be written on the next OP_WRITE
+		private static boolean copyWrite(IBuffer data, IChannelService cs, WritableByteChannel wbc) throws IOException {
+			final ByteBuffer bb = cs.getChannelAdmin().sendDirectBuffer();
+			while (!data.isEmpty()) {
+				data.mark();
+				data.read(bb, Codec.byteBuffer());
+				bb.flip();
+				int len = 0;
+				do {
+					final int n = wbc.write(bb);
+					len += n;
+					if (n < 1) {
+						data.reset();
+						data.skip(len);
+						data.compact();
+						return false;
+					}
+				} while (bb.hasRemaining());
+				bb.clear();
+			}
+			return true;
+		}
+
+		// Writes the units of the given data out in place with no copy into the
+		// send direct buffer. The position of the data is the cursor of any
+		// partial write, so no compaction is needed.
+		private static boolean gatheringWrite(IBuffer data, WritableByteChannel wbc) throws IOException {
+			while (!data.isEmpty()) {
+				if (data.writeOut(wbc) < 1)
+					return false;
+			}
+			return true;
+		}
+
 		private void clear(boolean newMsg, IBuffer data) {
 			if (!newMsg) {
 				m_data = null;
 				m_msg = null;
+				unhold();
 			}
 			data.close();
 		}
 
+		// Accounts the data left unwritten till the next OP_WRITE as pending
+		private void hold(IBuffer data) {
+			final long size = data.remaining();
+			pending(size - m_dataSize);
+			m_dataSize = size;
+		}
+
+		private void unhold() {
+			pending(-m_dataSize);
+			m_dataSize = 0L;
+		}
+
+		private void pending(long delta) {
+			if (delta == 0L)
+				return;
+			final long pendingBytes = m_pendingBytes + delta;
+			m_pendingBytes = pendingBytes;
+			m_channel.onPendingBytesChanged(pendingBytes);
+		}
+
 		private IBuffer filter(Object msg, IFilter<?, ?>[] filterArray, int index, Channel channel) {
 			IBuffer data = null;
 			if (index > 0) {
@@ -591,6 +882,8 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		m_id = generateId();
 		m_channelService = channelService;
 		m_closed = new AtomicBoolean(false);
+		m_readState = new AtomicInteger(0);
+		m_writable = true;
 	}
 
 	@Override
@@ -617,9 +910,77 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		}
 	}
 
+	// Registers the interest in reading unless reading is suspended or
+	// throttled, in which case this channel is parked till it's resumed.
 	@Override
 	public final void onReadRequired() {
-		m_selector.onReadRequired(this);
+		final AtomicInteger readState = m_readState;
+		for (;;) {
+			final int state = readState.get();
+			final boolean suspended = (state & READ_SUSPENDED) != 0;
+			final IChannelAdmin ca = m_channelService.getChannelAdmin();
+			if (!suspended && !ca.isReadThrottled()) {
+				m_selector.onReadRequired(this);
+				return;
+			}
+
+			if (readState.compareAndSet(state, state | READ_PARKED)) {
+				if (!suspended)
+					ca.onReadThrottled(this);
+				return;
+			}
+		}
+	}
+
+	final boolean isReadPaused() {
+		return (m_readState.get() & READ_SUSPENDED) != 0 || m_channelService.getChannelAdmin().isReadThrottled();
+	}
+
+	final void clearReadInterest() {
+		final SelectionKey selectionKey = m_selectionKey;
+		selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+	}
+
+	@Override
+	public final void onReadUnthrottled() {
+		final AtomicInteger readState = m_readState;
+		for (;;) {
+			final int state = readState.get();
+			if ((state & READ_PARKED) == 0 || (state & READ_SUSPENDED) != 0)
+				return;
+
+			if (readState.compareAndSet(state, state & ~READ_PARKED)) {
+				if (!isClosed())
+					onReadRequired();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public final void suspendRead() {
+		final AtomicInteger readState = m_readState;
+		for (;;) {
+			final int state = readState.get();
+			if ((state & READ_SUSPENDED) != 0 || readState.compareAndSet(state, state | READ_SUSPENDED))
+				return;
+		}
+	}
+
+	@Override
+	public final void resumeRead() {
+		final AtomicInteger readState = m_readState;
+		for (;;) {
+			final int state = readState.get();
+			if ((state & READ_SUSPENDED) == 0)
+				return;
+
+			if (readState.compareAndSet(state, 0)) {
+				if ((state & READ_PARKED) != 0 && !isClosed())
+					onReadRequired();
+				return;
+			}
+		}
 	}
 
 	@Override
@@ -633,6 +994,23 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		return timeoutNotifier.schedule(timeout);
 	}
 
+	@Override
+	public final boolean scheduleLazyIdleTimeout(int timeout) {
+		final ITimeoutNotifier timeoutNotifier = m_timeoutNotifier;
+		if (timeoutNotifier == null)
+			return false;
+
+		timeoutNotifier.setListener(IdleTimeoutListener.INST);
+		timeoutNotifier.setExecutor(m_ioWorker);
+		return timeoutNotifier.scheduleLazily(timeout, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public final boolean touch() {
+		final ITimeoutNotifier timeoutNotifier = m_timeoutNotifier;
+		return timeoutNotifier != null && timeoutNotifier.touch();
+	}
+
 	@Override
 	public final boolean scheduleConnectTimeout(int timeout) {
 		final ITimeoutNotifier timeoutNotifier = m_timeoutNotifier;
@@ -641,7 +1019,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 
 		timeoutNotifier.setListener(ConnectTimeoutListener.INST);
 		timeoutNotifier.setExecutor(m_ioWorker);
-		return timeoutNotifier.schedule(timeout);
+		return timeoutNotifier.schedule(timeout, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
@@ -652,7 +1030,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 
 		timeoutNotifier.setListener(ReadTimeoutListener.INST);
 		timeoutNotifier.setExecutor(m_ioWorker);
-		return timeoutNotifier.schedule(timeout);
+		return timeoutNotifier.schedule(timeout, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
@@ -763,6 +1141,11 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		return m_closed.get();
 	}
 
+	@Override
+	public final boolean isWritable() {
+		return m_writable;
+	}
+
 	@Override
 	public final Object attach(Object attachment) {
 		final Object oldAttachment = m_attachment;
@@ -832,6 +1215,11 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		m_ioWorker.execute(m_readThread);
 	}
 
+	@Override
+	public final void onReadInline() {
+		m_readThread.readInline();
+	}
+
 	@Override
 	public final void onWrite() {
 		m_ioWorker.perform(m_writeThread);
@@ -887,26 +1275,54 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 
 	// If returns false, this channel need be closed
 	final boolean onReadIn(ByteBuffer bb) {
-		MsgArrayList outMsgs = MsgArrayList.get();
-		MsgArrayList inMsgs = null;
-		final IChannelService cs = m_channelService;
-		final IFilter<?, ?>[] filters = cs.getFilterChain();
-		final int m = filters.length;
+		final IFilter<?, ?>[] filters = m_channelService.getFilterChain();
+		final MsgArrayList outMsgs = MsgArrayList.get();
 		try {
-			if (!onAccumulate(filters, outMsgs, bb))
-				return false;
+			return onAccumulate(filters, outMsgs, bb) && onFilter(filters, outMsgs);
+		} finally {
+			outMsgs.close();
+		}
+	}
 
-			if (outMsgs.isEmpty())
-				return true;
+	// If returns false, this channel need be closed
+	final boolean onReadIn(IBuffer data) {
+		final IFilter<?, ?>[] filters = m_channelService.getFilterChain();
+		final MsgArrayList inMsgs = MsgArrayList.get();
+		final MsgArrayList outMsgs = MsgArrayList.get();
+		try {
+			return onAccumulate(0, filters, inMsgs, outMsgs, data) && onFilter(filters, outMsgs);
+		} finally {
+			inMsgs.close();
+			outMsgs.close();
+		}
+	}
 
-			if (m < 2) {
-				for (int i = 0, n = outMsgs.size(); i < n; ++i)
-					cs.onMessageReceived(this, outMsgs.take(i));
-				return true;
-			}
+	static long sizeOf(Object msg) {
+		return msg instanceof IBuffer ? ((IBuffer) msg).remaining() : 0L;
+	}
+
+	static boolean isDirect(IBufferFactory bf) {
+		return bf instanceof BufferFactory && ((BufferFactory) bf).isDirect();
+	}
+
+	// Passes the given messages having arrived at the first filter through
+	// the rest of the filter chain
+	private boolean onFilter(IFilter<?, ?>[] filters, MsgArrayList msgs) {
+		if (msgs.isEmpty())
+			return true;
 
-			inMsgs = outMsgs;
-			outMsgs = MsgArrayList.get();
+		final IChannelService cs = m_channelService;
+		final int m = filters.length;
+		if (m < 2) {
+			for (int i = 0, n = msgs.size(); i < n; ++i)
+				cs.onMessageReceived(this, msgs.take(i));
+			return true;
+		}
+
+		final MsgArrayList temp = MsgArrayList.get();
+		try {
+			MsgArrayList inMsgs = msgs;
+			MsgArrayList outMsgs = temp;
 			Object in = inMsgs.take(0);
 			for (int k = 1; k < m; ++k) {
 				if (in instanceof IBuffer) {
@@ -926,9 +1342,9 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 				if (outMsgs.isEmpty())
 					return true;
 
-				final MsgArrayList temp = inMsgs;
+				final MsgArrayList swap = inMsgs;
 				inMsgs = outMsgs;
-				outMsgs = temp;
+				outMsgs = swap;
 
 				in = inMsgs.take(0);
 			}
@@ -937,9 +1353,7 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 			for (int i = 1, n = inMsgs.size(); i < n; ++i)
 				cs.onMessageReceived(this, inMsgs.take(i));
 		} finally {
-			if (inMsgs != null)
-				inMsgs.close();
-			outMsgs.close();
+			temp.close();
 		}
 		return true;
 	}
@@ -948,6 +1362,30 @@ public abstract class Channel implements IChannel, IDumpable, Runnable {
 		m_selector.onWriteRequired(this);
 	}
 
+	// Called on the IO thread whenever the number of outbound bytes pending
+	// on this channel changes
+	final void onPendingBytesChanged(long pendingBytes) {
+		final IChannelService cs = m_channelService;
+		final boolean writable;
+		if (m_writable) {
+			final long highWatermark = cs.highWatermark();
+			if (highWatermark < 1L || pendingBytes <= highWatermark)
+				return;
+			writable = false;
+		} else {
+			if (pendingBytes > cs.lowWatermark())
+				return;
+			writable = true;
+		}
+
+		m_writable = writable;
+		try {
+			cs.onChannelWritabilityChanged(this, writable);
+		} catch (Throwable t) {
+			onException(t);
+		}
+	}
+
 	private static void write(ByteBuffer src, IBuffer dst, int length) {
 		final int limit = src.limit();
 		src.limit(src.position() + length);
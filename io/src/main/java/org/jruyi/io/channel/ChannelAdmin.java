@@ -15,11 +15,17 @@ package org.jruyi.io.channel;
 
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.jruyi.common.IScheduler;
 import org.jruyi.timeoutadmin.ITimeoutAdmin;
 import org.jruyi.timeoutadmin.ITimeoutNotifier;
+import org.jruyi.tpe.IExecutorProfiler;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +39,9 @@ public final class ChannelAdmin implements IChannelAdmin {
 
 	private static int s_msgId = -1;
 
+	// in milliseconds
+	private static final long READ_THROTTLE_CHECK_INTERVAL = 10L;
+
 	private BufferCache m_recvDirectBuffer;
 	private BufferCache m_sendDirectBuffer;
 
@@ -42,7 +51,19 @@ public final class ChannelAdmin implements IChannelAdmin {
 	private SelectorThread[] m_sts;
 	private int m_stMask;
 
+	// If true, each selector thread is a shard serving as the IO worker of
+	// its own channels as well
+	private boolean m_shardMode;
+
 	private ITimeoutAdmin m_tm;
+	private IScheduler m_scheduler;
+	private IExecutorProfiler m_executorProfiler;
+
+	private int m_readThrottleQueueThreshold;
+	private int m_readResumeQueueThreshold;
+	private volatile boolean m_readThrottled;
+	private ConcurrentLinkedQueue<IChannel> m_throttledChannels;
+	private ScheduledFuture<?> m_readThrottleCheck;
 
 	static final class BufferCache extends ThreadLocal<ByteBuffer> {
 
@@ -62,19 +83,49 @@ public final class ChannelAdmin implements IChannelAdmin {
 		}
 	}
 
+	// Throttles reading on all the channels while the queue of the executor
+	// service is longer than the throttle threshold, until it gets back to
+	// the resume threshold.
+	final class ReadThrottleCheck implements Runnable {
+
+		@Override
+		public void run() {
+			final IExecutorProfiler executorProfiler = m_executorProfiler;
+			if (executorProfiler == null)
+				m_readThrottled = false;
+			else {
+				final int queueLength = executorProfiler.getCurrentQueueLength();
+				if (m_readThrottled) {
+					if (queueLength <= m_readResumeQueueThreshold)
+						m_readThrottled = false;
+				} else if (queueLength > m_readThrottleQueueThreshold) {
+					m_readThrottled = true;
+					c_logger.debug("Read throttled: queueLength={}", queueLength);
+				}
+			}
+
+			if (!m_readThrottled)
+				resumeThrottledChannels();
+		}
+	}
+
 	@Override
 	public void onRegisterRequired(ISelectableChannel channel) {
-		getSelectorThread(channel.id().intValue()).onRegisterRequired(channel);
+		final int id = channel.id().intValue();
+		channel.ioWorker(getIoWorker(id));
+		getSelectorThread(id).onRegisterRequired(channel);
 	}
 
 	@Override
 	public void onConnectRequired(ISelectableChannel channel) {
-		getSelectorThread(channel.id().intValue()).onConnectRequired(channel);
+		final int id = channel.id().intValue();
+		channel.ioWorker(getIoWorker(id));
+		getSelectorThread(id).onConnectRequired(channel);
 	}
 
 	@Override
 	public void onAccept(ISelectableChannel channel) {
-		channel.ioWorker(getIoThread(channel.id().intValue()));
+		channel.ioWorker(getIoWorker(channel.id().intValue()));
 		channel.onAccept();
 	}
 
@@ -83,6 +134,16 @@ public final class ChannelAdmin implements IChannelAdmin {
 		return m_tm.createNotifier(channel);
 	}
 
+	@Override
+	public boolean isReadThrottled() {
+		return m_readThrottled;
+	}
+
+	@Override
+	public void onReadThrottled(IChannel channel) {
+		m_throttledChannels.offer(channel);
+	}
+
 	@Override
 	public ByteBuffer recvDirectBuffer() {
 		final ByteBuffer bb = m_recvDirectBuffer.get();
@@ -99,7 +160,7 @@ public final class ChannelAdmin implements IChannelAdmin {
 
 	@Override
 	public void performIoTask(IIoTask task, Object msg) {
-		getIoThread(++s_msgId).perform(task, msg, null, 0);
+		getIoWorker(++s_msgId).perform(task, msg, null, 0);
 	}
 
 	@Reference(name = "timeoutAdmin", policy = ReferencePolicy.DYNAMIC)
@@ -112,6 +173,26 @@ public final class ChannelAdmin implements IChannelAdmin {
 			m_tm = null;
 	}
 
+	@Reference(name = "scheduler", policy = ReferencePolicy.DYNAMIC)
+	synchronized void setScheduler(IScheduler scheduler) {
+		m_scheduler = scheduler;
+	}
+
+	synchronized void unsetScheduler(IScheduler scheduler) {
+		if (m_scheduler == scheduler)
+			m_scheduler = null;
+	}
+
+	@Reference(name = "executorProfiler", cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+	synchronized void setExecutorProfiler(IExecutorProfiler executorProfiler) {
+		m_executorProfiler = executorProfiler;
+	}
+
+	synchronized void unsetExecutorProfiler(IExecutorProfiler executorProfiler) {
+		if (m_executorProfiler == executorProfiler)
+			m_executorProfiler = null;
+	}
+
 	void activate(Map<String, ?> properties) throws Throwable {
 		c_logger.info("Activating ChannelAdmin...");
 
@@ -119,13 +200,19 @@ public final class ChannelAdmin implements IChannelAdmin {
 		m_sendDirectBuffer = new BufferCache(initCapacityOfSendDirectBuffer(properties));
 
 		final int capacityOfIoRingBuffer = capacityOfIoRingBuffer(properties);
-
-		int count = numberOfIoThreads(properties);
+		final boolean shardMode = shardMode(properties);
+		final boolean readInSelector = shardMode || readInSelector(properties);
+		final IoWaitStrategy waitStrategy = IoWaitStrategy.get((String) properties.get("waitStrategy"));
+		c_logger.info("waitStrategy={}", waitStrategy);
+		m_shardMode = shardMode;
+
+		// no IO threads in shard mode
+		int count = shardMode ? 0 : numberOfIoThreads(properties);
 		final IoThread[] iots = new IoThread[count];
 		for (int i = 0; i < count; ++i) {
 			@SuppressWarnings("resource")
 			final IoThread iot = new IoThread();
-			iot.open(i, capacityOfIoRingBuffer);
+			iot.open(i, capacityOfIoRingBuffer, waitStrategy);
 			iots[i] = iot;
 		}
 
@@ -133,16 +220,22 @@ public final class ChannelAdmin implements IChannelAdmin {
 		m_iots = iots;
 
 		try {
-			count = numberOfSelectors(properties);
-			int capacityOfSelectorRingBuffer = capacityOfIoRingBuffer * count
-					/ Runtime.getRuntime().availableProcessors();
-			capacityOfSelectorRingBuffer = Util.ceilingNextPowerOfTwo(capacityOfSelectorRingBuffer);
+			int capacityOfSelectorRingBuffer;
+			if (shardMode) {
+				count = numberOfIoThreads(properties);
+				capacityOfSelectorRingBuffer = capacityOfIoRingBuffer;
+			} else {
+				count = numberOfSelectors(properties);
+				capacityOfSelectorRingBuffer = capacityOfIoRingBuffer * count
+						/ Runtime.getRuntime().availableProcessors();
+				capacityOfSelectorRingBuffer = Util.ceilingNextPowerOfTwo(capacityOfSelectorRingBuffer);
+			}
 			final SelectorThread[] sts = new SelectorThread[count];
 			for (int i = 0; i < count; ++i) {
 				@SuppressWarnings("resource")
 				final SelectorThread st = new SelectorThread();
 				try {
-					st.open(i, capacityOfSelectorRingBuffer);
+					st.open(i, capacityOfSelectorRingBuffer, readInSelector, waitStrategy);
 				} catch (Exception e) {
 					st.close();
 					while (i > 0)
@@ -158,12 +251,29 @@ public final class ChannelAdmin implements IChannelAdmin {
 			throw t;
 		}
 
+		m_throttledChannels = new ConcurrentLinkedQueue<IChannel>();
+		final int readThrottleQueueThreshold = readThrottleQueueThreshold(properties);
+		if (readThrottleQueueThreshold > 0) {
+			m_readThrottleQueueThreshold = readThrottleQueueThreshold;
+			m_readResumeQueueThreshold = readResumeQueueThreshold(properties, readThrottleQueueThreshold);
+			m_readThrottleCheck = m_scheduler.scheduleWithFixedDelay(new ReadThrottleCheck(),
+					READ_THROTTLE_CHECK_INTERVAL, READ_THROTTLE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
 		c_logger.info("ChannelAdmin activated");
 	}
 
 	void deactivate() {
 		c_logger.info("Deactivating ChannelAdmin...");
 
+		final ScheduledFuture<?> readThrottleCheck = m_readThrottleCheck;
+		if (readThrottleCheck != null) {
+			m_readThrottleCheck = null;
+			readThrottleCheck.cancel(false);
+		}
+		m_readThrottled = false;
+		resumeThrottledChannels();
+
 		final SelectorThread[] sts = m_sts;
 		m_sts = null;
 		for (SelectorThread st : sts)
@@ -181,12 +291,24 @@ public final class ChannelAdmin implements IChannelAdmin {
 			iot.close();
 	}
 
+	private void resumeThrottledChannels() {
+		final ConcurrentLinkedQueue<IChannel> channels = m_throttledChannels;
+		IChannel channel;
+		while ((channel = channels.poll()) != null) {
+			try {
+				channel.onReadUnthrottled();
+			} catch (Throwable t) {
+				channel.onException(t);
+			}
+		}
+	}
+
 	private SelectorThread getSelectorThread(int id) {
 		return m_sts[id & m_stMask];
 	}
 
-	private IoThread getIoThread(int id) {
-		return m_iots[id & m_iotMask];
+	private IIoWorker getIoWorker(int id) {
+		return m_shardMode ? getSelectorThread(id) : m_iots[id & m_iotMask];
 	}
 
 	private static int initCapacityOfRecvDirectBuffer(Map<String, ?> properties) {
@@ -207,6 +329,30 @@ public final class ChannelAdmin implements IChannelAdmin {
 		return capacity;
 	}
 
+	private static int readThrottleQueueThreshold(Map<String, ?> properties) {
+		final Object value = properties.get("readThrottleQueueThreshold");
+		return value == null ? 0 : (Integer) value;
+	}
+
+	private static int readResumeQueueThreshold(Map<String, ?> properties, int readThrottleQueueThreshold) {
+		final Object value = properties.get("readResumeQueueThreshold");
+		int threshold;
+		if (value == null || (threshold = (Integer) value) < 0 || threshold > readThrottleQueueThreshold)
+			threshold = readThrottleQueueThreshold / 2;
+
+		return threshold;
+	}
+
+	private static boolean shardMode(Map<String, ?> properties) {
+		final Object value = properties.get("shardMode");
+		return value != null && (Boolean) value;
+	}
+
+	private static boolean readInSelector(Map<String, ?> properties) {
+		final Object value = properties.get("readInSelector");
+		return value != null && (Boolean) value;
+	}
+
 	private static int capacityOfIoRingBuffer(Map<String, ?> properties) {
 		final Object value = properties.get("capacityOfIoRingBuffer");
 		int capacity;
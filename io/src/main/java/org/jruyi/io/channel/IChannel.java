@@ -21,6 +21,7 @@ public interface IChannel extends ISession, ISelectableChannel {
 
 	public IChannelService channelService();
 
+	// timeout in milliseconds
 	public void connect(int timeout);
 
 	public void receive(ByteBuffer data);
@@ -29,10 +30,22 @@ public interface IChannel extends ISession, ISelectableChannel {
 
 	public void onReadRequired();
 
+	// Called by the channel admin to resume reading once it stops throttling
+	public void onReadUnthrottled();
+
 	public boolean scheduleIdleTimeout(int timeout);
 
+	// Schedules the idle timeout once. Activities are then recorded by
+	// touching, and the timeout is postponed on expiry if there were any.
+	public boolean scheduleLazyIdleTimeout(int timeout);
+
+	// Returns false if no lazy idle timeout is pending
+	public boolean touch();
+
+	// timeout in milliseconds
 	public boolean scheduleConnectTimeout(int timeout);
 
+	// timeout in milliseconds
 	public boolean scheduleReadTimeout(int timeout);
 
 	public boolean cancelTimeout();
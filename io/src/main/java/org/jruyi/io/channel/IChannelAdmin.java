@@ -29,6 +29,12 @@ public interface IChannelAdmin {
 
 	public ITimeoutNotifier createTimeoutNotifier(ISelectableChannel channel);
 
+	// If true, channels have to hold back registering the interest in
+	// reading, and call onReadThrottled instead.
+	public boolean isReadThrottled();
+
+	public void onReadThrottled(IChannel channel);
+
 	public ByteBuffer recvDirectBuffer();
 
 	public ByteBuffer sendDirectBuffer();
@@ -26,6 +26,20 @@ public interface IChannelService {
 
 	public long throttle();
 
+	public boolean gatheringWrite();
+
+	// Messages queued for a channel within one batch of IO events are written
+	// out together once more than one message per flush is allowed.
+	public int maxMessagesPerFlush();
+
+	public int maxBytesPerFlush();
+
+	// A high watermark not greater than 0 means no limit on pending outbound
+	// data.
+	public long highWatermark();
+
+	public long lowWatermark();
+
 	public IFilter<?, ?>[] getFilterChain();
 
 	public void onChannelOpened(IChannel channel);
@@ -39,6 +53,8 @@ public interface IChannelService {
 
 	public void onChannelException(IChannel channel, Throwable t);
 
+	public void onChannelWritabilityChanged(IChannel channel, boolean writable);
+
 	public void onChannelIdleTimedOut(IChannel channel);
 
 	public void onChannelConnectTimedOut(IChannel channel);
@@ -23,4 +23,8 @@ public interface IIoWorker extends Executor {
 	public void perform(IIoTask task);
 
 	public void perform(IIoTask task, Object msg, IFilter<?, ?>[] filters, int filterCount);
+
+	// Runs the given task once the events currently available to this worker
+	// are all processed. It has to be called on the thread of this worker.
+	public void defer(Runnable task);
 }
@@ -25,6 +25,9 @@ public interface ISelectableChannel extends ICloseable {
 
 	public void onRead();
 
+	// Called on the selector thread with the interest in reading kept set
+	public void onReadInline();
+
 	public void onWrite();
 
 	public void ioWorker(IIoWorker ioWorker);
@@ -14,6 +14,7 @@
 
 package org.jruyi.io.channel;
 
+import java.util.ArrayList;
 import java.util.concurrent.Executor;
 
 import org.jruyi.common.ICloseable;
@@ -26,12 +27,14 @@ import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
 
 final class IoThread implements ICloseable, EventHandler<IoEvent>, IIoWorker {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(IoThread.class);
 
 	private Disruptor<IoEvent> m_disruptor;
+	private final ArrayList<Runnable> m_deferredTasks = new ArrayList<Runnable>();
 
 	static final class IoExecutor implements Executor {
 
@@ -50,11 +53,15 @@ final class IoThread implements ICloseable, EventHandler<IoEvent>, IIoWorker {
 			event.task().run(event.msg(), event.filters(), event.filterCount());
 		else
 			command.run();
+
+		if (endOfBatch)
+			runDeferredTasks();
 	}
 
 	@SuppressWarnings("unchecked")
-	public void open(int id, int capacity) {
-		final Disruptor<IoEvent> disruptor = new Disruptor<IoEvent>(IoEventFactory.INST, capacity, new IoExecutor());
+	public void open(int id, int capacity, IoWaitStrategy waitStrategy) {
+		final Disruptor<IoEvent> disruptor = new Disruptor<IoEvent>(IoEventFactory.INST, capacity, new IoExecutor(),
+				ProducerType.MULTI, waitStrategy.newWaitStrategy());
 		m_disruptor = disruptor;
 		disruptor.handleEventsWith(this);
 		disruptor.start();
@@ -105,6 +112,11 @@ final class IoThread implements ICloseable, EventHandler<IoEvent>, IIoWorker {
 		}
 	}
 
+	@Override
+	public void defer(Runnable task) {
+		m_deferredTasks.add(task);
+	}
+
 	@Override
 	public void execute(Runnable command) {
 		final RingBuffer<IoEvent> ringBuffer = m_disruptor.getRingBuffer();
@@ -122,4 +134,17 @@ final class IoThread implements ICloseable, EventHandler<IoEvent>, IIoWorker {
 			ringBuffer.publish(sequence);
 		}
 	}
+
+	private void runDeferredTasks() {
+		final ArrayList<Runnable> tasks = m_deferredTasks;
+		// deferred tasks may defer further tasks
+		for (int i = 0; i < tasks.size(); ++i) {
+			try {
+				tasks.get(i).run();
+			} catch (Throwable t) {
+				c_logger.error("Unexpected Error", t);
+			}
+		}
+		tasks.clear();
+	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.channel;
+
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * How IO threads wait for events and selector threads wait for selected
+ * keys. All but {@code BLOCKING} trade CPU for latency.
+ */
+enum IoWaitStrategy {
+
+	BLOCKING("blocking") {
+		@Override
+		public WaitStrategy newWaitStrategy() {
+			return new BlockingWaitStrategy();
+		}
+	},
+	YIELDING("yielding") {
+		@Override
+		public WaitStrategy newWaitStrategy() {
+			return new YieldingWaitStrategy();
+		}
+	},
+	BUSY_SPIN("busySpin") {
+		@Override
+		public WaitStrategy newWaitStrategy() {
+			return new BusySpinWaitStrategy();
+		}
+	},
+	// spins, then yields, then blocks
+	ADAPTIVE("adaptive") {
+		@Override
+		public WaitStrategy newWaitStrategy() {
+			return new PhasedBackoffWaitStrategy(SPIN_TIMEOUT_IN_MICROS, YIELD_TIMEOUT_IN_MICROS,
+					TimeUnit.MICROSECONDS, new BlockingWaitStrategy());
+		}
+	};
+
+	// for IO threads in ADAPTIVE mode
+	static final long SPIN_TIMEOUT_IN_MICROS = 100L;
+	static final long YIELD_TIMEOUT_IN_MICROS = 1000L;
+
+	// for selector threads in ADAPTIVE mode, in idle loops
+	static final int SPIN_TRIES = 100;
+	static final int YIELD_TRIES = 100;
+
+	private final String m_name;
+
+	IoWaitStrategy(String name) {
+		m_name = name;
+	}
+
+	public abstract WaitStrategy newWaitStrategy();
+
+	public static IoWaitStrategy get(String name) {
+		if (name != null) {
+			for (IoWaitStrategy waitStrategy : values()) {
+				if (waitStrategy.m_name.equals(name))
+					return waitStrategy;
+			}
+		}
+		return BLOCKING;
+	}
+
+	@Override
+	public String toString() {
+		return m_name;
+	}
+}
@@ -14,11 +14,20 @@
 
 package org.jruyi.io.channel;
 
+import org.jruyi.io.IFilter;
+
 final class SelectorEvent {
 
 	private SelectorOp m_op;
 	private ISelectableChannel m_channel;
 
+	// shard mode only
+	private Runnable m_command;
+	private IIoTask m_task;
+	private Object m_msg;
+	private IFilter<?, ?>[] m_filters;
+	private int m_filterCount;
+
 	public void op(SelectorOp selectorOp) {
 		m_op = selectorOp;
 	}
@@ -36,4 +45,52 @@ final class SelectorEvent {
 		m_channel = null;
 		return channel;
 	}
+
+	public void command(Runnable command) {
+		m_command = command;
+	}
+
+	public Runnable command() {
+		final Runnable command = m_command;
+		m_command = null;
+		return command;
+	}
+
+	public void task(IIoTask task) {
+		m_task = task;
+	}
+
+	public IIoTask task() {
+		final IIoTask task = m_task;
+		m_task = null;
+		return task;
+	}
+
+	public void msg(Object msg) {
+		m_msg = msg;
+	}
+
+	public Object msg() {
+		final Object msg = m_msg;
+		m_msg = null;
+		return msg;
+	}
+
+	public void filters(IFilter<?, ?>[] filters) {
+		m_filters = filters;
+	}
+
+	public IFilter<?, ?>[] filters() {
+		final IFilter<?, ?>[] filters = m_filters;
+		m_filters = null;
+		return filters;
+	}
+
+	public void filterCount(int filterCount) {
+		m_filterCount = filterCount;
+	}
+
+	public int filterCount() {
+		return m_filterCount;
+	}
 }
@@ -19,11 +19,14 @@ import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.RejectedExecutionException;
 
 import org.jruyi.common.ICloseable;
 import org.jruyi.common.StrUtil;
+import org.jruyi.io.IFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,24 +34,65 @@ import com.lmax.disruptor.EventPoller;
 import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 
-final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoller.Handler<SelectorEvent> {
+/**
+ * In shard mode, a selector thread also serves as the IO worker of all the
+ * channels registered with it. Tasks from foreign threads are published to
+ * its ring buffer, while tasks from its own thread are queued locally.
+ */
+final class SelectorThread implements ICloseable, Runnable, ISelector, IIoWorker,
+		EventPoller.Handler<SelectorEvent> {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(SelectorThread.class);
 
 	private RingBuffer<SelectorEvent> m_ringBuffer;
+	private EventPoller<SelectorEvent> m_poller;
 	private Thread m_thread;
 	private Selector m_selector;
+	private boolean m_readInline;
+	private IoWaitStrategy m_waitStrategy;
+	// the sequence of the last event polled
+	private long m_sequence = -1L;
+	// Whether this thread is blocked or about to block in select(). If not,
+	// publishers need not wake the selector up.
+	private volatile boolean m_blocking;
+
+	// shard mode only
+	private final ArrayDeque<IoEvent> m_localTasks = new ArrayDeque<IoEvent>();
+	private final ArrayDeque<IoEvent> m_freeEvents = new ArrayDeque<IoEvent>();
+	private final ArrayList<Runnable> m_deferredTasks = new ArrayList<Runnable>();
 
 	@Override
 	public boolean onEvent(SelectorEvent event, long sequence, boolean endOfBatch) throws Exception {
-		event.op().run(this, event.channel());
+		m_sequence = sequence;
+		final SelectorOp op = event.op();
+		if (op != null)
+			op.run(this, event.channel());
+		else {
+			try {
+				final Runnable command = event.command();
+				if (command == null)
+					event.task().run(event.msg(), event.filters(), event.filterCount());
+				else
+					command.run();
+			} catch (Throwable t) {
+				c_logger.error("Unexpected Error", t);
+			}
+		}
+
+		if (endOfBatch)
+			runDeferredTasks();
 		return true;
 	}
 
-	public void open(int id, int capacity) throws Exception {
+	public void open(int id, int capacity, boolean readInline, IoWaitStrategy waitStrategy) throws Exception {
 		m_selector = Selector.open();
+		m_readInline = readInline;
+		m_waitStrategy = waitStrategy;
 		m_thread = new Thread(this, "jruyi-selector-" + id);
 		m_ringBuffer = RingBuffer.createMultiProducer(SelectorEventFactory.INST, capacity);
+		// Producers must not wrap the events the poller has not consumed yet
+		m_poller = m_ringBuffer.newPoller();
+		m_ringBuffer.addGatingSequences(m_poller.getSequence());
 
 		m_thread.start();
 	}
@@ -74,6 +118,7 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 			m_selector = null;
 		}
 
+		m_poller = null;
 		m_ringBuffer = null;
 	}
 
@@ -83,13 +128,15 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 
 		c_logger.info("{} started", currentThread.getName());
 
-		final EventPoller<SelectorEvent> poller = m_ringBuffer.newPoller();
+		final EventPoller<SelectorEvent> poller = m_poller;
 		final Selector selector = m_selector;
+		final boolean readInline = m_readInline;
+		int idleCount = 0;
 		try {
 			for (;;) {
 				final int n;
 				try {
-					n = selector.select();
+					n = select(selector, idleCount);
 				} catch (IOException e) {
 					c_logger.warn(StrUtil.join(currentThread.getName(), ": selector error"), e);
 					continue;
@@ -98,10 +145,15 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 				if (currentThread.isInterrupted())
 					break;
 
-				poller.poll(this);
+				if (poller.poll(this) == EventPoller.PollState.PROCESSING || n > 0)
+					idleCount = 0;
+				else
+					++idleCount;
 
-				if (n < 1)
+				if (n < 1) {
+					runLocalTasks();
 					continue;
+				}
 
 				final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
 				while (iter.hasNext()) {
@@ -115,8 +167,12 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 							channel.onConnect();
 						} else {
 							if (key.isReadable()) {
-								key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
-								channel.onRead();
+								if (readInline)
+									channel.onReadInline();
+								else {
+									key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+									channel.onRead();
+								}
 							}
 							if (key.isWritable()) {
 								key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
@@ -129,6 +185,8 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 						c_logger.warn(StrUtil.join(currentThread.getName(), ": ", channel), t);
 					}
 				}
+
+				runLocalTasks();
 			}
 		} catch (ClosedSelectorException e) {
 			c_logger.error(StrUtil.join(currentThread.getName(), ": selector closed unexpectedly"), e);
@@ -162,15 +220,147 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 		publish(SelectorOp.WRITE, channel);
 	}
 
-	private void publish(SelectorOp selectorOp, ISelectableChannel channel) {
+	@Override
+	public void perform(IIoTask task) {
+		perform(task, null, null, 0);
+	}
+
+	@Override
+	public void perform(IIoTask task, Object msg, IFilter<?, ?>[] filters, int filterCount) {
+		if (Thread.currentThread() == m_thread) {
+			m_localTasks.add(localEvent().task(task).msg(msg).filters(filters).filterCount(filterCount));
+			return;
+		}
+
 		final RingBuffer<SelectorEvent> ringBuffer = m_ringBuffer;
-		long sequence;
+		final long sequence = next(ringBuffer);
 		try {
-			sequence = ringBuffer.tryNext();
-		} catch (InsufficientCapacityException e) {
-			c_logger.warn("If you see this message quite a few, please try increasing numberOfSelectorThreads");
-			sequence = ringBuffer.next();
+			final SelectorEvent event = ringBuffer.get(sequence);
+			event.op(null);
+			event.task(task);
+			event.msg(msg);
+			event.filters(filters);
+			event.filterCount(filterCount);
+		} finally {
+			ringBuffer.publish(sequence);
 		}
+		wakeup();
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (Thread.currentThread() == m_thread) {
+			m_localTasks.add(localEvent().command(command));
+			return;
+		}
+
+		final RingBuffer<SelectorEvent> ringBuffer = m_ringBuffer;
+		final long sequence = next(ringBuffer);
+		try {
+			final SelectorEvent event = ringBuffer.get(sequence);
+			event.op(null);
+			event.command(command);
+		} finally {
+			ringBuffer.publish(sequence);
+		}
+		wakeup();
+	}
+
+	@Override
+	public void defer(Runnable task) {
+		m_deferredTasks.add(task);
+	}
+
+	private int select(Selector selector, int idleCount) throws IOException {
+		switch (m_waitStrategy) {
+		case BUSY_SPIN:
+			return selector.selectNow();
+		case YIELDING:
+			if (idleCount > 0)
+				Thread.yield();
+			return selector.selectNow();
+		case ADAPTIVE:
+			if (idleCount < IoWaitStrategy.SPIN_TRIES)
+				return selector.selectNow();
+			if (idleCount < IoWaitStrategy.SPIN_TRIES + IoWaitStrategy.YIELD_TRIES) {
+				Thread.yield();
+				return selector.selectNow();
+			}
+			return block(selector);
+		default:
+			return block(selector);
+		}
+	}
+
+	private int block(Selector selector) throws IOException {
+		m_blocking = true;
+		try {
+			// Events published before m_blocking is set may not have woken
+			// the selector up
+			if (m_ringBuffer.getCursor() > m_sequence)
+				return selector.selectNow();
+			return selector.select();
+		} finally {
+			m_blocking = false;
+		}
+	}
+
+	private void wakeup() {
+		if (m_blocking)
+			m_selector.wakeup();
+	}
+
+	private IoEvent localEvent() {
+		final IoEvent event = m_freeEvents.poll();
+		return event == null ? new IoEvent() : event;
+	}
+
+	// Runs until no task is left, not to block in select() with work queued
+	private void runLocalTasks() {
+		final ArrayDeque<IoEvent> tasks = m_localTasks;
+		do {
+			IoEvent event;
+			while ((event = tasks.poll()) != null) {
+				try {
+					final Runnable command = event.command();
+					if (command == null)
+						event.task().run(event.msg(), event.filters(), event.filterCount());
+					else
+						command.run();
+				} catch (Throwable t) {
+					c_logger.error("Unexpected Error", t);
+				} finally {
+					m_freeEvents.add(event);
+				}
+			}
+			// deferred tasks may queue further local tasks
+			runDeferredTasks();
+		} while (!tasks.isEmpty());
+	}
+
+	private void runDeferredTasks() {
+		final ArrayList<Runnable> tasks = m_deferredTasks;
+		// deferred tasks may defer further tasks
+		for (int i = 0; i < tasks.size(); ++i) {
+			try {
+				tasks.get(i).run();
+			} catch (Throwable t) {
+				c_logger.error("Unexpected Error", t);
+			}
+		}
+		tasks.clear();
+	}
+
+	private void publish(SelectorOp selectorOp, ISelectableChannel channel) {
+		// Publishing from the selector thread itself would deadlock on a full
+		// ring buffer, since only this thread drains it.
+		if (Thread.currentThread() == m_thread) {
+			selectorOp.run(this, channel);
+			return;
+		}
+
+		final RingBuffer<SelectorEvent> ringBuffer = m_ringBuffer;
+		final long sequence = next(ringBuffer);
 		try {
 			final SelectorEvent event = ringBuffer.get(sequence);
 			event.op(selectorOp);
@@ -178,6 +368,15 @@ final class SelectorThread implements ICloseable, Runnable, ISelector, EventPoll
 		} finally {
 			ringBuffer.publish(sequence);
 		}
-		m_selector.wakeup();
+		wakeup();
+	}
+
+	private static long next(RingBuffer<SelectorEvent> ringBuffer) {
+		try {
+			return ringBuffer.tryNext();
+		} catch (InsufficientCapacityException e) {
+			c_logger.warn("If you see this message quite a few, please try increasing numberOfSelectorThreads");
+			return ringBuffer.next();
+		}
 	}
 }
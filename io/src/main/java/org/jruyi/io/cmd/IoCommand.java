@@ -17,7 +17,9 @@ import java.util.Collection;
 
 import org.jruyi.common.IService;
 import org.jruyi.common.StrUtil;
+import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IoConstants;
+import org.jruyi.io.buffer.BufferFactory;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 
@@ -30,7 +32,7 @@ public final class IoCommand {
 	}
 
 	public static String[] commands() {
-		return new String[] { "list", "start", "stop" };
+		return new String[] { "list", "start", "stop", "buffer" };
 	}
 
 	public void start(String serviceId) throws Exception {
@@ -144,6 +146,33 @@ public final class IoCommand {
 		}
 	}
 
+	public void buffer() throws Exception {
+		final BundleContext context = m_context;
+		final Collection<ServiceReference<IBufferFactory>> references = context
+				.getServiceReferences(IBufferFactory.class, null);
+		for (ServiceReference<IBufferFactory> reference : references) {
+			final IBufferFactory bf = context.getService(reference);
+			if (!(bf instanceof BufferFactory))
+				continue;
+
+			final BufferFactory factory = (BufferFactory) bf;
+			final long hits = factory.poolHits();
+			final long total = hits + factory.poolMisses();
+			System.out.println(factory);
+			System.out.print("  Hits: ");
+			System.out.println(hits);
+			System.out.print("  Misses: ");
+			System.out.println(factory.poolMisses());
+			System.out.print("  Hit Rate: ");
+			System.out.println(total > 0 ? String.format("%.2f%%",
+					hits * 100.0 / total) : "-");
+			System.out.print("  Pooled Bytes: ");
+			System.out.println(factory.pooledBytes());
+			System.out.print("  Cross-thread Frees: ");
+			System.out.println(factory.crossThreadFrees());
+		}
+	}
+
 	private static String state(int state) {
 		switch (state) {
 		case IService.ACTIVE:
@@ -22,6 +22,11 @@ public class TcpChannelConf {
 	private String m_ip;
 	private Integer m_port;
 	private long m_throttle;
+	private boolean m_gatheringWrite;
+	private int m_maxMessagesPerFlush;
+	private int m_maxBytesPerFlush;
+	private long m_highWatermark;
+	private long m_lowWatermark;
 	private String[] m_filters;
 	private boolean m_reuseAddr;
 	private Boolean m_keepAlive;
@@ -36,6 +41,10 @@ public class TcpChannelConf {
 	public void initialize(Map<String, ?> properties) {
 		port((Integer) properties.get("port"));
 		throttle((Long) properties.get("throttle"));
+		gatheringWrite((Boolean) properties.get("gatheringWrite"));
+		maxMessagesPerFlush((Integer) properties.get("maxMessagesPerFlush"));
+		maxBytesPerFlush((Integer) properties.get("maxBytesPerFlush"));
+		watermarks((Integer) properties.get("highWatermark"), (Integer) properties.get("lowWatermark"));
 		filters((String[]) properties.get("filters"));
 		reuseAddr((Boolean) properties.get("reuseAddr"));
 		keepAlive((Boolean) properties.get("keepAlive"));
@@ -76,6 +85,55 @@ public class TcpChannelConf {
 		m_throttle = v;
 	}
 
+	public final boolean gatheringWrite() {
+		return m_gatheringWrite;
+	}
+
+	public final void gatheringWrite(Boolean gatheringWrite) {
+		m_gatheringWrite = gatheringWrite == null ? false : gatheringWrite;
+	}
+
+	public final int maxMessagesPerFlush() {
+		return m_maxMessagesPerFlush;
+	}
+
+	public final void maxMessagesPerFlush(Integer maxMessagesPerFlush) {
+		int v = maxMessagesPerFlush == null ? 1 : maxMessagesPerFlush;
+		if (v < 1)
+			v = 1;
+		m_maxMessagesPerFlush = v;
+	}
+
+	public final int maxBytesPerFlush() {
+		return m_maxBytesPerFlush;
+	}
+
+	public final void maxBytesPerFlush(Integer maxBytesPerFlush) {
+		int v = maxBytesPerFlush == null ? 1024 * 64 : maxBytesPerFlush;
+		if (v < 1)
+			v = Integer.MAX_VALUE;
+		m_maxBytesPerFlush = v;
+	}
+
+	public final long highWatermark() {
+		return m_highWatermark;
+	}
+
+	public final long lowWatermark() {
+		return m_lowWatermark;
+	}
+
+	public final void watermarks(Integer highWatermark, Integer lowWatermark) {
+		final long high = highWatermark == null || highWatermark < 0 ? 0L : highWatermark;
+		long low = lowWatermark == null ? high / 2 : lowWatermark;
+		if (low < 0L)
+			low = 0L;
+		else if (low > high)
+			low = high;
+		m_highWatermark = high;
+		m_lowWatermark = low;
+	}
+
 	public final String[] filters() {
 		return m_filters;
 	}
@@ -103,6 +103,31 @@ public abstract class AbstractTcpClient extends Service implements IChannelServi
 		return configuration().throttle();
 	}
 
+	@Override
+	public boolean gatheringWrite() {
+		return configuration().gatheringWrite();
+	}
+
+	@Override
+	public int maxMessagesPerFlush() {
+		return configuration().maxMessagesPerFlush();
+	}
+
+	@Override
+	public int maxBytesPerFlush() {
+		return configuration().maxBytesPerFlush();
+	}
+
+	@Override
+	public long highWatermark() {
+		return configuration().highWatermark();
+	}
+
+	@Override
+	public long lowWatermark() {
+		return configuration().lowWatermark();
+	}
+
 	@Override
 	public final IFilter<?, ?>[] getFilterChain() {
 		return m_filters;
@@ -122,6 +147,18 @@ public abstract class AbstractTcpClient extends Service implements IChannelServi
 		((IChannel) session).close();
 	}
 
+	@Override
+	public void onChannelWritabilityChanged(IChannel channel, boolean writable) {
+		final ISessionListener listener = m_listener;
+		if (listener != null) {
+			try {
+				listener.onWritabilityChanged(channel, writable);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(channel, " Unexpected Error: "), t);
+			}
+		}
+	}
+
 	@Override
 	public void onChannelException(IChannel channel, Throwable t) {
 		try {
@@ -260,14 +297,14 @@ public abstract class AbstractTcpClient extends Service implements IChannelServi
 	final void connect() {
 		@SuppressWarnings("resource")
 		final TcpChannel channel = new TcpChannel(this);
-		channel.connect(configuration().connectTimeoutInSeconds());
+		channel.connect(configuration().connectTimeout());
 	}
 
 	final void connect(Object attachment) {
 		@SuppressWarnings("resource")
 		final TcpChannel channel = new TcpChannel(this);
 		channel.attach(attachment);
-		channel.connect(configuration().connectTimeoutInSeconds());
+		channel.connect(configuration().connectTimeout());
 	}
 
 	final boolean cancelReadTimeout(IChannel channel) {
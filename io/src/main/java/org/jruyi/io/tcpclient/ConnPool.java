@@ -141,7 +141,7 @@ public final class ConnPool extends AbstractTcpClient implements IIoTask {
 			}
 		}
 
-		int timeout = m_conf.readTimeoutInSeconds();
+		int timeout = m_conf.readTimeout();
 		if (timeout < 0)
 			return;
 
@@ -155,7 +155,7 @@ public final class ConnPool extends AbstractTcpClient implements IIoTask {
 	@Override
 	public void onMessageReceived(IChannel channel, Object msg) {
 		if (!cancelReadTimeout(channel) // channel has timed out
-				|| m_conf.readTimeoutInSeconds() == 0 // no response is expected
+				|| m_conf.readTimeout() == 0 // no response is expected
 		) {
 			if (msg instanceof Closeable) {
 				try {
@@ -56,7 +56,7 @@ public final class TcpClient extends AbstractTcpClient {
 				c_logger.error(StrUtil.join(channel, " Unexpected Error: "), t);
 			}
 		}
-		int timeout = m_conf.readTimeoutInSeconds();
+		int timeout = m_conf.readTimeout();
 		if (timeout > 0)
 			scheduleReadTimeout(channel, timeout);
 		else if (timeout == 0)
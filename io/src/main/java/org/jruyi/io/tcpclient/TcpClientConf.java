@@ -24,6 +24,8 @@ class TcpClientConf extends TcpChannelConf {
 	private static final Method[] c_mProps;
 	private Integer m_connectTimeoutInSeconds;
 	private Integer m_readTimeoutInSeconds;
+	private Integer m_connectTimeoutInMillis;
+	private Integer m_readTimeoutInMillis;
 
 	static {
 		c_mProps = new Method[M_PROPS.length];
@@ -47,6 +49,8 @@ class TcpClientConf extends TcpChannelConf {
 		addr((String) properties.get("addr"));
 		connectTimeoutInSeconds((Integer) properties.get("connectTimeoutInSeconds"));
 		readTimeoutInSeconds((Integer) properties.get("readTimeoutInSeconds"));
+		connectTimeoutInMillis((Integer) properties.get("connectTimeoutInMillis"));
+		readTimeoutInMillis((Integer) properties.get("readTimeoutInMillis"));
 	}
 
 	public final String addr() {
@@ -73,6 +77,36 @@ class TcpClientConf extends TcpChannelConf {
 		m_readTimeoutInSeconds = readTimeoutInSeconds == null ? 30 : readTimeoutInSeconds;
 	}
 
+	public final Integer connectTimeoutInMillis() {
+		return m_connectTimeoutInMillis;
+	}
+
+	// Overrides connectTimeoutInSeconds if not null
+	public final void connectTimeoutInMillis(Integer connectTimeoutInMillis) {
+		m_connectTimeoutInMillis = connectTimeoutInMillis;
+	}
+
+	public final Integer readTimeoutInMillis() {
+		return m_readTimeoutInMillis;
+	}
+
+	// Overrides readTimeoutInSeconds if not null
+	public final void readTimeoutInMillis(Integer readTimeoutInMillis) {
+		m_readTimeoutInMillis = readTimeoutInMillis;
+	}
+
+	// the effective connect timeout in milliseconds
+	final int connectTimeout() {
+		final Integer connectTimeoutInMillis = m_connectTimeoutInMillis;
+		return connectTimeoutInMillis == null ? toMillis(m_connectTimeoutInSeconds) : connectTimeoutInMillis;
+	}
+
+	// the effective read timeout in milliseconds
+	final int readTimeout() {
+		final Integer readTimeoutInMillis = m_readTimeoutInMillis;
+		return readTimeoutInMillis == null ? toMillis(m_readTimeoutInSeconds) : readTimeoutInMillis;
+	}
+
 	public final boolean isMandatoryChanged(TcpClientConf newConf) throws Exception {
 		for (Method m : c_mProps) {
 			Object v1 = m.invoke(this);
@@ -86,4 +120,9 @@ class TcpClientConf extends TcpChannelConf {
 
 		return false;
 	}
+
+	// keeps negative values negative and clamps overflowing values
+	private static int toMillis(int seconds) {
+		return seconds > 0 ? (int) Math.min(seconds * 1000L, Integer.MAX_VALUE) : seconds;
+	}
 }
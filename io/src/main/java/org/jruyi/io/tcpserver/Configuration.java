@@ -21,11 +21,14 @@ import org.jruyi.io.tcp.TcpChannelConf;
 public final class Configuration extends TcpChannelConf {
 
 	private static final String[] M_PROPS = { "bindAddr", "port", "backlog",
-			"reuseAddr", "recvBufSize", "performancePreferences" };
+			"reuseAddr", "recvBufSize", "performancePreferences",
+			"numberOfAcceptors" };
 	private static final Method[] c_mProps;
 	private Integer m_backlog;
 	private Integer m_sessionIdleTimeoutInSeconds;
+	private Boolean m_lazyIdleTimeout;
 	private Integer m_initCapacityOfChannelMap;
+	private Integer m_numberOfAcceptors;
 
 	static {
 		c_mProps = new Method[M_PROPS.length];
@@ -50,8 +53,10 @@ public final class Configuration extends TcpChannelConf {
 		backlog((Integer) properties.get("backlog"));
 		sessionIdleTimeoutInSeconds((Integer) properties
 				.get("sessionIdleTimeoutInSeconds"));
+		lazyIdleTimeout((Boolean) properties.get("lazyIdleTimeout"));
 		initCapacityOfChannelMap((Integer) properties
 				.get("initCapacityOfChannelMap"));
+		numberOfAcceptors((Integer) properties.get("numberOfAcceptors"));
 	}
 
 	public Integer backlog() {
@@ -79,6 +84,15 @@ public final class Configuration extends TcpChannelConf {
 				: sessionIdleTimeoutInSeconds;
 	}
 
+	public Boolean lazyIdleTimeout() {
+		return m_lazyIdleTimeout;
+	}
+
+	public void lazyIdleTimeout(Boolean lazyIdleTimeout) {
+		m_lazyIdleTimeout = lazyIdleTimeout == null ? Boolean.FALSE
+				: lazyIdleTimeout;
+	}
+
 	public Integer initCapacityOfChannelMap() {
 		return m_initCapacityOfChannelMap;
 	}
@@ -88,6 +102,15 @@ public final class Configuration extends TcpChannelConf {
 				: initCapacityOfChannelMap;
 	}
 
+	public Integer numberOfAcceptors() {
+		return m_numberOfAcceptors;
+	}
+
+	public void numberOfAcceptors(Integer numberOfAcceptors) {
+		m_numberOfAcceptors = numberOfAcceptors == null
+				|| numberOfAcceptors < 1 ? 1 : numberOfAcceptors;
+	}
+
 	public final boolean isMandatoryChanged(Configuration newConf)
 			throws Exception {
 		for (Method m : c_mProps) {
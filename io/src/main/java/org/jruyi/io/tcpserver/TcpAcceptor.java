@@ -15,11 +15,11 @@ package org.jruyi.io.tcpserver;
 
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
-import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.jruyi.common.StrUtil;
@@ -39,83 +39,133 @@ import org.slf4j.LoggerFactory;
 configurationPolicy = ConfigurationPolicy.IGNORE, //
 service = { ITcpAcceptor.class }, //
 xmlns = "http://www.osgi.org/xmlns/scr/v1.2.0")
-public final class TcpAcceptor implements ITcpAcceptor, Runnable, IVisitor<TcpServer> {
+public final class TcpAcceptor implements ITcpAcceptor {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(TcpAcceptor.class);
 
-	private Selector m_selector;
-	private Thread m_thread;
-	private SyncPutQueue<TcpServer> m_queue;
+	// grows on demand to the largest numberOfAcceptors of the servers
+	private ArrayList<AcceptLoop> m_loops;
 
 	private IChannelAdmin m_ca;
 
-	@Override
-	public void doAccept(TcpServer server) throws Exception {
-		SelectableChannel selectableChannel = server.getSelectableChannel();
-		selectableChannel.configureBlocking(false);
-		m_queue.put(server);
-		m_selector.wakeup();
-	}
+	static final class AcceptLoop implements Runnable, IVisitor<TcpServer> {
 
-	@Override
-	public void visit(TcpServer server) {
-		final SelectableChannel channel = server.getSelectableChannel();
-		try {
-			channel.register(m_selector, SelectionKey.OP_ACCEPT, server);
-		} catch (Throwable t) {
-			c_logger.error(StrUtil.join("Failed to register ", channel), t);
-			// stop tcp server
-			try {
-				new StopThread(server).start();
-			} catch (Throwable t1) {
-				// Ignore
-			}
+		private final int m_index;
+		private final Selector m_selector;
+		private final SyncPutQueue<TcpServer> m_queue;
+		private final IChannelAdmin m_ca;
+		private Thread m_thread;
+
+		AcceptLoop(int index, IChannelAdmin ca) throws Exception {
+			m_index = index;
+			m_selector = Selector.open();
+			m_queue = new SyncPutQueue<TcpServer>();
+			m_ca = ca;
 		}
-	}
 
-	@Override
-	public void run() {
-		final SyncPutQueue<TcpServer> queue = m_queue;
-		final Selector selector = m_selector;
-		final IChannelAdmin ca = m_ca;
-		final Thread currentThread = Thread.currentThread();
-		for (;;) {
-			try {
-				final int n = selector.select();
-				if (currentThread.isInterrupted())
-					break;
+		void start() {
+			m_thread = new Thread(this, "jruyi-acceptor-" + m_index);
+			m_thread.start();
+		}
 
-				// Register
-				queue.accept(this);
+		void doAccept(TcpServer server) {
+			m_queue.put(server);
+			m_selector.wakeup();
+		}
 
-				if (n < 1)
-					continue;
+		void stop() {
+			m_thread.interrupt();
+			try {
+				m_thread.join();
+			} catch (InterruptedException e) {
+			}
+			m_thread = null;
 
-				final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
-				while (iter.hasNext()) {
-					final SelectionKey key = iter.next();
-					iter.remove();
+			try {
+				m_selector.close();
+			} catch (Throwable t) {
+				c_logger.error("Failed to close the selector", t);
+			}
+		}
 
-					if (!key.isValid())
+		@Override
+		public void visit(TcpServer server) {
+			final ServerSocketChannel channel = server.getServerSocketChannel(m_index);
+			try {
+				channel.register(m_selector, SelectionKey.OP_ACCEPT, server);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join("Failed to register ", channel), t);
+				// stop tcp server
+				try {
+					new StopThread(server).start();
+				} catch (Throwable t1) {
+					// Ignore
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			final SyncPutQueue<TcpServer> queue = m_queue;
+			final Selector selector = m_selector;
+			final IChannelAdmin ca = m_ca;
+			final Thread currentThread = Thread.currentThread();
+			for (;;) {
+				try {
+					final int n = selector.select();
+					if (currentThread.isInterrupted())
+						break;
+
+					// Register
+					queue.accept(this);
+
+					if (n < 1)
 						continue;
 
-					final TcpServer server = (TcpServer) key.attachment();
-					try {
-						final SocketChannel socketChannel = ((ServerSocketChannel) key.channel()).accept();
-						ca.onAccept(new TcpChannel(server, socketChannel));
-					} catch (ClosedChannelException e) {
-					} catch (Throwable t) {
-						c_logger.error(StrUtil.join(server, " failed to accept"), t);
+					final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+					while (iter.hasNext()) {
+						final SelectionKey key = iter.next();
+						iter.remove();
+
+						if (!key.isValid())
+							continue;
+
+						final TcpServer server = (TcpServer) key.attachment();
+						final ServerSocketChannel ssc = (ServerSocketChannel) key.channel();
+						try {
+							// drain the backlog
+							SocketChannel socketChannel;
+							while ((socketChannel = ssc.accept()) != null)
+								ca.onAccept(new TcpChannel(server, socketChannel));
+						} catch (ClosedChannelException e) {
+						} catch (Throwable t) {
+							c_logger.error(StrUtil.join(server, " failed to accept"), t);
+						}
 					}
+				} catch (ClosedSelectorException e) {
+					break;
+				} catch (Throwable t) {
+					c_logger.error("Unexpected Error", t);
 				}
-			} catch (ClosedSelectorException e) {
-				break;
-			} catch (Throwable t) {
-				c_logger.error("Unexpected Error", t);
 			}
 		}
 	}
 
+	@Override
+	public synchronized void doAccept(TcpServer server) throws Exception {
+		final ArrayList<AcceptLoop> loops = m_loops;
+		final int n = server.numberOfAcceptors();
+		for (int i = 0; i < n; ++i) {
+			server.getServerSocketChannel(i).configureBlocking(false);
+			if (i == loops.size()) {
+				final AcceptLoop loop = new AcceptLoop(i, m_ca);
+				loop.start();
+				loops.add(loop);
+			}
+			loops.get(i).doAccept(server);
+		}
+	}
+
 	@Reference(name = "channelAdmin", policy = ReferencePolicy.DYNAMIC)
 	synchronized void setChannelAdmin(IChannelAdmin ca) {
 		m_ca = ca;
@@ -126,35 +176,24 @@ public final class TcpAcceptor implements ITcpAcceptor, Runnable, IVisitor<TcpSe
 			m_ca = null;
 	}
 
-	void activate() throws Exception {
+	synchronized void activate() throws Exception {
 		c_logger.info("Starting TcpAcceptor...");
 
-		m_selector = Selector.open();
-		m_queue = new SyncPutQueue<TcpServer>();
-		m_thread = new Thread(this, "jruyi-acceptor");
-		m_thread.start();
+		final ArrayList<AcceptLoop> loops = new ArrayList<AcceptLoop>();
+		final AcceptLoop loop = new AcceptLoop(0, m_ca);
+		loop.start();
+		loops.add(loop);
+		m_loops = loops;
 
 		c_logger.info("TcpAcceptor started");
 	}
 
-	void deactivate() {
+	synchronized void deactivate() {
 		c_logger.info("Stopping TcpAcceptor...");
 
-		m_thread.interrupt();
-		try {
-			m_thread.join();
-		} catch (InterruptedException e) {
-		}
-		m_thread = null;
-
-		m_queue = null;
-
-		try {
-			m_selector.close();
-		} catch (Throwable t) {
-			c_logger.error("Failed to close the selector", t);
-		}
-		m_selector = null;
+		for (AcceptLoop loop : m_loops)
+			loop.stop();
+		m_loops = null;
 
 		c_logger.info("TcpAcceptor stopped");
 	}
@@ -14,12 +14,14 @@
 package org.jruyi.io.tcpserver;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.nio.channels.SelectableChannel;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
 import java.util.Arrays;
 import java.util.Collection;
@@ -56,9 +58,15 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 
 	private static final Logger c_logger = LoggerFactory.getLogger(TcpServer.class);
 
+	// null if SO_REUSEPORT is not available
+	private static final SocketOption<Boolean> c_soReusePort = soReusePort();
+
 	private String m_caption;
 	private Configuration m_conf;
-	private ServerSocketChannel m_ssc;
+	private int m_numberOfAcceptors;
+	// One per acceptor if SO_REUSEPORT is supported. Otherwise, the only one
+	// is shared by all the acceptors.
+	private ServerSocketChannel[] m_sscs;
 
 	private IBufferFactory m_bf;
 	private IChannelAdmin m_ca;
@@ -96,6 +104,31 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		return m_conf.throttle();
 	}
 
+	@Override
+	public boolean gatheringWrite() {
+		return m_conf.gatheringWrite();
+	}
+
+	@Override
+	public int maxMessagesPerFlush() {
+		return m_conf.maxMessagesPerFlush();
+	}
+
+	@Override
+	public int maxBytesPerFlush() {
+		return m_conf.maxBytesPerFlush();
+	}
+
+	@Override
+	public long highWatermark() {
+		return m_conf.highWatermark();
+	}
+
+	@Override
+	public long lowWatermark() {
+		return m_conf.lowWatermark();
+	}
+
 	@Override
 	public IFilter<?, ?>[] getFilterChain() {
 		return m_filters;
@@ -126,6 +159,18 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		throw new UnsupportedOperationException("Not supported yet.");
 	}
 
+	@Override
+	public void onChannelWritabilityChanged(IChannel channel, boolean writable) {
+		final ISessionListener listener = m_listener;
+		if (listener != null) {
+			try {
+				listener.onWritabilityChanged(channel, writable);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(channel, " Unexpected Error: "), t);
+			}
+		}
+	}
+
 	@Override
 	public void onChannelException(IChannel channel, Throwable t) {
 		try {
@@ -195,7 +240,7 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 	@Override
 	public void onMessageReceived(IChannel channel, Object msg) {
 		// failed to reschedule, channel timed out
-		if (!scheduleIdleTimeout(channel))
+		if (!rescheduleIdleTimeout(channel))
 			return;
 
 		final ISessionListener listener = m_listener;
@@ -270,29 +315,41 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		if (m_channels == null)
 			m_channels = new ConcurrentHashMap<Object, IChannel>(conf.initCapacityOfChannelMap());
 
+		final int numberOfAcceptors = conf.numberOfAcceptors();
 		ServerSocketChannel ssc = ServerSocketChannel.open();
+		ServerSocketChannel[] sscs = new ServerSocketChannel[] { ssc };
 		try {
 			ServerSocket socket = ssc.socket();
 			initSocket(socket, conf);
+			final boolean reusePort = numberOfAcceptors > 1 && reusePort(ssc);
 			SocketAddress ep = new InetSocketAddress(bindAddr, conf.port());
 			Integer backlog = conf.backlog();
-			if (backlog == null)
-				socket.bind(ep);
-			else
-				socket.bind(ep, backlog);
+			bind(socket, ep, backlog);
+
+			if (reusePort) {
+				// bind the rest to the actual port in case of an ephemeral one
+				ep = socket.getLocalSocketAddress();
+				sscs = Arrays.copyOf(sscs, numberOfAcceptors);
+				for (int i = 1; i < numberOfAcceptors; ++i) {
+					ssc = ServerSocketChannel.open();
+					sscs[i] = ssc;
+					initSocket(ssc.socket(), conf);
+					reusePort(ssc);
+					bind(ssc.socket(), ep, backlog);
+				}
+			}
 
-			m_ssc = ssc;
+			m_numberOfAcceptors = numberOfAcceptors;
+			m_sscs = sscs;
 
 			m_acceptor.doAccept(this);
 
-			c_logger.info(StrUtil.join(this, " started, listening on ", socket.getLocalSocketAddress()));
+			c_logger.info(StrUtil.join(this, " started, listening on ", socket.getLocalSocketAddress(), " with ",
+					numberOfAcceptors, reusePort ? " acceptor(s) using SO_REUSEPORT" : " acceptor(s)"));
 		} catch (Exception e) {
-			try {
-				ssc.close();
-			} catch (Throwable t) {
-			}
+			closeServerSocketChannels(sscs);
 			c_logger.error(StrUtil.join(this, " failed to start"), e);
-			m_ssc = null;
+			m_sscs = null;
 			throw e;
 		}
 	}
@@ -306,12 +363,14 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 	protected void stopInternal(int options) {
 		c_logger.info(StrUtil.join("Stopping ", this, "..."));
 
-		try {
-			m_ssc.close();
-		} catch (Throwable t) {
-			c_logger.error(StrUtil.join(this, " failed to close ServerSocketChannel"), t);
+		for (ServerSocketChannel ssc : m_sscs) {
+			try {
+				ssc.close();
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(this, " failed to close ServerSocketChannel"), t);
+			}
 		}
-		m_ssc = null;
+		m_sscs = null;
 
 		final WriteLock writeLock = m_lock.writeLock();
 		writeLock.lock();
@@ -401,14 +460,22 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		updateConf(null);
 	}
 
-	SelectableChannel getSelectableChannel() {
-		return m_ssc;
+	int numberOfAcceptors() {
+		return m_numberOfAcceptors;
+	}
+
+	// Returns the listening channel for the acceptor at the given index
+	ServerSocketChannel getServerSocketChannel(int index) {
+		final ServerSocketChannel[] sscs = m_sscs;
+		return sscs[index % sscs.length];
 	}
 
 	private boolean scheduleIdleTimeout(IChannel channel) {
-		int timeout = m_conf.sessionIdleTimeoutInSeconds();
+		final Configuration conf = m_conf;
+		final int timeout = conf.sessionIdleTimeoutInSeconds();
 		if (timeout > 0)
-			return channel.scheduleIdleTimeout(timeout);
+			return conf.lazyIdleTimeout() ? channel.scheduleLazyIdleTimeout(timeout)
+					: channel.scheduleIdleTimeout(timeout);
 
 		if (timeout == 0)
 			channel.close();
@@ -416,6 +483,16 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		return true;
 	}
 
+	// In lazy mode, recording the activity is all it takes unless the idle
+	// timeout was scheduled eagerly before the mode was switched.
+	private boolean rescheduleIdleTimeout(IChannel channel) {
+		final Configuration conf = m_conf;
+		if (conf.lazyIdleTimeout() && conf.sessionIdleTimeoutInSeconds() > 0 && channel.touch())
+			return true;
+
+		return scheduleIdleTimeout(channel);
+	}
+
 	private void updateConf(Configuration newConf) {
 		String[] newNames = newConf == null ? StrUtil.getEmptyStringArray() : newConf.filters();
 		String[] oldNames = StrUtil.getEmptyStringArray();
@@ -447,6 +524,43 @@ public final class TcpServer extends Service implements IChannelService, ISessio
 		m_channels = null;
 	}
 
+	private static void closeServerSocketChannels(ServerSocketChannel[] sscs) {
+		for (ServerSocketChannel ssc : sscs) {
+			if (ssc == null)
+				continue;
+			try {
+				ssc.close();
+			} catch (Throwable t) {
+			}
+		}
+	}
+
+	private static void bind(ServerSocket socket, SocketAddress ep, Integer backlog) throws IOException {
+		if (backlog == null)
+			socket.bind(ep);
+		else
+			socket.bind(ep, backlog);
+	}
+
+	private static boolean reusePort(ServerSocketChannel ssc) throws IOException {
+		final SocketOption<Boolean> option = c_soReusePort;
+		if (option == null || !ssc.supportedOptions().contains(option))
+			return false;
+
+		ssc.setOption(option, Boolean.TRUE);
+		return true;
+	}
+
+	// StandardSocketOptions.SO_REUSEPORT is only available since Java 9
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> soReusePort() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+		} catch (Throwable t) {
+			return null;
+		}
+	}
+
 	private static void initSocket(ServerSocket socket, Configuration conf) throws SocketException {
 		final Integer[] performancePreferences = conf.performancePreferences();
 		if (performancePreferences != null) {
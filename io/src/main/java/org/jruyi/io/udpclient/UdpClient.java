@@ -83,6 +83,31 @@ public final class UdpClient extends Service implements IChannelService,
 		return 0L;
 	}
 
+	@Override
+	public boolean gatheringWrite() {
+		return false;
+	}
+
+	@Override
+	public int maxMessagesPerFlush() {
+		return 1;
+	}
+
+	@Override
+	public int maxBytesPerFlush() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public long highWatermark() {
+		return 0L;
+	}
+
+	@Override
+	public long lowWatermark() {
+		return 0L;
+	}
+
 	@Override
 	public IFilter<?, ?>[] getFilterChain() {
 		return m_filters;
@@ -150,6 +175,18 @@ public final class UdpClient extends Service implements IChannelService,
 		}
 	}
 
+	@Override
+	public void onChannelWritabilityChanged(IChannel channel, boolean writable) {
+		final ISessionListener listener = m_listener;
+		if (listener != null) {
+			try {
+				listener.onWritabilityChanged(channel, writable);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(channel, " Unexpected Error: "), t);
+			}
+		}
+	}
+
 	@Override
 	public void onChannelException(IChannel channel, Throwable t) {
 		try {
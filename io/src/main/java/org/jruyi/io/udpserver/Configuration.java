@@ -22,6 +22,7 @@ final class Configuration extends UdpChannelConf {
 	private static final String[] M_PROPS = { "bindAddr", "port" };
 	private static final Method[] c_mProps;
 	private Integer m_sessionIdleTimeoutInSeconds;
+	private Boolean m_lazyIdleTimeout;
 	private Integer m_initCapacityOfChannelMap;
 
 	static {
@@ -46,6 +47,7 @@ final class Configuration extends UdpChannelConf {
 		bindAddr((String) properties.get("bindAddr"));
 		sessionIdleTimeoutInSeconds((Integer) properties
 				.get("sessionIdleTimeoutInSeconds"));
+		lazyIdleTimeout((Boolean) properties.get("lazyIdleTimeout"));
 		initCapacityOfChannelMap((Integer) properties
 				.get("initCapacityOfChannelMap"));
 	}
@@ -66,6 +68,15 @@ final class Configuration extends UdpChannelConf {
 		m_sessionIdleTimeoutInSeconds = channelIdleTimeoutInSeconds;
 	}
 
+	public Boolean lazyIdleTimeout() {
+		return m_lazyIdleTimeout;
+	}
+
+	public void lazyIdleTimeout(Boolean lazyIdleTimeout) {
+		m_lazyIdleTimeout = lazyIdleTimeout == null ? Boolean.FALSE
+				: lazyIdleTimeout;
+	}
+
 	public Integer initCapacityOfChannelMap() {
 		return m_initCapacityOfChannelMap;
 	}
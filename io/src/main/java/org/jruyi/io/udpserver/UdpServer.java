@@ -88,6 +88,31 @@ public final class UdpServer extends Service implements IChannelService, ISessio
 		return 0L;
 	}
 
+	@Override
+	public boolean gatheringWrite() {
+		return false;
+	}
+
+	@Override
+	public int maxMessagesPerFlush() {
+		return 1;
+	}
+
+	@Override
+	public int maxBytesPerFlush() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public long highWatermark() {
+		return 0L;
+	}
+
+	@Override
+	public long lowWatermark() {
+		return 0L;
+	}
+
 	@Override
 	public IFilter<?, ?>[] getFilterChain() {
 		return m_filters;
@@ -128,6 +153,18 @@ public final class UdpServer extends Service implements IChannelService, ISessio
 		throw new UnsupportedOperationException("Not supported yet.");
 	}
 
+	@Override
+	public void onChannelWritabilityChanged(IChannel channel, boolean writable) {
+		final ISessionListener listener = m_listener;
+		if (listener != null) {
+			try {
+				listener.onWritabilityChanged(channel, writable);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(channel, " Unexpected Error: "), t);
+			}
+		}
+	}
+
 	@Override
 	public void onChannelException(IChannel channel, Throwable t) {
 		try {
@@ -200,7 +237,7 @@ public final class UdpServer extends Service implements IChannelService, ISessio
 	@Override
 	public void onMessageReceived(IChannel channel, Object msg) {
 		// failed to reschedule, channel timed out
-		if (!scheduleIdleTimeout(channel))
+		if (!rescheduleIdleTimeout(channel))
 			return;
 
 		final ISessionListener listener = m_listener;
@@ -415,13 +452,25 @@ public final class UdpServer extends Service implements IChannelService, ISessio
 	}
 
 	private boolean scheduleIdleTimeout(IChannel channel) {
-		final int timeout = m_conf.sessionIdleTimeoutInSeconds();
+		final Configuration conf = m_conf;
+		final int timeout = conf.sessionIdleTimeoutInSeconds();
 		if (timeout > 0)
-			return channel.scheduleIdleTimeout(timeout);
+			return conf.lazyIdleTimeout() ? channel.scheduleLazyIdleTimeout(timeout)
+					: channel.scheduleIdleTimeout(timeout);
 
 		if (timeout == 0)
 			channel.close();
 
 		return true;
 	}
+
+	// In lazy mode, recording the activity is all it takes unless the idle
+	// timeout was scheduled eagerly before the mode was switched.
+	private boolean rescheduleIdleTimeout(IChannel channel) {
+		final Configuration conf = m_conf;
+		if (conf.lazyIdleTimeout() && conf.sessionIdleTimeoutInSeconds() > 0 && channel.touch())
+			return true;
+
+		return scheduleIdleTimeout(channel);
+	}
 }
@@ -106,6 +106,13 @@ final class UdpServerChannel implements ISelectableChannel, Runnable {
 		m_ioWorker.execute(this);
 	}
 
+	@Override
+	public void onReadInline() {
+		final SelectionKey selectionKey = m_selectionKey;
+		selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+		onRead();
+	}
+
 	@Override
 	public void onWrite() {
 		throw new UnsupportedOperationException();
@@ -724,6 +724,71 @@ public class BufferTest {
 		}
 	}
 
+	@Test
+	public void test_directUnits() {
+		byte[] bytes = createBytes();
+		BufferFactory factory = new BufferFactory();
+		Map<String, Object> props = new HashMap<>();
+		props.put("unitType", "direct");
+		props.put("slabCapacity", 1024);
+		for (int i = 8; i < bytes.length + 2; ++i) {
+			props.put(UNIT_CAPACITY, i);
+			factory.modified(props);
+			Assert.assertTrue(factory.isDirect());
+
+			IBuffer dst = factory.create();
+			dst.write(bytes, 0, i / 2, Codec.byteArray());
+			dst.write(i, IntCodec.bigEndian());
+
+			IBuffer src = factory.create();
+			src.write(bytes, i / 2, bytes.length - i / 2, Codec.byteArray());
+			src.write(i, LongCodec.littleEndian());
+
+			src.drainTo(dst);
+
+			Assert.assertArrayEquals(Arrays.copyOf(bytes, i / 2), dst.read(i / 2, Codec.byteArray()));
+			Assert.assertEquals(i, dst.read(IntCodec.bigEndian()));
+			Assert.assertArrayEquals(Arrays.copyOfRange(bytes, i / 2, bytes.length),
+					dst.read(bytes.length - i / 2, Codec.byteArray()));
+			Assert.assertEquals(i, dst.read(LongCodec.littleEndian()));
+			Assert.assertTrue(dst.isEmpty());
+
+			dst.close();
+			src.close();
+		}
+	}
+
+	@Test
+	public void test_unitPool() throws Exception {
+		final UnitPool pool = new UnitPool(1000, 4, 2);
+		final int classIndex = pool.classIndexOf(1000);
+		Assert.assertEquals(1000, pool.take(classIndex).capacity());
+		Assert.assertEquals(2048, pool.take(pool.classIndexOf(1025)).capacity());
+		Assert.assertEquals(-1, pool.classIndexOf(UnitPool.MAX_CLASS_CAPACITY + 1));
+
+		// units taken on one thread and freed on another get recycled
+		final HeapUnit[] units = new HeapUnit[16];
+		for (int i = 0; i < units.length; ++i)
+			units[i] = pool.take(classIndex);
+
+		final Thread freer = new Thread() {
+
+			@Override
+			public void run() {
+				for (HeapUnit unit : units)
+					pool.put(unit);
+			}
+		};
+		freer.start();
+		freer.join();
+
+		final HeapUnit unit = pool.take(classIndex);
+		boolean recycled = false;
+		for (HeapUnit u : units)
+			recycled |= u == unit;
+		Assert.assertTrue(recycled);
+	}
+
 	private static byte[] createBytes() {
 		Random random = new Random();
 		int n = random.nextInt(155) + 100;
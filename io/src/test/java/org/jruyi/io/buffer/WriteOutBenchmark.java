@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jruyi.io.Codec;
+import org.jruyi.io.IBuffer;
+
+/**
+ * Compares writing a buffer out by copying it into a direct buffer chunk by
+ * chunk (the default write path of a channel) with writing its units out in
+ * place through a gathering write.
+ * <p>
+ * Usage: {@code WriteOutBenchmark [messageSize] [iterations]}
+ */
+public final class WriteOutBenchmark {
+
+	private static final int DIRECT_BUFFER_CAPACITY = 1024 * 64;
+
+	public static void main(String[] args) throws Exception {
+		final int msgSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 256;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		final BufferFactory factory = new BufferFactory();
+		final Map<String, Object> props = new HashMap<>();
+		props.put("unitCapacity", 8192);
+		factory.modified(props);
+
+		final byte[] payload = new byte[msgSize];
+		final ByteBuffer bb = ByteBuffer.allocateDirect(DIRECT_BUFFER_CAPACITY);
+
+		final Pipe pipe = Pipe.open();
+		final Thread drainer = startDrainer(pipe.source());
+		final Pipe.SinkChannel sink = pipe.sink();
+		try {
+			for (int round = 0; round < 3; ++round) {
+				long t = System.nanoTime();
+				for (int i = 0; i < iterations; ++i) {
+					final IBuffer data = factory.create();
+					data.write(payload, Codec.byteArray());
+					copyWrite(data, bb, sink);
+					data.close();
+				}
+				final long copyNanos = System.nanoTime() - t;
+
+				t = System.nanoTime();
+				for (int i = 0; i < iterations; ++i) {
+					final IBuffer data = factory.create();
+					data.write(payload, Codec.byteArray());
+					while (!data.isEmpty())
+						data.writeOut(sink);
+					data.close();
+				}
+				final long gatheringNanos = System.nanoTime() - t;
+
+				System.out.printf("round %d: copy=%.1fMB/s gathering=%.1fMB/s%n", round,
+						throughput(msgSize, iterations, copyNanos), throughput(msgSize, iterations, gatheringNanos));
+			}
+		} finally {
+			sink.close();
+			drainer.join();
+		}
+	}
+
+	private static void copyWrite(IBuffer data, ByteBuffer bb, WritableByteChannel wbc) throws IOException {
+		while (!data.isEmpty()) {
+			bb.clear();
+			data.read(bb, Codec.byteBuffer());
+			bb.flip();
+			while (bb.hasRemaining())
+				wbc.write(bb);
+		}
+	}
+
+	private static double throughput(int msgSize, int iterations, long nanos) {
+		return (double) msgSize * iterations * 1000 / nanos;
+	}
+
+	private static Thread startDrainer(final Pipe.SourceChannel source) {
+		final Thread thread = new Thread() {
+
+			@Override
+			public void run() {
+				final ByteBuffer bb = ByteBuffer.allocateDirect(DIRECT_BUFFER_CAPACITY);
+				try {
+					while (source.read(bb) >= 0)
+						bb.clear();
+				} catch (IOException e) {
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.channel;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Measures the round trip latency of a loopback echo served by a selector
+ * thread handing reads over to an IO thread (the default mode) against the
+ * same selector thread reading inline (the {@code readInSelector} mode).
+ * <p>
+ * Usage: {@code ReadDispatchBenchmark [messageSize] [iterations]}
+ */
+public final class ReadDispatchBenchmark {
+
+	private static final int RING_BUFFER_CAPACITY = 1024 * 4;
+
+	public static void main(String[] args) throws Exception {
+		final int msgSize = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		for (int round = 0; round < 3; ++round) {
+			final long[] handOver = run(false, IoWaitStrategy.BLOCKING, msgSize, iterations);
+			final long[] inline = run(true, IoWaitStrategy.BLOCKING, msgSize, iterations);
+			System.out.printf("round %d: handOver p50=%dus p99=%dus, inline p50=%dus p99=%dus%n", round,
+					percentile(handOver, 50), percentile(handOver, 99), percentile(inline, 50),
+					percentile(inline, 99));
+		}
+	}
+
+	// Returns the sorted round trip latencies in nanoseconds
+	static long[] run(boolean readInline, IoWaitStrategy waitStrategy, int msgSize, int iterations)
+			throws Exception {
+		final IoThread iot = new IoThread();
+		iot.open(0, RING_BUFFER_CAPACITY, waitStrategy);
+		final SelectorThread st = new SelectorThread();
+		st.open(0, RING_BUFFER_CAPACITY, readInline, waitStrategy);
+		try (ServerSocketChannel ssc = ServerSocketChannel.open()) {
+			ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			try (SocketChannel client = SocketChannel.open(ssc.getLocalAddress())) {
+				client.socket().setTcpNoDelay(true);
+				final SocketChannel server = ssc.accept();
+				server.configureBlocking(false);
+				server.socket().setTcpNoDelay(true);
+				final EchoChannel channel = new EchoChannel(server, msgSize);
+				channel.ioWorker(iot);
+				st.onRegisterRequired(channel);
+
+				final ByteBuffer out = ByteBuffer.allocateDirect(msgSize);
+				final ByteBuffer in = ByteBuffer.allocateDirect(msgSize);
+				final long[] latencies = new long[iterations];
+				for (int i = 0; i < iterations; ++i) {
+					out.clear();
+					in.clear();
+					final long t = System.nanoTime();
+					while (out.hasRemaining())
+						client.write(out);
+					while (in.hasRemaining()) {
+						if (client.read(in) < 0)
+							throw new IOException("Connection closed");
+					}
+					latencies[i] = System.nanoTime() - t;
+				}
+				channel.close();
+				Arrays.sort(latencies);
+				return latencies;
+			}
+		} finally {
+			st.close();
+			iot.close();
+		}
+	}
+
+	// in microseconds
+	static long percentile(long[] sortedLatencies, int p) {
+		return sortedLatencies[(sortedLatencies.length - 1) * p / 100] / 1000L;
+	}
+
+	static final class EchoChannel implements ISelectableChannel, Runnable {
+
+		private final SocketChannel m_socketChannel;
+		private final ByteBuffer m_bb;
+		private SelectionKey m_selectionKey;
+		private ISelector m_selector;
+		private IIoWorker m_ioWorker;
+
+		EchoChannel(SocketChannel socketChannel, int msgSize) {
+			m_socketChannel = socketChannel;
+			m_bb = ByteBuffer.allocateDirect(msgSize);
+		}
+
+		@Override
+		public Long id() {
+			return 0L;
+		}
+
+		// runs on the IO thread
+		@Override
+		public void run() {
+			if (echo())
+				m_selector.onReadRequired(this);
+		}
+
+		@Override
+		public void onConnect() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void onAccept() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void onRead() {
+			m_ioWorker.execute(this);
+		}
+
+		@Override
+		public void onReadInline() {
+			echo();
+		}
+
+		@Override
+		public void onWrite() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void ioWorker(IIoWorker ioWorker) {
+			m_ioWorker = ioWorker;
+		}
+
+		@Override
+		public void onException(Throwable t) {
+			t.printStackTrace();
+			close();
+		}
+
+		@Override
+		public void interestOps(int ops) {
+			final SelectionKey selectionKey = m_selectionKey;
+			selectionKey.interestOps(selectionKey.interestOps() | ops);
+		}
+
+		@Override
+		public void register(ISelector selector, int ops) throws Throwable {
+			m_selectionKey = m_socketChannel.register(selector.selector(), ops, this);
+			m_selector = selector;
+		}
+
+		@Override
+		public void close() {
+			try {
+				m_socketChannel.close();
+			} catch (IOException e) {
+			}
+		}
+
+		private boolean echo() {
+			final ByteBuffer bb = m_bb;
+			try {
+				int n;
+				while ((n = m_socketChannel.read(bb)) > 0) {
+					bb.flip();
+					while (bb.hasRemaining())
+						m_socketChannel.write(bb);
+					bb.clear();
+				}
+				if (n < 0) {
+					close();
+					return false;
+				}
+			} catch (IOException e) {
+				onException(e);
+				return false;
+			}
+			return true;
+		}
+	}
+}
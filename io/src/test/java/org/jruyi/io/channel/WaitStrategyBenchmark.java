@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.io.channel;
+
+/**
+ * Measures the round trip latency of a loopback ping-pong under each wait
+ * strategy of selector threads and IO threads, in both the hand-over and
+ * the inline read mode.
+ * <p>
+ * Usage: {@code WaitStrategyBenchmark [messageSize] [iterations]}
+ */
+public final class WaitStrategyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int msgSize = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		for (int round = 0; round < 3; ++round) {
+			for (IoWaitStrategy waitStrategy : IoWaitStrategy.values()) {
+				final long[] handOver = ReadDispatchBenchmark.run(false, waitStrategy, msgSize, iterations);
+				final long[] inline = ReadDispatchBenchmark.run(true, waitStrategy, msgSize, iterations);
+				System.out.printf("round %d, %s: handOver p50=%dus p99=%dus, inline p50=%dus p99=%dus%n", round,
+						waitStrategy, ReadDispatchBenchmark.percentile(handOver, 50),
+						ReadDispatchBenchmark.percentile(handOver, 99), ReadDispatchBenchmark.percentile(inline, 50),
+						ReadDispatchBenchmark.percentile(inline, 99));
+			}
+		}
+	}
+}
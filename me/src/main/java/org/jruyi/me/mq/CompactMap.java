@@ -0,0 +1,386 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.me.mq;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small map with open addressing, keeping its keys and values next to each
+ * other in one flat array probed linearly, without any entry objects. It is
+ * sized for the few properties a message typically carries, and compares keys
+ * either by equality or, like {@code IdentityHashMap}, by reference.
+ * <p>
+ * Removed keys leave tombstones behind, which are dropped on rehashing, so
+ * that removing through an iterator never moves the other keys.
+ */
+final class CompactMap<K, V> extends AbstractMap<K, V> {
+
+	private static final Object NULL_KEY = new Object();
+	private static final Object TOMBSTONE = new Object();
+	private static final Object[] EMPTY = new Object[0];
+
+	private final boolean m_identity;
+	// in slots, a power of 2
+	private final int m_capacity;
+	// [key0, value0, key1, value1, ...], null until the first put
+	private Object[] m_table;
+	private int m_size;
+	// the number of slots either taken or left a tombstone
+	private int m_used;
+	private EntrySet m_entrySet;
+
+	// Reads and writes through the table while its slot holds its key
+	final class Entry implements Map.Entry<K, V> {
+
+		private final Object[] m_tab;
+		private final int m_i;
+		private final Object m_k;
+		// the value once the slot is left
+		private Object m_v;
+
+		Entry(Object[] table, int i) {
+			m_tab = table;
+			m_i = i;
+			m_k = table[i];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K getKey() {
+			return (K) unmask(m_k);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V) (isAttached() ? m_tab[m_i + 1] : m_v);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V setValue(V value) {
+			if (!isAttached()) {
+				final V oldValue = (V) m_v;
+				m_v = value;
+				return oldValue;
+			}
+
+			final Object[] tab = m_tab;
+			final V oldValue = (V) tab[m_i + 1];
+			tab[m_i + 1] = value;
+			return oldValue;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Map.Entry))
+				return false;
+
+			final Map.Entry<?, ?> that = (Map.Entry<?, ?>) obj;
+			return eq(getKey(), that.getKey())
+					&& eq(getValue(), that.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			final Object key = getKey();
+			final Object value = getValue();
+			return (key == null ? 0 : key.hashCode())
+					^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+		// Keeps the value before the slot is cleared
+		void detach() {
+			m_v = m_tab[m_i + 1];
+		}
+
+		private boolean isAttached() {
+			return m_tab[m_i] == m_k;
+		}
+	}
+
+	final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private final Object[] m_tab = m_table == null ? EMPTY : m_table;
+		private int m_next;
+		private Entry m_last;
+
+		EntryIterator() {
+			m_next = advance(0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return m_next < m_tab.length;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			final int i = m_next;
+			if (i >= m_tab.length)
+				throw new NoSuchElementException();
+
+			m_next = advance(i + 2);
+			return m_last = new Entry(m_tab, i);
+		}
+
+		@Override
+		public void remove() {
+			final Entry entry = m_last;
+			if (entry == null)
+				throw new IllegalStateException();
+
+			m_last = null;
+			final Object[] tab = m_tab;
+			// the map was rehashed or cleared
+			if (tab != m_table || !entry.isAttached())
+				throw new IllegalStateException();
+
+			entry.detach();
+			final int i = entry.m_i;
+			tab[i] = TOMBSTONE;
+			tab[i + 1] = null;
+			--m_size;
+		}
+
+		private int advance(int i) {
+			final Object[] tab = m_tab;
+			while (i < tab.length && !isLive(tab[i]))
+				i += 2;
+			return i;
+		}
+	}
+
+	final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return m_size;
+		}
+
+		@Override
+		public void clear() {
+			CompactMap.this.clear();
+		}
+	}
+
+	/**
+	 * Creates a map comparing keys by equality if {@code identity} is false,
+	 * otherwise by reference, with room for up to 3/4 of the given
+	 * {@code capacity}, a power of 2, before growing.
+	 */
+	CompactMap(boolean identity, int capacity) {
+		m_identity = identity;
+		m_capacity = capacity;
+	}
+
+	CompactMap(boolean identity, int capacity,
+			Map<? extends K, ? extends V> map) {
+		this(identity, capacity);
+		putAll(map);
+	}
+
+	@Override
+	public int size() {
+		return m_size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		final int i = indexOf(key);
+		return i < 0 ? null : (V) m_table[i + 1];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		final Object k = mask(key);
+		Object[] tab = m_table;
+		if (tab == null)
+			m_table = tab = new Object[m_capacity << 1];
+
+		final int mask = tab.length - 1;
+		int tombstone = -1;
+		for (int i = index(k, mask);; i = (i + 2) & mask) {
+			final Object item = tab[i];
+			if (item == null) {
+				if (tombstone >= 0) {
+					// reuses the tombstone, which is already counted as used
+					tab[tombstone] = k;
+					tab[tombstone + 1] = value;
+					++m_size;
+					return null;
+				}
+
+				tab[i] = k;
+				tab[i + 1] = value;
+				++m_size;
+				// keeps at most 3/4 of the slots used
+				if (++m_used << 3 > tab.length * 3)
+					rehash();
+				return null;
+			}
+
+			if (item == TOMBSTONE) {
+				if (tombstone < 0)
+					tombstone = i;
+			} else if (matches(item, k)) {
+				final V oldValue = (V) tab[i + 1];
+				tab[i + 1] = value;
+				return oldValue;
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		final int i = indexOf(key);
+		if (i < 0)
+			return null;
+
+		final Object[] tab = m_table;
+		final V oldValue = (V) tab[i + 1];
+		tab[i] = TOMBSTONE;
+		tab[i + 1] = null;
+		--m_size;
+		return oldValue;
+	}
+
+	@Override
+	public void clear() {
+		if (m_used == 0)
+			return;
+
+		Arrays.fill(m_table, null);
+		m_size = 0;
+		m_used = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		EntrySet entrySet = m_entrySet;
+		if (entrySet == null)
+			m_entrySet = entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	/**
+	 * Clears this map and drops its table if it has grown beyond the initial
+	 * capacity.
+	 */
+	void trim() {
+		final Object[] tab = m_table;
+		if (tab != null && tab.length > m_capacity << 1) {
+			m_table = null;
+			m_size = 0;
+			m_used = 0;
+		} else
+			clear();
+	}
+
+	// Returns the index of the key in the table, or -1 if not found
+	private int indexOf(Object key) {
+		final Object[] tab = m_table;
+		if (tab == null)
+			return -1;
+
+		final Object k = mask(key);
+		final int mask = tab.length - 1;
+		for (int i = index(k, mask);; i = (i + 2) & mask) {
+			final Object item = tab[i];
+			if (item == null)
+				return -1;
+			if (item != TOMBSTONE && matches(item, k))
+				return i;
+		}
+	}
+
+	private void rehash() {
+		final Object[] oldTab = m_table;
+		// doubles only if the live keys take up more than half of the slots
+		final int length = m_size << 2 > oldTab.length ? oldTab.length << 1
+				: oldTab.length;
+		final Object[] tab = new Object[length];
+		final int mask = length - 1;
+		for (int j = 0; j < oldTab.length; j += 2) {
+			final Object k = oldTab[j];
+			if (!isLive(k))
+				continue;
+
+			int i = index(k, mask);
+			while (tab[i] != null)
+				i = (i + 2) & mask;
+			tab[i] = k;
+			tab[i + 1] = oldTab[j + 1];
+		}
+		m_table = tab;
+		m_used = m_size;
+	}
+
+	// Returns the even index of the first slot to probe
+	private int index(Object k, int mask) {
+		int h = m_identity ? System.identityHashCode(k) : k.hashCode();
+		h ^= (h >>> 16);
+		return (h << 1) & mask;
+	}
+
+	private boolean matches(Object item, Object k) {
+		return item == k || (!m_identity && item.equals(k));
+	}
+
+	private static boolean isLive(Object k) {
+		return k != null && k != TOMBSTONE;
+	}
+
+	private static Object mask(Object key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	private static Object unmask(Object k) {
+		return k == NULL_KEY ? null : k;
+	}
+
+	private static boolean eq(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+}
@@ -14,6 +14,8 @@
 package org.jruyi.me.mq;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.jruyi.common.IDumpable;
 import org.jruyi.common.StrUtil;
@@ -42,6 +44,7 @@ abstract class Endpoint implements IProducer, IConsumer, IDumpable {
 	private IPreHandler[] m_preHandlers;
 	private IPostHandler[] m_postHandlers;
 	private Producer m_producer = Producer.OPENED;
+	private volatile Mailbox m_mailbox;
 
 	enum Producer {
 
@@ -54,28 +57,29 @@ abstract class Endpoint implements IProducer, IConsumer, IDumpable {
 
 			@Override
 			public final void send(IMessage message, Endpoint endpoint) {
-				if (message == null)
-					return;
-
-				Message msg = (Message) message;
-				msg.from(endpoint.id());
+				final Message msg = enqueue(message, endpoint);
+				if (msg != null && !endpoint.mq().dispatch(msg))
+					throw new RejectedExecutionException(StrUtil.join(
+							"Mailbox full, rejected:", msg));
+			}
 
-				if (!endpoint.onEnqueue(message)) {
-					message.close();
+			@Override
+			public final void send(IMessage[] messages, Endpoint endpoint) {
+				if (messages == null)
 					return;
-				}
 
-				if (msg.to() == null) {
-					IRoute entry = endpoint.router().route(msg);
-					if (entry == null) {
-						c_logger.warn(StrUtil.join("Route Not Found:", msg));
-						msg.close();
-						return;
-					}
-					msg.to(entry.to());
+				final Message[] msgs = new Message[messages.length];
+				int n = 0;
+				for (IMessage message : messages) {
+					final Message msg = enqueue(message, endpoint);
+					if (msg != null)
+						msgs[n++] = msg;
 				}
 
-				endpoint.mq().dispatch(msg);
+				final int rejected = endpoint.mq().dispatch(msgs, n);
+				if (rejected > 0)
+					throw new RejectedExecutionException(StrUtil.join(
+							"Mailbox full, rejected ", rejected, " message(s)"));
 			}
 		};
 
@@ -86,6 +90,36 @@ abstract class Endpoint implements IProducer, IConsumer, IDumpable {
 		public void send(IMessage message, Endpoint endpoint) {
 			throw new IllegalStateException();
 		}
+
+		public void send(IMessage[] messages, Endpoint endpoint) {
+			throw new IllegalStateException();
+		}
+
+		// Returns the message routed, or null if it is dropped
+		static Message enqueue(IMessage message, Endpoint endpoint) {
+			if (message == null)
+				return null;
+
+			Message msg = (Message) message;
+			msg.from(endpoint.id());
+
+			if (!endpoint.onEnqueue(message)) {
+				message.close();
+				return null;
+			}
+
+			if (msg.to() == null) {
+				IRoute entry = endpoint.router().route(msg);
+				if (entry == null) {
+					c_logger.warn(StrUtil.join("Route Not Found:", msg));
+					msg.close();
+					return null;
+				}
+				msg.to(entry.to());
+			}
+
+			return msg;
+		}
 	}
 
 	Endpoint(String id, MessageQueue mq) {
@@ -122,6 +156,19 @@ abstract class Endpoint implements IProducer, IConsumer, IDumpable {
 		return m_router;
 	}
 
+	final Mailbox mailbox() {
+		return m_mailbox;
+	}
+
+	final void setMailbox(ServiceReference<?> reference) {
+		try {
+			m_mailbox = Mailbox.configure(this, reference, m_mailbox);
+		} catch (RuntimeException e) {
+			m_mailbox = null;
+			c_logger.error(StrUtil.join(this, ": Illegal mailbox"), e);
+		}
+	}
+
 	final void closeProducer() {
 		m_producer = Producer.CLOSED;
 	}
@@ -136,6 +183,18 @@ abstract class Endpoint implements IProducer, IConsumer, IDumpable {
 		m_producer.send(message, this);
 	}
 
+	@Override
+	public final void send(IMessage[] messages) {
+		m_producer.send(messages, this);
+	}
+
+	@Override
+	public final void send(Collection<? extends IMessage> messages) {
+		if (messages != null)
+			m_producer.send(messages.toArray(new IMessage[messages.size()]),
+					this);
+	}
+
 	final void consume(Message message) {
 		if (!onDequeue(message)) {
 			message.close();
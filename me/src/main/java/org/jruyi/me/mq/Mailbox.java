@@ -0,0 +1,370 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.me.mq;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.me.MeConstants;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded queue of the messages to an endpoint, consumed by at most
+ * {@code maxInflight} tasks at a time so that a slow endpoint cannot take up
+ * the whole executor. If the executor refuses a task, the thread holding its
+ * inflight slot consumes the messages in place, so queued messages are never
+ * left without a task.
+ * <p>
+ * While the messages are ordered by an ordering key, a mailbox is consumed by
+ * one task at a time whatever its {@code maxInflight}, since the tasks would
+ * otherwise consume the messages with the same key concurrently. The messages
+ * are then consumed in the order they are queued, which keeps the order of
+ * the messages with the same key.
+ */
+final class Mailbox implements Runnable {
+
+	private static final Logger c_logger = LoggerFactory
+			.getLogger(Mailbox.class);
+
+	// the max number of messages a task consumes before yielding the thread
+	private static final int MAX_BATCH_SIZE = 64;
+
+	private final Endpoint m_endpoint;
+	// the configuration is guarded by m_lock
+	private int m_capacity;
+	private int m_maxInflight;
+	private OverflowPolicy m_policy;
+	private boolean m_ordered;
+	private final ArrayDeque<Message> m_queue;
+	private final ReentrantLock m_lock;
+	private final Condition m_notFull;
+	private volatile Executor m_executor;
+	private int m_inflight;
+	private long m_rejected;
+	private long m_dropped;
+
+	enum OverflowPolicy {
+
+		REJECT("reject"), DROP_OLDEST("dropOldest"), BLOCK("block");
+
+		private final String m_name;
+
+		OverflowPolicy(String name) {
+			m_name = name;
+		}
+
+		static OverflowPolicy valueOf(String name, OverflowPolicy defaultPolicy) {
+			if (name == null)
+				return defaultPolicy;
+
+			name = name.trim();
+			for (OverflowPolicy policy : values()) {
+				if (policy.m_name.equals(name))
+					return policy;
+			}
+
+			throw new IllegalArgumentException(StrUtil.join(
+					"Unknown overflow policy: ", name));
+		}
+
+		@Override
+		public String toString() {
+			return m_name;
+		}
+	}
+
+	private Mailbox(Endpoint endpoint, int capacity, int maxInflight,
+			OverflowPolicy policy) {
+		m_endpoint = endpoint;
+		m_capacity = capacity;
+		m_maxInflight = maxInflight;
+		m_policy = policy;
+		m_queue = new ArrayDeque<Message>(Math.min(capacity, 1024));
+		m_lock = new ReentrantLock();
+		m_notFull = m_lock.newCondition();
+	}
+
+	/**
+	 * Returns the mailbox configured by the service properties of the given
+	 * endpoint, or {@code null} if no mailbox is configured. The given
+	 * {@code mailbox}, if any, is reconfigured in place, so that the messages
+	 * queued keep their order and {@code maxInflight} holds across the change.
+	 */
+	static Mailbox configure(Endpoint endpoint, ServiceReference<?> reference,
+			Mailbox mailbox) {
+		final Integer capacity = (Integer) reference
+				.getProperty(MeConstants.EP_MAILBOX_CAPACITY);
+		if (capacity == null || capacity < 1)
+			return null;
+
+		final Integer v = (Integer) reference
+				.getProperty(MeConstants.EP_MAILBOX_MAXINFLIGHT);
+		final int maxInflight = v == null || v < 1 ? 1 : v;
+		final OverflowPolicy policy = OverflowPolicy.valueOf(
+				(String) reference
+						.getProperty(MeConstants.EP_MAILBOX_OVERFLOWPOLICY),
+				OverflowPolicy.REJECT);
+
+		if (mailbox == null)
+			return new Mailbox(endpoint, capacity, maxInflight, policy);
+
+		mailbox.reconfigure(capacity, maxInflight, policy);
+		return mailbox;
+	}
+
+	/**
+	 * Puts the given message into this mailbox. If this mailbox is full, the
+	 * oldest message is dropped, or the caller waits for room no longer than
+	 * the given {@code timeoutInSeconds}, as per the overflow policy. If
+	 * {@code ordered}, the messages are consumed by one task at a time.
+	 * 
+	 * @return false if the message is rejected, otherwise true
+	 */
+	boolean offer(Message message, Executor executor, int timeoutInSeconds,
+			boolean ordered) {
+		Message dropped = null;
+		boolean submit = false;
+		// set before the message is queued, for a reconfiguration to see it
+		m_executor = executor;
+		final ArrayDeque<Message> queue = m_queue;
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			m_ordered = ordered;
+			if (queue.size() >= m_capacity) {
+				switch (m_policy) {
+				case DROP_OLDEST:
+					dropped = queue.poll();
+					++m_dropped;
+					break;
+				case BLOCK:
+					if (awaitNotFull(timeoutInSeconds))
+						break;
+					++m_rejected;
+					return false;
+				default:
+					++m_rejected;
+					return false;
+				}
+			}
+
+			queue.offer(message);
+			if (m_inflight < inflightLimit()) {
+				++m_inflight;
+				submit = true;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (dropped != null) {
+			c_logger.warn(StrUtil.join(m_endpoint,
+					" mailbox overflowed, dropped: ", dropped));
+			dropped.close();
+		}
+
+		if (submit && !submit(executor))
+			run();
+
+		return true;
+	}
+
+	@Override
+	public void run() {
+		// keeps consuming in this thread while the executor refuses this task
+		while (consume() && !submit(m_executor))
+			;
+	}
+
+	// Consumes up to MAX_BATCH_SIZE messages. Returns false if the queue is
+	// drained, or the other tasks are enough for the inflight limit lowered,
+	// and the inflight slot is given back.
+	private boolean consume() {
+		final Endpoint endpoint = m_endpoint;
+		final ArrayDeque<Message> queue = m_queue;
+		final ReentrantLock lock = m_lock;
+		for (int i = 0; i < MAX_BATCH_SIZE; ++i) {
+			final Message message;
+			lock.lock();
+			try {
+				if (m_inflight > inflightLimit()) {
+					--m_inflight;
+					return false;
+				}
+				message = queue.poll();
+				if (message == null) {
+					--m_inflight;
+					return false;
+				}
+				m_notFull.signal();
+			} finally {
+				lock.unlock();
+			}
+
+			endpoint.consume(message);
+		}
+
+		// yields the thread to the other endpoints
+		return true;
+	}
+
+	int depth() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int inflight() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_inflight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	long rejected() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_rejected;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	long dropped() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int capacity() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_capacity;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int maxInflight() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_maxInflight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	OverflowPolicy policy() {
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			return m_policy;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void reconfigure(int capacity, int maxInflight,
+			OverflowPolicy policy) {
+		int submits;
+		final ReentrantLock lock = m_lock;
+		lock.lock();
+		try {
+			m_capacity = capacity;
+			m_maxInflight = maxInflight;
+			m_policy = policy;
+			// the offers waiting may have room now
+			m_notFull.signalAll();
+
+			// more tasks for the messages queued if maxInflight is raised
+			submits = Math.min(m_queue.size(), inflightLimit() - m_inflight);
+			if (submits > 0)
+				m_inflight += submits;
+		} finally {
+			lock.unlock();
+		}
+
+		// Messages are queued, so at least one task is consuming them and
+		// the slots of the tasks refused can just be given back.
+		final Executor executor = m_executor;
+		for (; submits > 0; --submits) {
+			if (!submit(executor)) {
+				lock.lock();
+				try {
+					--m_inflight;
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	// Called with the lock held
+	private int inflightLimit() {
+		return m_ordered ? 1 : m_maxInflight;
+	}
+
+	// Waits with the lock held, returns false if still full
+	private boolean awaitNotFull(int timeoutInSeconds) {
+		long nanos = TimeUnit.SECONDS.toNanos(timeoutInSeconds);
+		try {
+			while (m_queue.size() >= m_capacity) {
+				if (nanos <= 0L)
+					return false;
+				nanos = m_notFull.awaitNanos(nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	// Returns false, with the inflight slot still held, if the executor
+	// refuses this task
+	private boolean submit(Executor executor) {
+		try {
+			executor.execute(this);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		} catch (Throwable t) {
+			c_logger.error(StrUtil.join(m_endpoint,
+					" failed to schedule its mailbox"), t);
+			return false;
+		}
+	}
+}
@@ -14,7 +14,6 @@
 package org.jruyi.me.mq;
 
 import java.io.Closeable;
-import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -23,7 +22,6 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.jruyi.common.ICloseable;
 import org.jruyi.common.IDumpable;
 import org.jruyi.common.IThreadLocalCache;
-import org.jruyi.common.Properties;
 import org.jruyi.common.StrUtil;
 import org.jruyi.common.StringBuilder;
 import org.jruyi.common.ThreadLocalCache;
@@ -41,8 +39,11 @@ public final class Message implements Runnable, IMessage, IRoutable,
 	private static final IThreadLocalCache<Message> c_cache = ThreadLocalCache
 			.weakLinkedCache();
 	private static final AtomicLong c_counter = new AtomicLong(0L);
-	private final Properties m_properties;
-	private final IdentityHashMap<Object, Object> m_storage;
+	// room for 24 properties and 6 deposits before growing
+	private static final int PROPERTIES_CAPACITY = 32;
+	private static final int STORAGE_CAPACITY = 8;
+	private final CompactMap<String, Object> m_properties;
+	private final CompactMap<Object, Object> m_storage;
 	private long m_id;
 	private String m_from;
 	private String m_to;
@@ -73,13 +74,16 @@ public final class Message implements Runnable, IMessage, IRoutable,
 	}
 
 	private Message() {
-		m_properties = new Properties();
-		m_storage = new IdentityHashMap<Object, Object>();
+		m_properties = new CompactMap<String, Object>(false,
+				PROPERTIES_CAPACITY);
+		m_storage = new CompactMap<Object, Object>(true, STORAGE_CAPACITY);
 	}
 
 	private Message(Map<String, Object> properties, Map<Object, Object> storage) {
-		m_properties = new Properties(properties);
-		m_storage = new IdentityHashMap<Object, Object>(storage);
+		m_properties = new CompactMap<String, Object>(false,
+				PROPERTIES_CAPACITY, properties);
+		m_storage = new CompactMap<Object, Object>(true, STORAGE_CAPACITY,
+				storage);
 	}
 
 	@Override
@@ -245,10 +249,10 @@ public final class Message implements Runnable, IMessage, IRoutable,
 	@Override
 	public void close() {
 		m_endpoint = null;
-		m_properties.clear();
+		m_properties.trim();
 		m_from = null;
 		m_to = null;
-		m_storage.clear();
+		m_storage.trim();
 		Object attachment = m_attachment;
 		try {
 			if (attachment != null) {
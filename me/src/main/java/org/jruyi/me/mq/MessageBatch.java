@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.me.mq;
+
+import java.util.Arrays;
+
+import org.jruyi.common.IDumpable;
+import org.jruyi.common.StrUtil;
+import org.jruyi.common.StringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Messages sent in one batch to the same endpoint, consumed one at a time in
+ * order by a single task.
+ */
+final class MessageBatch implements Runnable, IDumpable {
+
+	private static final Logger c_logger = LoggerFactory
+			.getLogger(MessageBatch.class);
+
+	private final Endpoint m_endpoint;
+	private Message[] m_messages;
+	private int m_size;
+
+	MessageBatch(Endpoint endpoint, int capacity) {
+		m_endpoint = endpoint;
+		m_messages = new Message[capacity];
+	}
+
+	int size() {
+		return m_size;
+	}
+
+	Message first() {
+		return m_messages[0];
+	}
+
+	void add(Message message) {
+		Message[] messages = m_messages;
+		final int size = m_size;
+		if (size == messages.length)
+			m_messages = messages = Arrays.copyOf(messages, size << 1);
+		messages[size] = message;
+		m_size = size + 1;
+	}
+
+	@Override
+	public void run() {
+		final Endpoint endpoint = m_endpoint;
+		final Message[] messages = m_messages;
+		final int n = m_size;
+		m_messages = null;
+		// a failure on one message does not cost the rest of the batch
+		for (int i = 0; i < n; ++i) {
+			final Message message = messages[i];
+			try {
+				endpoint.consume(message);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(endpoint, " failed to consume: ",
+						message), t);
+				message.close();
+			}
+		}
+	}
+
+	void close() {
+		final Message[] messages = m_messages;
+		if (messages == null)
+			return;
+
+		m_messages = null;
+		for (int i = 0; i < m_size; ++i)
+			messages[i].close();
+	}
+
+	@Override
+	public void dump(StringBuilder builder) {
+		builder.append("MessageBatch[").append(m_endpoint.id()).append(':')
+				.append(m_size).append(']');
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = StringBuilder.get();
+		try {
+			dump(builder);
+			return builder.toString();
+		} finally {
+			builder.close();
+		}
+	}
+}
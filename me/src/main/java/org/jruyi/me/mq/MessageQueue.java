@@ -20,6 +20,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.felix.service.command.CommandProcessor;
 import org.jruyi.common.BiListNode;
 import org.jruyi.common.IServiceHolderManager;
 import org.jruyi.common.ServiceHolderManager;
@@ -35,6 +36,7 @@ import org.jruyi.timeoutadmin.ITimeoutAdmin;
 import org.jruyi.timeoutadmin.ITimeoutEvent;
 import org.jruyi.timeoutadmin.ITimeoutListener;
 import org.jruyi.timeoutadmin.ITimeoutNotifier;
+import org.jruyi.tpe.IKeyedExecutor;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
@@ -48,8 +50,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component(name = "jruyi.me.mq", //
-service = {}, //
-property = { "endpoint.target=(" + MeConstants.EP_ID + "=*)", "processor.target=(" + MeConstants.EP_ID + "=*)", }, //
+immediate = true, //
+service = MessageQueue.class, //
+property = { "endpoint.target=(" + MeConstants.EP_ID + "=*)", "processor.target=(" + MeConstants.EP_ID + "=*)",
+		CommandProcessor.COMMAND_SCOPE + "=mq", //
+		CommandProcessor.COMMAND_FUNCTION + "=mailbox", }, //
 xmlns = "http://www.osgi.org/xmlns/scr/v1.2.0")
 public final class MessageQueue implements ITimeoutListener {
 
@@ -58,6 +63,7 @@ public final class MessageQueue implements ITimeoutListener {
 	private static final Logger c_logger = LoggerFactory.getLogger(MessageQueue.class);
 
 	private static final String P_MSG_TIMEOUT = "msgTimeoutInSeconds";
+	private static final String P_ORDERING_KEY = "orderingKey";
 
 	private final ConcurrentHashMap<String, Endpoint> m_endpoints;
 	private final ReentrantLock m_lock;
@@ -68,10 +74,13 @@ public final class MessageQueue implements ITimeoutListener {
 
 	private IRouterManager m_rm;
 	private Executor m_executor;
+	private volatile IKeyedExecutor m_keyedExecutor;
 	private ITimeoutAdmin m_ta;
 
 	private volatile ComponentContext m_context;
 	private int m_msgTimeout = 10;
+	// the name of the message property to order messages by
+	private volatile String m_orderingKey;
 
 	static final class MsgNotifier {
 
@@ -145,6 +154,16 @@ public final class MessageQueue implements ITimeoutListener {
 			m_executor = null;
 	}
 
+	@Reference(name = "keyedExecutor", cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+	synchronized void setKeyedExecutor(IKeyedExecutor keyedExecutor) {
+		m_keyedExecutor = keyedExecutor;
+	}
+
+	synchronized void unsetKeyedExecutor(IKeyedExecutor keyedExecutor) {
+		if (m_keyedExecutor == keyedExecutor)
+			m_keyedExecutor = null;
+	}
+
 	@Reference(name = "endpoint", service = IEndpoint.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
 	synchronized void setEndpoint(ServiceReference<IEndpoint> reference) throws Exception {
 		final String id = getId(reference);
@@ -159,6 +178,7 @@ public final class MessageQueue implements ITimeoutListener {
 		}
 
 		endpoint = new LazyEndpoint(id, this, reference);
+		endpoint.setMailbox(reference);
 		m_refEps.put(reference, endpoint);
 		endpoints.put(id, endpoint);
 
@@ -204,6 +224,7 @@ public final class MessageQueue implements ITimeoutListener {
 		}
 
 		endpoint = new Processor(id, this, reference);
+		endpoint.setMailbox(reference);
 		m_refEps.put(reference, endpoint);
 		endpoints.put(id, endpoint);
 
@@ -237,6 +258,11 @@ public final class MessageQueue implements ITimeoutListener {
 		final Integer v = (Integer) properties.get(P_MSG_TIMEOUT);
 		if (v != null)
 			m_msgTimeout = v;
+
+		String orderingKey = (String) properties.get(P_ORDERING_KEY);
+		if (orderingKey != null && (orderingKey = orderingKey.trim()).length() < 1)
+			orderingKey = null;
+		m_orderingKey = orderingKey;
 	}
 
 	void activate(ComponentContext context, Map<String, ?> properties) {
@@ -287,35 +313,124 @@ public final class MessageQueue implements ITimeoutListener {
 		c_logger.info("MessageQueue deactivated");
 	}
 
+	/**
+	 * Prints the mailboxes of the endpoints
+	 * 
+	 * @param args
+	 *            [endpointId]
+	 */
+	public void mailbox(String[] args) {
+		if (args == null || args.length < 1) {
+			for (Endpoint endpoint : m_endpoints.values()) {
+				if (endpoint.mailbox() != null)
+					printMailbox(endpoint);
+			}
+			return;
+		}
+
+		final Endpoint endpoint = m_endpoints.get(args[0].trim());
+		if (endpoint == null) {
+			System.err.print("Endpoint Not Found: ");
+			System.err.println(args[0]);
+			return;
+		}
+
+		printMailbox(endpoint);
+	}
+
 	<T> T locateService(ServiceReference<T> reference) {
 		return m_context.getBundleContext().getService(reference);
 	}
 
-	void dispatch(Message message) {
+	/**
+	 * Dispatches the given message.
+	 * 
+	 * @return false if the message is rejected by the mailbox of the
+	 *         destination endpoint, in which case it is left to the caller,
+	 *         otherwise true
+	 */
+	boolean dispatch(Message message) {
 		if (message.isToNull()) {
 			message.close();
-			return;
+			return true;
 		}
 
 		String dst = message.to();
 		try {
 			Endpoint mqProxy = m_endpoints.get(dst);
-			if (mqProxy != null) {
-				message.setEndpoint(mqProxy);
-				m_executor.execute(message);
-			} else {
-				BiListNode<MsgNotifier> node = schedule(message);
-				mqProxy = m_endpoints.get(dst);
-				if (mqProxy != null && node.get().notifier().cancel()) {
-					removeNode(node);
-					message.setEndpoint(mqProxy);
-					m_executor.execute(message);
-				}
+			if (mqProxy != null)
+				return execute(m_executor, mqProxy, message, m_msgTimeout);
+
+			BiListNode<MsgNotifier> node = schedule(message);
+			mqProxy = m_endpoints.get(dst);
+			if (mqProxy != null && node.get().notifier().cancel()) {
+				removeNode(node);
+				return execute(m_executor, mqProxy, message, m_msgTimeout);
 			}
 		} catch (Throwable t) {
 			c_logger.error(StrUtil.join("Endpoint[", dst, "] failed to consume: ", message), t);
 			message.close();
 		}
+		return true;
+	}
+
+	/**
+	 * Dispatches the first {@code n} of the given messages with one task per
+	 * destination endpoint consuming its messages in order.
+	 * 
+	 * @return the number of the messages rejected by the mailboxes of their
+	 *         destination endpoints, which are closed
+	 */
+	int dispatch(Message[] messages, int n) {
+		int rejected = 0;
+		// the keyed executor orders the messages with an ordering key instead
+		if (n < 2 || m_orderingKey != null) {
+			for (int i = 0; i < n; ++i) {
+				if (!dispatch(messages[i]))
+					rejected += reject(messages[i]);
+			}
+			return rejected;
+		}
+
+		final Map<String, Endpoint> endpoints = m_endpoints;
+		final HashMap<Endpoint, MessageBatch> batches = new HashMap<Endpoint, MessageBatch>();
+		for (int i = 0; i < n; ++i) {
+			final Message message = messages[i];
+			if (message.isToNull()) {
+				message.close();
+				continue;
+			}
+
+			final Endpoint mqProxy = endpoints.get(message.to());
+			// waits for the endpoint, or goes through its mailbox
+			if (mqProxy == null || mqProxy.mailbox() != null) {
+				if (!dispatch(message))
+					rejected += reject(message);
+				continue;
+			}
+
+			MessageBatch batch = batches.get(mqProxy);
+			if (batch == null) {
+				batch = new MessageBatch(mqProxy, Math.min(n - i, 16));
+				batches.put(mqProxy, batch);
+			}
+			batch.add(message);
+		}
+
+		final Executor executor = m_executor;
+		for (Map.Entry<Endpoint, MessageBatch> entry : batches.entrySet()) {
+			final MessageBatch batch = entry.getValue();
+			try {
+				if (batch.size() > 1)
+					executor.execute(batch);
+				else
+					execute(executor, entry.getKey(), batch.first(), 0);
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(entry.getKey(), " failed to consume: ", batch), t);
+				batch.close();
+			}
+		}
+		return rejected;
 	}
 
 	IRouter getRouter(String id) {
@@ -390,6 +505,7 @@ public final class MessageQueue implements ITimeoutListener {
 	private void updated(Endpoint endpoint, ServiceReference<?> reference) {
 		if (m_context != null)
 			endpoint.setHandlers(reference);
+		endpoint.setMailbox(reference);
 
 		String id = getId(reference);
 		if (id == null) {
@@ -467,6 +583,61 @@ public final class MessageQueue implements ITimeoutListener {
 		return msg;
 	}
 
+	// Messages with the same ordering key are consumed one at a time in order.
+	// Messages to an endpoint with a mailbox go through it, which is then
+	// consumed by one task at a time instead, whatever its maxInflight.
+	// Returns false if the mailbox rejects the message.
+	private boolean execute(Executor executor, Endpoint endpoint, Message message, int timeoutInSeconds) {
+		final String orderingKey = m_orderingKey;
+		final Mailbox mailbox = endpoint.mailbox();
+		if (mailbox != null)
+			return mailbox.offer(message, executor, timeoutInSeconds, orderingKey != null);
+
+		message.setEndpoint(endpoint);
+		if (orderingKey != null) {
+			final IKeyedExecutor keyedExecutor = m_keyedExecutor;
+			final Object key = message.getProperty(orderingKey);
+			if (keyedExecutor != null && key != null) {
+				keyedExecutor.execute(key, message);
+				return true;
+			}
+		}
+		executor.execute(message);
+		return true;
+	}
+
+	private static void printMailbox(Endpoint endpoint) {
+		System.out.print('[');
+		System.out.print(endpoint.id());
+		System.out.print("]: ");
+		final Mailbox mailbox = endpoint.mailbox();
+		if (mailbox == null) {
+			System.out.println("no mailbox");
+			return;
+		}
+
+		System.out.print("depth=");
+		System.out.print(mailbox.depth());
+		System.out.print('/');
+		System.out.print(mailbox.capacity());
+		System.out.print(", inflight=");
+		System.out.print(mailbox.inflight());
+		System.out.print('/');
+		System.out.print(mailbox.maxInflight());
+		System.out.print(", overflowPolicy=");
+		System.out.print(mailbox.policy());
+		System.out.print(", rejected=");
+		System.out.print(mailbox.rejected());
+		System.out.print(", dropped=");
+		System.out.println(mailbox.dropped());
+	}
+
+	private static int reject(Message message) {
+		c_logger.warn(StrUtil.join("Mailbox full, rejected:", message));
+		message.close();
+		return 1;
+	}
+
 	private void wakeMsgs(Endpoint endpoint) {
 		final BiListNode<MsgNotifier> head = m_nodes.get(endpoint.id());
 		if (head == null)
@@ -486,9 +657,10 @@ public final class MessageQueue implements ITimeoutListener {
 				previous.next(next);
 				next.previous(previous);
 
+				// never blocks with the lock held
 				Message msg = node.get().msg();
-				msg.setEndpoint(endpoint);
-				executor.execute(msg);
+				if (!execute(executor, endpoint, msg, 0))
+					reject(msg);
 
 				node.close();
 				node = next;
@@ -31,13 +31,16 @@ import org.osgi.framework.InvalidSyntaxException;
 
 final class Router implements IRouter {
 
-	private static final Route[] NONE = new Route[0];
 	private static File s_routingTableDir;
+	private static int s_cacheSize;
 	private final ArrayList<Route> m_routeList;
 	private final String m_from;
 	private final ReentrantLock m_lock;
-	private Route[] m_routes = NONE;
+	private RoutingIndex m_index = RoutingIndex.NONE;
 	private boolean m_modified;
+	// striped, not to contend on every routing
+	private final StripedCounter m_cacheHits = new StripedCounter();
+	private final StripedCounter m_cacheMisses = new StripedCounter();
 
 	Router(String from) {
 		m_from = from.intern();
@@ -72,16 +75,33 @@ final class Router implements IRouter {
 		s_routingTableDir = routingTableDir;
 	}
 
+	static void setCacheSize(int cacheSize) {
+		s_cacheSize = cacheSize;
+	}
+
 	@Override
 	public IRoute route(IRoutable routable) {
-		Route[] res = routes();
-		Map<String, ?> routingInfo = routable.getRoutingInfo();
-		for (Route entry : res) {
-			if (entry.matches(routingInfo))
-				return entry;
+		final RoutingIndex index = index();
+		final Map<String, ?> routingInfo = routable.getRoutingInfo();
+		final RoutingCache cache = index.cache();
+		if (cache == null)
+			return index.route(routingInfo);
+
+		final RoutingCache.Fingerprint fingerprint = cache
+				.fingerprint(routingInfo);
+		if (fingerprint == null)
+			return index.route(routingInfo);
+
+		final Object decision = cache.get(fingerprint);
+		if (decision != RoutingCache.MISS) {
+			m_cacheHits.increment();
+			return (Route) decision;
 		}
 
-		return null;
+		m_cacheMisses.increment();
+		final Route route = index.route(routingInfo);
+		cache.put(fingerprint, route);
+		return route;
 	}
 
 	@Override
@@ -94,7 +114,7 @@ final class Router implements IRouter {
 				return;
 
 			routeList.clear();
-			m_routes = NONE;
+			m_index = RoutingIndex.NONE;
 			m_modified = true;
 		} finally {
 			lock.unlock();
@@ -138,10 +158,11 @@ final class Router implements IRouter {
 			if (route == null) {
 				route = new Route(this, to, filter);
 				m_routeList.add(route);
-				m_routes = NONE;
+				m_index = RoutingIndex.NONE;
 				m_modified = true;
 			} else if (!route.filter().equals(filter)) {
 				route.filter(filter);
+				m_index = RoutingIndex.NONE;
 				m_modified = true;
 			}
 		} finally {
@@ -169,7 +190,7 @@ final class Router implements IRouter {
 			for (int i = 0; i < n; ++i) {
 				if (to.equals(routeList.get(i).to())) {
 					m_routeList.remove(i);
-					m_routes = NONE;
+					m_index = RoutingIndex.NONE;
 					m_modified = true;
 					break;
 				}
@@ -189,8 +210,6 @@ final class Router implements IRouter {
 				return;
 
 			int size = routeList.size();
-			if (m_routes == NONE)
-				m_routes = routeList.toArray(new Route[size]);
 
 			File file = new File(s_routingTableDir, m_from);
 			if (size < 1) {
@@ -204,8 +223,7 @@ final class Router implements IRouter {
 					new FileOutputStream(file));
 			try {
 				out.writeInt(size);
-				Route[] routes = m_routes;
-				for (Route route : routes) {
+				for (Route route : routeList) {
 					out.writeObject(route.to());
 					out.writeObject(route.filter());
 				}
@@ -219,19 +237,41 @@ final class Router implements IRouter {
 		}
 	}
 
+	long cacheHits() {
+		return m_cacheHits.sum();
+	}
+
+	long cacheMisses() {
+		return m_cacheMisses.sum();
+	}
+
+	/**
+	 * Returns the number of the routing decisions cached, or -1 if not cached.
+	 */
+	int cachedDecisions() {
+		final RoutingCache cache = index().cache();
+		return cache == null ? -1 : cache.size();
+	}
+
 	private Route[] routes() {
-		Route[] routes = m_routes;
-		if (routes != NONE)
-			return routes;
+		return index().routes();
+	}
+
+	private RoutingIndex index() {
+		RoutingIndex index = m_index;
+		if (index != RoutingIndex.NONE)
+			return index;
 
 		final ArrayList<Route> routeList = m_routeList;
 		final ReentrantLock lock = m_lock;
 		lock.lock();
 		try {
-			if (m_routes == NONE)
-				m_routes = routeList.toArray(new Route[routeList.size()]);
+			if (m_index == RoutingIndex.NONE)
+				m_index = new RoutingIndex(
+						routeList.toArray(new Route[routeList.size()]),
+						s_cacheSize);
 
-			return m_routes;
+			return m_index;
 		} finally {
 			lock.unlock();
 		}
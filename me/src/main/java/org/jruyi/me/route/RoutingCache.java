@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.me.route;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache of the routing decisions of a route set, keyed on the
+ * values of the properties referenced by the filters of the routes. It
+ * belongs to the {@link RoutingIndex} of the route set so that it goes away
+ * together with the index whenever the route set changes.
+ */
+final class RoutingCache {
+
+	static final Object MISS = new Object();
+	private static final Object NO_ROUTE = new Object();
+	private final String[] m_keys;
+	private final int m_capacity;
+	private final ConcurrentHashMap<Fingerprint, Object> m_decisions;
+
+	static final class Fingerprint {
+
+		private final Object[] m_values;
+		private final int m_hash;
+
+		Fingerprint(Object[] values) {
+			m_values = values;
+			m_hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+
+			if (!(obj instanceof Fingerprint))
+				return false;
+
+			final Fingerprint that = (Fingerprint) obj;
+			return m_hash == that.m_hash
+					&& Arrays.equals(m_values, that.m_values);
+		}
+	}
+
+	private RoutingCache(String[] keys, int capacity) {
+		m_keys = keys;
+		m_capacity = capacity;
+		m_decisions = new ConcurrentHashMap<Fingerprint, Object>();
+	}
+
+	/**
+	 * Returns a cache for the given routes, or {@code null} if {@code capacity}
+	 * is not positive or the properties referenced by a filter are unknown.
+	 */
+	static RoutingCache create(Route[] routes, int capacity) {
+		if (capacity < 1)
+			return null;
+
+		final TreeSet<String> keys = new TreeSet<String>();
+		for (Route route : routes) {
+			final Set<String> filterKeys = RoutingIndex.keys(route.filter());
+			if (filterKeys == null)
+				return null;
+			keys.addAll(filterKeys);
+		}
+
+		return new RoutingCache(keys.toArray(new String[keys.size()]),
+				capacity);
+	}
+
+	/**
+	 * Returns the fingerprint of the given routing info, or {@code null} if
+	 * any of the referenced properties has a value of a type without value
+	 * semantics, such as an array or a collection.
+	 */
+	Fingerprint fingerprint(Map<String, ?> routingInfo) {
+		final String[] keys = m_keys;
+		final Object[] values = new Object[keys.length];
+		for (int i = 0; i < keys.length; ++i) {
+			final Object value = routingInfo.get(keys[i]);
+			if (value != null && !isValue(value))
+				return null;
+			values[i] = value;
+		}
+		return new Fingerprint(values);
+	}
+
+	/**
+	 * Returns the route cached for the given fingerprint, {@code null} if no
+	 * route was found for it, or {@link #MISS} if there is no routing decision
+	 * cached yet.
+	 */
+	Object get(Fingerprint fingerprint) {
+		final Object decision = m_decisions.get(fingerprint);
+		if (decision == null)
+			return MISS;
+
+		return decision == NO_ROUTE ? null : decision;
+	}
+
+	void put(Fingerprint fingerprint, Route route) {
+		final ConcurrentHashMap<Fingerprint, Object> decisions = m_decisions;
+		// Start over rather than tracking the least recently used decisions
+		if (decisions.size() >= m_capacity)
+			decisions.clear();
+
+		decisions.put(fingerprint, route == null ? NO_ROUTE : route);
+	}
+
+	int size() {
+		return m_decisions.size();
+	}
+
+	private static boolean isValue(Object value) {
+		return value instanceof String || value instanceof Integer
+				|| value instanceof Long || value instanceof Boolean
+				|| value instanceof Character || value instanceof Short
+				|| value instanceof Byte || value instanceof Double
+				|| value instanceof Float;
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.me.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled form of the route set of a router. Routes whose filter requires
+ * an equality on a common key, {@code (&(key=value)...)}, are hashed by that
+ * value so that only the routes that can possibly match a routing info get
+ * their filters evaluated. The first matching route in the original order is
+ * still the one returned.
+ */
+final class RoutingIndex {
+
+	static final RoutingIndex NONE = new RoutingIndex(new Route[0], 0);
+
+	// Indexing does not pay off for smaller route sets
+	private static final int MIN_ROUTES = 8;
+	private static final int MAX_KEYS = 4;
+	private static final int[] EMPTY = new int[0];
+
+	private final Route[] m_routes;
+	private final String[] m_keys;
+	// for each key, value -> ascending positions of the routes requiring it
+	private final HashMap<String, int[]>[] m_buckets;
+	// for each key, ascending positions of all the routes indexed by it
+	private final int[][] m_indexed;
+	// ascending positions of the routes not indexed
+	private final int[] m_residual;
+	private final RoutingCache m_cache;
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	RoutingIndex(Route[] routes, int cacheSize) {
+		m_routes = routes;
+		m_cache = RoutingCache.create(routes, cacheSize);
+		final int n = routes.length;
+		if (n < MIN_ROUTES) {
+			m_keys = new String[0];
+			m_buckets = new HashMap[0];
+			m_indexed = new int[0][];
+			m_residual = positions(n);
+			return;
+		}
+
+		final Map[] equalities = new Map[n];
+		final HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < n; ++i) {
+			final Map<String, String> predicates = equalities(routes[i]
+					.filter());
+			equalities[i] = predicates;
+			for (String key : predicates.keySet()) {
+				final Integer count = counts.get(key);
+				counts.put(key, count == null ? 1 : count + 1);
+			}
+		}
+
+		final String[] keys = commonKeys(counts);
+		final int k = keys.length;
+		final HashMap<String, ArrayList<Integer>>[] buckets = new HashMap[k];
+		final ArrayList<Integer>[] indexed = new ArrayList[k];
+		for (int j = 0; j < k; ++j) {
+			buckets[j] = new HashMap<String, ArrayList<Integer>>();
+			indexed[j] = new ArrayList<Integer>();
+		}
+		final ArrayList<Integer> residual = new ArrayList<Integer>();
+		for (int i = 0; i < n; ++i) {
+			final Map<?, ?> predicates = equalities[i];
+			int j = 0;
+			for (; j < k; ++j) {
+				final String value = (String) predicates.get(keys[j]);
+				if (value == null)
+					continue;
+
+				ArrayList<Integer> bucket = buckets[j].get(value);
+				if (bucket == null) {
+					bucket = new ArrayList<Integer>();
+					buckets[j].put(value, bucket);
+				}
+				bucket.add(i);
+				indexed[j].add(i);
+				break;
+			}
+			if (j == k)
+				residual.add(i);
+		}
+
+		m_keys = keys;
+		m_buckets = new HashMap[k];
+		m_indexed = new int[k][];
+		for (int j = 0; j < k; ++j) {
+			final HashMap<String, int[]> bucket = new HashMap<String, int[]>(
+					buckets[j].size() * 2);
+			for (Map.Entry<String, ArrayList<Integer>> entry : buckets[j]
+					.entrySet())
+				bucket.put(entry.getKey(), toArray(entry.getValue()));
+			m_buckets[j] = bucket;
+			m_indexed[j] = toArray(indexed[j]);
+		}
+		m_residual = toArray(residual);
+	}
+
+	Route[] routes() {
+		return m_routes;
+	}
+
+	/**
+	 * Returns the cache of the routing decisions made against this index, or
+	 * {@code null} if not cached.
+	 */
+	RoutingCache cache() {
+		return m_cache;
+	}
+
+	Route route(Map<String, ?> routingInfo) {
+		int first = scan(m_residual, routingInfo, m_routes.length);
+		final String[] keys = m_keys;
+		for (int j = 0; j < keys.length; ++j) {
+			final Object value = routingInfo.get(keys[j]);
+			// the equality cannot hold without the key
+			if (value == null)
+				continue;
+
+			final int[] positions;
+			if (value instanceof String) {
+				positions = m_buckets[j].get(value);
+				if (positions == null)
+					continue;
+			} else
+				positions = m_indexed[j];
+
+			first = scan(positions, routingInfo, first);
+		}
+
+		return first < m_routes.length ? m_routes[first] : null;
+	}
+
+	/**
+	 * Returns the equality predicates, {@code (key=value)} without wildcards,
+	 * that the given filter string requires to be all true for the filter to
+	 * match. An empty map is returned if none or the filter string cannot be
+	 * parsed.
+	 */
+	static Map<String, String> equalities(String filter) {
+		final HashMap<String, String> predicates = new HashMap<String, String>();
+		try {
+			if (parse(filter, 0, true, predicates, null) != filter.length())
+				predicates.clear();
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+			predicates.clear();
+		}
+		return predicates;
+	}
+
+	/**
+	 * Returns the keys referenced by the given filter string, or {@code null}
+	 * if the filter string cannot be parsed.
+	 */
+	static Set<String> keys(String filter) {
+		final HashSet<String> keys = new HashSet<String>();
+		if (filter.equals(Route.FILTER_ALL))
+			return keys;
+
+		try {
+			if (parse(filter, 0, false, new HashMap<String, String>(), keys) == filter
+					.length())
+				return keys;
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+		}
+		return null;
+	}
+
+	// Returns the first position after the matching one at or after "first"
+	private int scan(int[] positions, Map<String, ?> routingInfo, int first) {
+		final Route[] routes = m_routes;
+		for (int position : positions) {
+			if (position >= first)
+				break;
+			if (routes[position].matches(routingInfo))
+				return position;
+		}
+		return first;
+	}
+
+	// Parses the filter starting at "i" and returns the position following it
+	private static int parse(String filter, int i, boolean required,
+			Map<String, String> predicates, Set<String> keys) {
+		if (filter.charAt(i) != '(')
+			throw new IllegalArgumentException();
+
+		final char c = filter.charAt(++i);
+		if (c == '&' || c == '|' || c == '!') {
+			// only the operands of a required conjunction are required
+			required = required && c == '&';
+			++i;
+			while (filter.charAt(i) == '(')
+				i = parse(filter, i, required, predicates, keys);
+			if (filter.charAt(i) != ')')
+				throw new IllegalArgumentException();
+			return i + 1;
+		}
+
+		final int eq = filter.indexOf('=', i);
+		if (eq < 0)
+			throw new IllegalArgumentException();
+		final char op = filter.charAt(eq - 1);
+		final boolean equality = op != '~' && op != '<' && op != '>';
+		final String key = filter.substring(i, equality ? eq : eq - 1).trim();
+		if (keys != null)
+			keys.add(key);
+
+		final StringBuilder value = new StringBuilder();
+		boolean wildcard = false;
+		for (i = eq + 1;; ++i) {
+			final char v = filter.charAt(i);
+			if (v == ')')
+				break;
+			if (v == '(')
+				throw new IllegalArgumentException();
+			if (v == '*')
+				wildcard = true;
+			else if (v == '\\')
+				value.append(filter.charAt(++i));
+			else
+				value.append(v);
+		}
+
+		if (required && equality && !wildcard && key.length() > 0) {
+			final String previous = predicates.put(key, value.toString());
+			// conflicting predicates are left to the filter to evaluate
+			if (previous != null && !previous.equals(value.toString()))
+				predicates.put(key, previous);
+		}
+		return i + 1;
+	}
+
+	// Returns the keys required by at least 2 routes, most common first
+	private static String[] commonKeys(HashMap<String, Integer> counts) {
+		final ArrayList<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(
+				counts.size());
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() > 1)
+				entries.add(entry);
+		}
+		Collections.sort(entries,
+				new Comparator<Map.Entry<String, Integer>>() {
+
+					@Override
+					public int compare(Map.Entry<String, Integer> o1,
+							Map.Entry<String, Integer> o2) {
+						return o2.getValue().compareTo(o1.getValue());
+					}
+				});
+
+		final int k = Math.min(entries.size(), MAX_KEYS);
+		final String[] keys = new String[k];
+		for (int j = 0; j < k; ++j)
+			keys[j] = entries.get(j).getKey();
+		return keys;
+	}
+
+	private static int[] positions(int n) {
+		final int[] positions = new int[n];
+		for (int i = 0; i < n; ++i)
+			positions[i] = i;
+		return positions;
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+		final int n = list.size();
+		if (n < 1)
+			return EMPTY;
+
+		final int[] array = new int[n];
+		for (int i = 0; i < n; ++i)
+			array[i] = list.get(i);
+		return array;
+	}
+}
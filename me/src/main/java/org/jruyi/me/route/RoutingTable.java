@@ -33,6 +33,7 @@ import org.osgi.service.component.annotations.ConfigurationPolicy;
 @Component(name = "jruyi.me.route", //
 configurationPolicy = ConfigurationPolicy.IGNORE, //
 property = { CommandProcessor.COMMAND_SCOPE + "=route",
+		CommandProcessor.COMMAND_FUNCTION + "=cache", //
 		CommandProcessor.COMMAND_FUNCTION + "=clear", //
 		CommandProcessor.COMMAND_FUNCTION + "=delete", //
 		CommandProcessor.COMMAND_FUNCTION + "=list", //
@@ -42,6 +43,8 @@ public final class RoutingTable implements IRoutingTable, IRouterManager {
 
 	private static final String ROUTINGTABLE_DIR = "jruyi.me.routingtable.dir";
 	private static final String DEFAULT_ROUTINGTABLE_LOCATION = "routingtable";
+	// The max number of routing decisions cached per router, 0 to not cache
+	private static final String ROUTINGTABLE_CACHESIZE = "jruyi.me.routingtable.cacheSize";
 	private ConcurrentHashMap<String, Router> m_routers;
 
 	static final class NonDirFileFilter implements FileFilter {
@@ -189,6 +192,30 @@ public final class RoutingTable implements IRoutingTable, IRouterManager {
 		routeSet.save();
 	}
 
+	/**
+	 * Prints the hits and misses of the routing decision cache
+	 * 
+	 * @param args
+	 *            [from]
+	 * @throws Exception
+	 */
+	public void cache(String[] args) throws Exception {
+		if (args == null || args.length < 1) {
+			for (Router router : m_routers.values())
+				printCache(router);
+			return;
+		}
+
+		final Router router = m_routers.get(args[0].trim());
+		if (router == null) {
+			System.err.print("No Route(s) Found: from=");
+			System.err.println(args[0]);
+			return;
+		}
+
+		printCache(router);
+	}
+
 	/**
 	 * Clears routing table
 	 * 
@@ -223,11 +250,16 @@ public final class RoutingTable implements IRoutingTable, IRouterManager {
 			throw new Exception(StrUtil.join("Cannot create directory ",
 					routeTableDir));
 
+		final String cacheSize = bundleContext
+				.getProperty(ROUTINGTABLE_CACHESIZE);
+		Router.setCacheSize(cacheSize == null ? 0 : Integer.parseInt(cacheSize
+				.trim()));
 		Router.setRoutingTableDir(routeTableDir);
 		m_routers = load(routeTableDir);
 	}
 
 	protected void deactivate() {
+		Router.setCacheSize(0);
 		Router.setRoutingTableDir(null);
 		m_routers = null;
 	}
@@ -255,6 +287,29 @@ public final class RoutingTable implements IRoutingTable, IRouterManager {
 		System.out.println(route.filter());
 	}
 
+	private static void printCache(Router router) {
+		System.out.print('[');
+		System.out.print(router.from());
+		System.out.print("]: ");
+		final int decisions = router.cachedDecisions();
+		if (decisions < 0) {
+			System.out.println("not cached");
+			return;
+		}
+
+		final long hits = router.cacheHits();
+		final long misses = router.cacheMisses();
+		final long total = hits + misses;
+		System.out.print("hits=");
+		System.out.print(hits);
+		System.out.print(", misses=");
+		System.out.print(misses);
+		System.out.print(", hitRatio=");
+		System.out.print(total > 0 ? hits * 100 / total : 0);
+		System.out.print("%, decisions=");
+		System.out.println(decisions);
+	}
+
 	private static void printRoutes(IRoute[] routes) {
 		for (IRoute route : routes)
 			printRoute(route);
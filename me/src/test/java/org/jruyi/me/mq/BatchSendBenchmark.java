@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.me.mq;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruyi.me.IMessage;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Compares the throughput of sending bursts of messages to a few endpoints one
+ * by one against sending each burst in one batch, which takes one executor
+ * submission per destination endpoint instead of one per message.
+ * <p>
+ * Usage: {@code BatchSendBenchmark [messages] [threads]}
+ */
+public final class BatchSendBenchmark {
+
+	private static final int[] BURSTS = { 1, 10, 100 };
+	private static final int DESTINATIONS = 4;
+	private static final int MAX_IN_FLIGHT = 1024 * 16;
+	private static final AtomicLong s_tasks = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		final ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>()) {
+
+			@Override
+			public void execute(Runnable command) {
+				s_tasks.incrementAndGet();
+				super.execute(command);
+			}
+		};
+		final MessageQueue mq = new MessageQueue();
+		mq.setExecutor(executor);
+		final Sink[] sinks = new Sink[DESTINATIONS];
+		final Map<String, Endpoint> endpoints = endpoints(mq);
+		for (int i = 0; i < DESTINATIONS; ++i) {
+			sinks[i] = new Sink("sink" + i, mq);
+			endpoints.put(sinks[i].id(), sinks[i]);
+		}
+		final Sink source = new Sink("source", mq);
+
+		try {
+			for (int round = 0; round < 3; ++round) {
+				for (int burst : BURSTS) {
+					s_tasks.set(0L);
+					final long oneByOne = run(source, sinks, messages, burst, false);
+					final double oneByOneTasks = (double) s_tasks.getAndSet(0L) / messages;
+					final long batched = run(source, sinks, messages, burst, true);
+					final double batchedTasks = (double) s_tasks.get() / messages;
+					System.out.printf(
+							"round %d, burst of %3d: oneByOne=%dmsg/s(%.2f tasks/msg) batched=%dmsg/s(%.2f tasks/msg)%n",
+							round, burst, oneByOne, oneByOneTasks, batched, batchedTasks);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// Returns the number of messages consumed per second
+	private static long run(Sink source, Sink[] sinks, int messages, int burst, boolean batched)
+			throws InterruptedException {
+		final int bursts = messages / burst;
+		final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+		for (Sink sink : sinks)
+			sink.m_inFlight = inFlight;
+
+		final IMessage[] msgs = new IMessage[burst];
+		final long t = System.nanoTime();
+		for (int i = 0; i < bursts; ++i) {
+			inFlight.acquire(burst);
+			for (int j = 0; j < burst; ++j) {
+				final Message msg = Message.get();
+				msg.to(sinks[j % DESTINATIONS].id());
+				msgs[j] = msg;
+			}
+
+			if (batched)
+				source.send(msgs);
+			else {
+				for (IMessage msg : msgs)
+					source.send(msg);
+			}
+		}
+		inFlight.acquire(MAX_IN_FLIGHT);
+		return bursts * burst * 1000000000L / (System.nanoTime() - t);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Endpoint> endpoints(MessageQueue mq) throws Exception {
+		final Field field = MessageQueue.class.getDeclaredField("m_endpoints");
+		field.setAccessible(true);
+		return (Map<String, Endpoint>) field.get(mq);
+	}
+
+	static final class Sink extends Endpoint {
+
+		volatile Semaphore m_inFlight;
+
+		Sink(String id, MessageQueue mq) {
+			super(id, mq);
+		}
+
+		@Override
+		protected ServiceReference<?> reference() {
+			return null;
+		}
+
+		@Override
+		public void onMessage(IMessage message) {
+			// not closed to be cached by this thread as they are all created by
+			// the sending thread
+			m_inFlight.release();
+		}
+	}
+}
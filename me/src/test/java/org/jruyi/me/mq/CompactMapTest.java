@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.me.mq;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactMapTest {
+
+	@Test
+	public void test_tombstoneReuse() throws Exception {
+		final CompactMap<Integer, String> map = new CompactMap<Integer, String>(false, 8);
+		// 0, 8 and 16 probe from the same slot of a table of 8 slots
+		map.put(0, "0");
+		map.put(8, "8");
+		Assert.assertEquals("0", map.remove(0));
+		Assert.assertEquals("8", map.get(8));
+		Assert.assertFalse(map.containsKey(0));
+
+		map.put(16, "16");
+		Assert.assertEquals(2, map.size());
+		Assert.assertEquals("8", map.get(8));
+		Assert.assertEquals("16", map.get(16));
+
+		// churning through tombstones never grows the table
+		final int length = tableLength(map);
+		for (int i = 0; i < 1000; ++i) {
+			map.put(i + 100, "x");
+			Assert.assertEquals("x", map.remove(i + 100));
+		}
+		Assert.assertEquals(length, tableLength(map));
+		Assert.assertEquals(2, map.size());
+		Assert.assertEquals("8", map.get(8));
+		Assert.assertEquals("16", map.get(16));
+	}
+
+	@Test
+	public void test_rehash() throws Exception {
+		final CompactMap<Integer, Integer> map = new CompactMap<Integer, Integer>(false, 8);
+		for (int i = 0; i < 1000; ++i)
+			Assert.assertNull(map.put(i, -i));
+		Assert.assertEquals(1000, map.size());
+		Assert.assertTrue(tableLength(map) > 16);
+		for (int i = 0; i < 1000; ++i)
+			Assert.assertEquals(Integer.valueOf(-i), map.get(i));
+
+		// random operations against a HashMap, null key and values included
+		final HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>(map);
+		final Random random = new Random(0L);
+		for (int n = 0; n < 100000; ++n) {
+			final Integer key = random.nextInt(64) == 0 ? null : random.nextInt(2000);
+			final Integer value = random.nextInt(64) == 0 ? null : random.nextInt();
+			switch (random.nextInt(3)) {
+			case 0:
+				Assert.assertEquals(expected.put(key, value), map.put(key, value));
+				break;
+			case 1:
+				Assert.assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+				Assert.assertEquals(expected.get(key), map.get(key));
+			}
+			Assert.assertEquals(expected.size(), map.size());
+		}
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(map, expected);
+		Assert.assertEquals(expected.hashCode(), map.hashCode());
+	}
+
+	@Test
+	public void test_iteratorRemove() {
+		final CompactMap<String, Integer> map = new CompactMap<String, Integer>(false, 8);
+		for (int i = 0; i < 20; ++i)
+			map.put("k" + i, i);
+
+		final Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();
+		int n = 0;
+		while (it.hasNext()) {
+			final Map.Entry<String, Integer> entry = it.next();
+			++n;
+			if (entry.getValue() % 2 != 0)
+				continue;
+
+			final String key = entry.getKey();
+			final Integer value = entry.getValue();
+			it.remove();
+			// the removed entry still tells its mapping
+			Assert.assertEquals(key, entry.getKey());
+			Assert.assertEquals(value, entry.getValue());
+			Assert.assertFalse(map.containsKey(key));
+			try {
+				it.remove();
+				Assert.fail("IllegalStateException expected");
+			} catch (IllegalStateException e) {
+			}
+		}
+		Assert.assertEquals(20, n);
+		Assert.assertEquals(10, map.size());
+		for (int i = 0; i < 20; ++i)
+			Assert.assertEquals(i % 2 != 0, map.containsKey("k" + i));
+
+		// setValue writes through
+		for (Map.Entry<String, Integer> entry : map.entrySet())
+			entry.setValue(-entry.getValue());
+		Assert.assertEquals(Integer.valueOf(-1), map.get("k1"));
+
+		// removed through an iterator whose table has been rehashed
+		final Iterator<Map.Entry<String, Integer>> stale = map.entrySet().iterator();
+		stale.next();
+		for (int i = 0; i < 100; ++i)
+			map.put("x" + i, i);
+		try {
+			stale.remove();
+			Assert.fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+		}
+		Assert.assertEquals(110, map.size());
+	}
+
+	@Test
+	public void test_trim() throws Exception {
+		final CompactMap<Integer, Integer> map = new CompactMap<Integer, Integer>(false, 8);
+		map.put(1, 1);
+		final Object[] table = table(map);
+		map.trim();
+		Assert.assertTrue(map.isEmpty());
+		// the initial table is kept
+		Assert.assertSame(table, table(map));
+
+		for (int i = 0; i < 100; ++i)
+			map.put(i, i);
+		map.trim();
+		Assert.assertTrue(map.isEmpty());
+		// the grown table is dropped
+		Assert.assertNull(table(map));
+		Assert.assertFalse(map.entrySet().iterator().hasNext());
+		Assert.assertNull(map.get(1));
+
+		map.put(1, 2);
+		Assert.assertEquals(Integer.valueOf(2), map.get(1));
+		Assert.assertEquals(16, tableLength(map));
+	}
+
+	@Test
+	public void test_identity() {
+		final CompactMap<Object, String> map = new CompactMap<Object, String>(true, 8);
+		final String k1 = new String("key");
+		final String k2 = new String("key");
+		map.put(k1, "1");
+		map.put(k2, "2");
+		map.put(null, "null");
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals("1", map.get(k1));
+		Assert.assertEquals("2", map.get(k2));
+		Assert.assertEquals("null", map.get(null));
+		Assert.assertNull(map.get("key"));
+
+		Assert.assertEquals("1", map.remove(k1));
+		Assert.assertFalse(map.containsKey(k1));
+		Assert.assertEquals("2", map.get(k2));
+
+		for (Map.Entry<Object, String> entry : map.entrySet())
+			Assert.assertTrue(entry.getKey() == k2 || entry.getKey() == null);
+	}
+
+	private static Object[] table(CompactMap<?, ?> map) throws Exception {
+		final Field field = CompactMap.class.getDeclaredField("m_table");
+		field.setAccessible(true);
+		return (Object[]) field.get(map);
+	}
+
+	private static int tableLength(CompactMap<?, ?> map) throws Exception {
+		return table(map).length;
+	}
+}
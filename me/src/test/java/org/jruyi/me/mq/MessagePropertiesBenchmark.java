@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.me.mq;
+
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+
+import org.jruyi.common.Properties;
+
+/**
+ * Measures the bytes allocated and the time taken per pooled message putting
+ * properties, reading them back, depositing a stuff and being cleared for
+ * reuse, with the message properties and storage kept in
+ * {@code Properties}/{@code IdentityHashMap} as they used to be, against
+ * keeping them in {@code CompactMap} as {@code Message} does now.
+ * <p>
+ * Usage: {@code MessagePropertiesBenchmark [messages]}
+ */
+public final class MessagePropertiesBenchmark {
+
+	private static final int[] PROPERTIES = { 4, 8, 16, 32 };
+
+	public static void main(String[] args) {
+		final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		for (int round = 0; round < 3; ++round) {
+			for (int n : PROPERTIES) {
+				final String[] names = new String[n];
+				for (int i = 0; i < n; ++i)
+					names[i] = "property" + i;
+
+				long bytes = allocatedBytes();
+				long t = System.nanoTime();
+				hashMaps(names, messages);
+				final long hashMapTime = (System.nanoTime() - t) / messages;
+				final long hashMapBytes = (allocatedBytes() - bytes) / messages;
+
+				bytes = allocatedBytes();
+				t = System.nanoTime();
+				compactMaps(names, messages);
+				final long compactMapTime = (System.nanoTime() - t) / messages;
+				final long compactMapBytes = (allocatedBytes() - bytes) / messages;
+
+				System.out.printf("round %d, %2d properties: hashMap=%dns/msg %dB/msg, compactMap=%dns/msg %dB/msg%n",
+						round, n, hashMapTime, hashMapBytes, compactMapTime, compactMapBytes);
+			}
+		}
+	}
+
+	private static void hashMaps(String[] names, int messages) {
+		// a pooled message keeps its maps
+		final Properties properties = new Properties();
+		final IdentityHashMap<Object, Object> storage = new IdentityHashMap<Object, Object>();
+		int hits = 0;
+		for (int i = 0; i < messages; ++i) {
+			for (String name : names)
+				properties.put(name, name);
+			for (String name : names) {
+				if (properties.get(name) != null)
+					++hits;
+			}
+			storage.put(names, names);
+			properties.clear();
+			storage.clear();
+		}
+		if (hits < 0)
+			System.out.println(hits);
+	}
+
+	private static void compactMaps(String[] names, int messages) {
+		// trimmed as a message is closed
+		final CompactMap<String, Object> properties = new CompactMap<String, Object>(false, 32);
+		final CompactMap<Object, Object> storage = new CompactMap<Object, Object>(true, 8);
+		int hits = 0;
+		for (int i = 0; i < messages; ++i) {
+			for (String name : names)
+				properties.put(name, name);
+			for (String name : names) {
+				if (properties.get(name) != null)
+					++hits;
+			}
+			storage.put(names, names);
+			properties.trim();
+			storage.trim();
+		}
+		if (hits < 0)
+			System.out.println(hits);
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
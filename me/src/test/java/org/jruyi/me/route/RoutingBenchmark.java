@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.me.route;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jruyi.me.IRoute;
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * Compares routing messages by evaluating the filters of the routes one by
+ * one against the compiled routing index, without and with the routing
+ * decisions cached, over route sets of different sizes.
+ * Most of the routes require an equality on the message type. Every tenth one
+ * is a disjunction which has to be evaluated for every message.
+ * <p>
+ * Usage: {@code RoutingBenchmark [messages]}
+ */
+public final class RoutingBenchmark {
+
+	private static final int[] ROUTES = { 1, 10, 100, 300, 1000 };
+	private static final int CACHE_SIZE = 4096;
+
+	public static void main(String[] args) throws Exception {
+		final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		for (int round = 0; round < 3; ++round) {
+			for (int n : ROUTES) {
+				Router.setCacheSize(0);
+				final Router router = router(n);
+				Router.setCacheSize(CACHE_SIZE);
+				final Router cachedRouter = router(n);
+
+				final Msg[] msgs = new Msg[1024];
+				final Random random = new Random(n);
+				for (int i = 0; i < msgs.length; ++i)
+					msgs[i] = new Msg(random.nextInt(n + 1), random.nextInt(8));
+
+				final Route[] routes = (Route[]) router.getRoutes();
+				for (Msg msg : msgs) {
+					final IRoute route = linear(routes, msg);
+					final IRoute cached = cachedRouter.route(msg);
+					if (route != router.route(msg) || (route == null ? cached != null : route.to() != cached.to()))
+						throw new AssertionError("Routed differently: " + msg.getRoutingInfo());
+				}
+
+				final long linear = linear(routes, msgs, messages);
+				final long indexed = indexed(router, msgs, messages);
+				final long cached = indexed(cachedRouter, msgs, messages);
+				System.out.printf("round %d, %4d routes: linear=%dns/msg indexed=%dns/msg cached=%dns/msg%n", round,
+						n, linear, indexed, cached);
+			}
+		}
+	}
+
+	private static Router router(int n) throws InvalidSyntaxException {
+		final Router router = new Router("bench");
+		for (int i = 0; i < n; ++i) {
+			if (i % 10 == 9)
+				router.setRoute("to" + i, "(|(type=x" + i + ")(flag=" + i + "))");
+			else
+				router.setRoute("to" + i, "(&(type=t" + i + ")(size>=" + (i & 7) + "))");
+		}
+		// compiles the routes with the current cache size
+		router.getRoutes();
+		return router;
+	}
+
+	private static long linear(Route[] routes, Msg[] msgs, int messages) {
+		int hits = 0;
+		final long t = System.nanoTime();
+		for (int i = 0; i < messages; ++i) {
+			if (linear(routes, msgs[i & (msgs.length - 1)]) != null)
+				++hits;
+		}
+		final long elapsed = System.nanoTime() - t;
+		if (hits < 0)
+			System.out.println(hits);
+		return elapsed / messages;
+	}
+
+	private static long indexed(Router router, Msg[] msgs, int messages) {
+		int hits = 0;
+		final long t = System.nanoTime();
+		for (int i = 0; i < messages; ++i) {
+			if (router.route(msgs[i & (msgs.length - 1)]) != null)
+				++hits;
+		}
+		final long elapsed = System.nanoTime() - t;
+		if (hits < 0)
+			System.out.println(hits);
+		return elapsed / messages;
+	}
+
+	private static IRoute linear(Route[] routes, Msg msg) {
+		final Map<String, ?> routingInfo = msg.getRoutingInfo();
+		for (Route route : routes) {
+			if (route.matches(routingInfo))
+				return route;
+		}
+		return null;
+	}
+
+	static final class Msg implements IRoutable {
+
+		private final Map<String, Object> m_routingInfo = new HashMap<>();
+
+		Msg(int type, int size) {
+			m_routingInfo.put("type", (type % 10 == 9 ? "x" : "t") + type);
+			m_routingInfo.put("size", size);
+		}
+
+		@Override
+		public Map<String, ?> getRoutingInfo() {
+			return m_routingInfo;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.me.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the routing index against evaluating the filters of the routes one
+ * by one in order.
+ */
+public class RoutingIndexTest {
+
+	// Filters covering indexed and residual routes, negations, disjunctions,
+	// escaped values, wildcards, conflicting equalities and non-String values
+	private static final String[] FILTERS = { //
+	"(type=a)", //
+			"(&(type=a)(size>=3))", //
+			"(&(type=b)(region=eu))", //
+			"(&(region=eu)(type=b))", //
+			"(&(type=a\\)b)(region=us))", //
+			"(&(type=a\\*))", //
+			"(&(type=c*)(region=eu))", //
+			"(&(type=*)(region=us))", //
+			"(&(type=a)(type=b))", //
+			"(&(type=b)(!(region=eu)))", //
+			"(!(type=a))", //
+			"(|(type=a)(flag=1))", //
+			"(|(&(type=b)(region=us))(size=5))", //
+			"(&(|(type=a)(type=b))(region=eu))", //
+			"(&(size=5)(region=eu))", //
+			"(&(type=1)(region=us))", //
+			"(&(type=cx)(size<=2))", //
+			"(&(Type=a))", //
+			"(&(type~=A)(region=eu))", //
+			"(&(region=us)(&(type=b)(flag=1)))", //
+			"(flag=*)", //
+			"ALL", //
+	};
+
+	private static final Object[] TYPES = { null, "a", "b", "c", "cx", "a)b", "a*", "A", "1", 1, 1L };
+	private static final Object[] REGIONS = { null, "eu", "us", "x" };
+	private static final Object[] SIZES = { null, 0, 2, 3, 5, 5L, "5" };
+	private static final Object[] FLAGS = { null, "1", 1 };
+
+	@Test
+	public void test_equalities() {
+		Assert.assertEquals(map("type", "a"), RoutingIndex.equalities("(type=a)"));
+		Assert.assertEquals(map("type", "a", "region", "eu"),
+				RoutingIndex.equalities("(&(type=a)(size>=3)(region=eu))"));
+		Assert.assertEquals(map("type", "a)b"), RoutingIndex.equalities("(&(type=a\\)b))"));
+		Assert.assertEquals(map("type", "a*"), RoutingIndex.equalities("(&(type=a\\*))"));
+		// the first one of conflicting equalities is kept
+		Assert.assertEquals(map("type", "a"), RoutingIndex.equalities("(&(type=a)(type=b))"));
+		// nested conjunctions are required as well
+		Assert.assertEquals(map("region", "us", "type", "b", "flag", "1"),
+				RoutingIndex.equalities("(&(region=us)(&(type=b)(flag=1)))"));
+
+		Assert.assertEquals(map(), RoutingIndex.equalities("(type=c*)"));
+		Assert.assertEquals(map(), RoutingIndex.equalities("(type~=a)"));
+		Assert.assertEquals(map(), RoutingIndex.equalities("(!(type=a))"));
+		Assert.assertEquals(map(), RoutingIndex.equalities("(|(type=a)(type=b))"));
+		Assert.assertEquals(map("region", "eu"), RoutingIndex.equalities("(&(|(type=a)(type=b))(region=eu))"));
+		Assert.assertEquals(map(), RoutingIndex.equalities("ALL"));
+		Assert.assertEquals(map(), RoutingIndex.equalities("(type=a"));
+	}
+
+	@Test
+	public void test_fixedRoutes() throws Exception {
+		final Router router = new Router("test");
+		final Route[] routes = new Route[FILTERS.length];
+		for (int i = 0; i < routes.length; ++i)
+			routes[i] = new Route(router, "to" + i, FILTERS[i]);
+
+		// from the full set down to the smallest one still indexed
+		for (int n = routes.length; n >= 8; --n)
+			check(Arrays.copyOfRange(routes, routes.length - n, routes.length));
+	}
+
+	@Test
+	public void test_randomRoutes() throws Exception {
+		final Router router = new Router("test");
+		final Random random = new Random(0L);
+		for (int round = 0; round < 100; ++round) {
+			final int n = 1 + random.nextInt(40);
+			final ArrayList<Route> routes = new ArrayList<Route>(n);
+			for (int i = 0; i < n; ++i) {
+				// mostly equality routes, so that the index has keys to use
+				final String filter = random.nextInt(3) == 0 ? FILTERS[random.nextInt(FILTERS.length)] : "(&(type="
+						+ TYPES[1 + random.nextInt(5)] + ")(region=" + REGIONS[1 + random.nextInt(3)] + "))";
+				routes.add(new Route(router, "to" + i, filter.replace("a)b", "a\\)b")));
+			}
+			check(routes.toArray(new Route[n]));
+		}
+	}
+
+	private static void check(Route[] routes) {
+		final RoutingIndex index = new RoutingIndex(routes, 0);
+		for (Object type : TYPES) {
+			for (Object region : REGIONS) {
+				for (Object size : SIZES) {
+					for (Object flag : FLAGS) {
+						final Map<String, Object> routingInfo = new HashMap<String, Object>();
+						put(routingInfo, "type", type);
+						put(routingInfo, "region", region);
+						put(routingInfo, "size", size);
+						put(routingInfo, "flag", flag);
+						final Route expected = linear(routes, routingInfo);
+						final Route actual = index.route(routingInfo);
+						if (actual != expected)
+							Assert.fail(routingInfo + ": expected " + describe(expected) + " but was "
+									+ describe(actual) + " over " + describe(routes));
+					}
+				}
+			}
+		}
+	}
+
+	// Route#toString needs the common bundle, which this module has not
+	private static String describe(Route... routes) {
+		if (routes == null)
+			return "null";
+
+		final ArrayList<String> descriptions = new ArrayList<String>(routes.length);
+		for (Route route : routes)
+			descriptions.add(route == null ? "null" : route.to() + ":" + route.filter());
+		return descriptions.toString();
+	}
+
+	private static Route linear(Route[] routes, Map<String, ?> routingInfo) {
+		for (Route route : routes) {
+			if (route.matches(routingInfo))
+				return route;
+		}
+		return null;
+	}
+
+	private static void put(Map<String, Object> map, String key, Object value) {
+		if (value != null)
+			map.put(key, value);
+	}
+
+	private static Map<String, String> map(String... keyValues) {
+		final HashMap<String, String> map = new HashMap<String, String>();
+		for (int i = 0; i < keyValues.length; i += 2)
+			map.put(keyValues[i], keyValues[i + 1]);
+		return map;
+	}
+}
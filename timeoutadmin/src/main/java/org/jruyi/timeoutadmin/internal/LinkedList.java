@@ -13,8 +13,6 @@
  */
 package org.jruyi.timeoutadmin.internal;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 import org.jruyi.common.BiListNode;
 
 final class LinkedList<E> {
@@ -41,54 +39,36 @@ final class LinkedList<E> {
 		return newNode;
 	}
 
-	BiListNode<E> syncInsertAfter(BiListNode<E> node, E e, ReentrantLock lock) {
+	BiListNode<E> insertAfter(BiListNode<E> node, E e) {
 		final BiListNode<E> newNode = BiListNode.create();
 		newNode.set(e);
-		lock.lock();
-		try {
-			final BiListNode<E> next = node.next();
-
-			newNode.previous(node);
-			newNode.next(next);
-			next.previous(newNode);
-			node.next(newNode);
-		} finally {
-			lock.unlock();
-		}
+		final BiListNode<E> next = node.next();
+		newNode.previous(node);
+		newNode.next(next);
+		next.previous(newNode);
+		node.next(newNode);
 		return newNode;
 	}
 
-	void syncMoveAfter(BiListNode<E> posNode, BiListNode<E> node, ReentrantLock lock1, ReentrantLock lock2) {
-		lock1.lock();
-		lock2.lock();
-		try {
-			final BiListNode<E> previous = node.previous();
-			BiListNode<E> next = node.next();
+	void moveAfter(BiListNode<E> posNode, BiListNode<E> node) {
+		final BiListNode<E> previous = node.previous();
+		BiListNode<E> next = node.next();
 
-			previous.next(next);
-			next.previous(previous);
+		previous.next(next);
+		next.previous(previous);
 
-			next = posNode.next();
-			node.next(next);
-			posNode.next(node);
-			node.previous(posNode);
-			next.previous(node);
-		} finally {
-			lock2.unlock();
-			lock1.unlock();
-		}
+		next = posNode.next();
+		node.next(next);
+		posNode.next(node);
+		node.previous(posNode);
+		next.previous(node);
 	}
 
-	E syncRemove(BiListNode<E> node, ReentrantLock lock) {
-		lock.lock();
-		try {
-			final BiListNode<E> previous = node.previous();
-			final BiListNode<E> next = node.next();
-			previous.next(next);
-			next.previous(previous);
-		} finally {
-			lock.unlock();
-		}
+	E remove(BiListNode<E> node) {
+		final BiListNode<E> previous = node.previous();
+		final BiListNode<E> next = node.next();
+		previous.next(next);
+		next.previous(previous);
 		E e = node.get();
 		node.close();
 		return e;
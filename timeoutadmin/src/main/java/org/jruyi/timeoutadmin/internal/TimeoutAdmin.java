@@ -13,15 +13,18 @@
  */
 package org.jruyi.timeoutadmin.internal;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jruyi.common.BiListNode;
 import org.jruyi.common.IDumpable;
@@ -47,33 +50,32 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 	private static final String P_KEEPALIVE_TIME = "keepAliveTimeInSeconds";
 	private static final String P_QUEUE_CAPACITY = "queueCapacity";
 	private static final String P_TERM_WAITTIME = "terminationWaitTimeInSeconds";
+	private static final String P_TICK = "tickInMillis";
 
-	// 1 hour
-	private static final int SCALE = 60 * 60;
+	// The number of ticks a slot of the second wheel spans. The first wheel
+	// covers 2 of them.
+	private static final int UNIT_TW2 = 2048;
 	private static final int COVER_DAYS = 7;
-	private static final int UNIT_TW2;
-	private static final int SCALE_TW2;
+	// The maximum number of timeout events handed over to an executor at once
+	private static final int MAX_BATCH_SIZE = 256;
 
 	private LinkedList<TimeoutEvent> m_list;
 	private TimeWheel m_tw1;
 	private TimeWheel m_tw2;
+	// Timeout events scheduled or cancelled, striped by producer threads
+	private ConcurrentLinkedQueue<TimeoutEvent>[] m_queues;
+	private int m_queueMask;
+	private long m_tickInMillis;
+	private long m_tickInNanos;
+	private long m_halfTickInNanos;
+	private Ticker m_ticker;
+	private ScheduledFuture<?> m_tickFuture;
 
 	private IScheduler m_scheduler;
 	private ThreadPoolExecutor m_executor;
 	private int m_queueCapacity = 2048;
 	private int m_terminationWaitTime = 60;
 
-	static {
-		int n = 1;
-		for (int i = SCALE / 2 + 1; i != 0; i >>= 1)
-			n <<= 1;
-		UNIT_TW2 = n;
-		n = 1;
-		for (int i = (COVER_DAYS * 24 * 60 * 60 + UNIT_TW2 - 1) / UNIT_TW2 + 1; i != 0; i >>= 1)
-			n <<= 1;
-		SCALE_TW2 = n;
-	}
-
 	static final class DeliveryThreadFactory implements ThreadFactory {
 
 		static final DeliveryThreadFactory INST = new DeliveryThreadFactory();
@@ -87,14 +89,52 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 		}
 	}
 
-	final class TimeWheel implements Runnable {
+	// Timeout events delivered to the same executor in a tick
+	static final class DeliveryBatch implements Runnable {
+
+		private final Executor m_executor;
+		private final ArrayList<TimeoutEvent> m_events = new ArrayList<TimeoutEvent>();
+
+		DeliveryBatch(Executor executor) {
+			m_executor = executor;
+		}
+
+		Executor executor() {
+			return m_executor;
+		}
+
+		int add(TimeoutEvent event) {
+			final ArrayList<TimeoutEvent> events = m_events;
+			events.add(event);
+			return events.size();
+		}
+
+		int size() {
+			return m_events.size();
+		}
+
+		@Override
+		public void run() {
+			final ArrayList<TimeoutEvent> events = m_events;
+			final int n = events.size();
+			for (int i = 0; i < n; ++i) {
+				try {
+					events.get(i).run();
+				} catch (Throwable t) {
+					c_logger.error("Unexpected Error", t);
+				}
+			}
+		}
+	}
+
+	// Both wheels are only touched by the ticker.
+	final class TimeWheel {
 
 		private final BiListNode<TimeoutEvent>[] m_wheel;
-		private final ReentrantLock[] m_locks;
 		private final int m_capacityMask;
 
-		// The hand that points to the current timeout sublist, nodes of which
-		// are between m_wheel[m_hand] and m_wheel[m_hand + 1].
+		// The hand that points to the timeout sublist to expire next, nodes of
+		// which are between m_wheel[m_hand] and m_wheel[m_hand + 1].
 		private int m_hand;
 
 		public TimeWheel(int capacity) {
@@ -102,67 +142,213 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 			// sublist
 			@SuppressWarnings("unchecked")
 			final BiListNode<TimeoutEvent>[] wheel = (BiListNode<TimeoutEvent>[]) new BiListNode<?>[capacity + 1];
-			final ReentrantLock[] locks = new ReentrantLock[capacity];
 			final LinkedList<TimeoutEvent> list = m_list;
-			for (int i = 0; i < capacity; ++i) {
-				// create sentinel nodes
+			// create sentinel nodes
+			for (int i = 0; i <= capacity; ++i)
 				wheel[i] = list.addLast(null);
-				locks[i] = new ReentrantLock();
-			}
-			wheel[capacity] = list.addLast(null);
 
 			m_wheel = wheel;
-			m_locks = locks;
 			m_capacityMask = capacity - 1;
 		}
 
-		@Override
-		public void run() {
+		int capacity() {
+			return m_capacityMask + 1;
+		}
+
+		// Links the given event into the sublist at the given offset from the
+		// hand, or moves it there if it's linked already.
+		void place(TimeoutEvent event, int offset) {
+			final BiListNode<TimeoutEvent> posNode = m_wheel[getEffectiveIndex(m_hand + offset)];
+			final BiListNode<TimeoutEvent> node = event.node();
+			if (node == null)
+				event.node(m_list.insertAfter(posNode, event));
+			else
+				m_list.moveAfter(posNode, node);
+		}
+
+		// Expires the sublist at the hand and then advances the hand
+		void tick(Ticker ticker) {
 			final int hand = m_hand;
-			final int nextHand = hand + 1;
 			final BiListNode<TimeoutEvent>[] wheel = m_wheel;
-			final BiListNode<TimeoutEvent> begin = wheel[hand];
-			final BiListNode<TimeoutEvent> end = wheel[nextHand];
-			BiListNode<TimeoutEvent> node;
-			while ((node = begin.next()) != end) {
-				final TimeoutNotifier notifier;
-				final TimeoutEvent event = node.get();
-
-				// If this node has been cancelled, just skip.
-				// Otherwise, go ahead.
-				if (event != null && (notifier = event.getNotifier()) != null)
-					// Passing "hand" for checking the notifier is still in this
-					// same timeout sublist. Otherwise it may be cancelled or
-					// rescheduled, and needs to be skipped.
-					notifier.onTimeout(this, hand);
+			final BiListNode<TimeoutEvent> end = wheel[hand + 1];
+			BiListNode<TimeoutEvent> node = wheel[hand].next();
+			while (node != end) {
+				final BiListNode<TimeoutEvent> next = node.next();
+				ticker.expire(node.get());
+				node = next;
+			}
+
+			m_hand = getEffectiveIndex(hand + 1);
+		}
+
+		private int getEffectiveIndex(int index) {
+			return (index & m_capacityMask);
+		}
+	}
+
+	// Drains the scheduled and cancelled timeout events into the wheels, and
+	// then expires the current sublists. Being the only one touching the
+	// wheels, no lock is needed for them.
+	final class Ticker implements Runnable {
+
+		private final IdentityHashMap<Executor, DeliveryBatch> m_pendingBatches = new IdentityHashMap<Executor, DeliveryBatch>();
+		private final ArrayList<DeliveryBatch> m_fullBatches = new ArrayList<DeliveryBatch>();
+
+		// The number of ticks before the current sublist of the second wheel
+		// expires, 0 for the current tick.
+		private int m_tw2Countdown;
+
+		// Statistics, written on ticking only
+		private volatile long m_lastTickTime;
+		private volatile long m_maxTickTime;
+		private volatile long m_applied;
+		private volatile long m_expired;
+		private volatile long m_batches;
+		private volatile int m_maxBatchSize;
+
+		@Override
+		public void run() {
+			final long startTime = System.nanoTime();
+
+			drain();
+
+			if (m_tw2Countdown == 0) {
+				m_tw2.tick(this);
+				m_tw2Countdown = UNIT_TW2;
 			}
+			m_tw1.tick(this);
+			--m_tw2Countdown;
+
+			dispatch();
 
-			// tick
-			m_hand = getEffectiveIndex(nextHand);
+			final long tickTime = System.nanoTime() - startTime;
+			m_lastTickTime = tickTime;
+			if (tickTime > m_maxTickTime)
+				m_maxTickTime = tickTime;
 		}
 
-		void schedule(TimeoutNotifier notifier, TimeoutEvent event, int offset) {
-			final int n = getEffectiveIndex(m_hand + offset);
-			event.setTimeWheelAndIndex(this, n);
-			notifier.setNode(m_list.syncInsertAfter(m_wheel[n], event, getLock(n)));
+		void expire(TimeoutEvent event) {
+			if (event.isCancelled()) {
+				unlink(event);
+				return;
+			}
+
+			final TimeoutNotifier notifier = event.getNotifier();
+			final int result = notifier.onTick(event);
+			if (result == TimeoutNotifier.CASCADING) {
+				// at least one tick later, not to come back to this sublist
+				place(event, event.expireTime() - System.nanoTime(), 1L);
+				return;
+			}
+
+			unlink(event);
+			if (result == TimeoutNotifier.EXPIRED)
+				deliver(notifier, event);
 		}
 
-		void reschedule(TimeoutNotifier notifier, int offset, ReentrantLock srcLock) {
-			final BiListNode<TimeoutEvent> node = notifier.getNode();
-			final TimeoutEvent event = node.get();
-			final int n = getEffectiveIndex(m_hand + offset);
-			event.setTimeWheelAndIndex(this, n);
+		void dump(org.jruyi.common.StringBuilder builder) {
+			builder.append("{lastTickInNanos=").append(m_lastTickTime).append(", maxTickInNanos=")
+					.append(m_maxTickTime).append(", applied=").append(m_applied).append(", expired=")
+					.append(m_expired).append(", batches=").append(m_batches).append(", maxBatchSize=")
+					.append(m_maxBatchSize).append('}');
+		}
 
-			final ReentrantLock dstLock = getLock(n);
-			m_list.syncMoveAfter(m_wheel[n], node, srcLock, dstLock);
+		private void drain() {
+			long applied = 0L;
+			for (ConcurrentLinkedQueue<TimeoutEvent> queue : m_queues) {
+				TimeoutEvent event;
+				while ((event = queue.poll()) != null) {
+					apply(event);
+					++applied;
+				}
+			}
+			if (applied > 0L)
+				m_applied += applied;
 		}
 
-		ReentrantLock getLock(int index) {
-			return m_locks[index];
+		// A live event is linked, and the one it supersedes is unlinked. A
+		// cancelled event is unlinked.
+		private void apply(TimeoutEvent event) {
+			final TimeoutEvent superseded = event.takeSuperseded();
+			if (superseded != null)
+				unlink(superseded);
+
+			if (event.isCancelled())
+				unlink(event);
+			else if (event.node() == null)
+				place(event, event.expireTime() - System.nanoTime(), 0L);
 		}
 
-		private int getEffectiveIndex(int index) {
-			return (index & m_capacityMask);
+		// Offset 0 of the first wheel is the sublist expiring in this tick
+		private void place(TimeoutEvent event, long remainingNanos, long minTicks) {
+			long ticks = (remainingNanos + m_halfTickInNanos) / m_tickInNanos;
+			if (ticks < minTicks)
+				ticks = minTicks;
+
+			final TimeWheel tw1 = m_tw1;
+			if (ticks < tw1.capacity()) {
+				tw1.place(event, (int) ticks);
+				return;
+			}
+
+			final TimeWheel tw2 = m_tw2;
+			final long offset = (ticks - m_tw2Countdown) / UNIT_TW2;
+			final int maxOffset = tw2.capacity() - 1;
+			tw2.place(event, offset > maxOffset ? maxOffset : (int) offset);
+		}
+
+		private void unlink(TimeoutEvent event) {
+			final BiListNode<TimeoutEvent> node = event.node();
+			if (node != null) {
+				event.node(null);
+				m_list.remove(node);
+			}
+		}
+
+		// The batches are not dispatched until the wheels are done with, since
+		// the executor may block or run them in place.
+		private void deliver(TimeoutNotifier notifier, TimeoutEvent event) {
+			Executor executor = notifier.getExecutor();
+			if (executor == null)
+				executor = m_executor;
+
+			final IdentityHashMap<Executor, DeliveryBatch> batches = m_pendingBatches;
+			DeliveryBatch batch = batches.get(executor);
+			if (batch == null) {
+				batch = new DeliveryBatch(executor);
+				batches.put(executor, batch);
+			}
+
+			if (batch.add(event) >= MAX_BATCH_SIZE) {
+				batches.remove(executor);
+				m_fullBatches.add(batch);
+			}
+		}
+
+		// Hands the pending batches over to their executors
+		private void dispatch() {
+			final ArrayList<DeliveryBatch> fullBatches = m_fullBatches;
+			final int n = fullBatches.size();
+			for (int i = 0; i < n; ++i)
+				execute(fullBatches.get(i));
+			fullBatches.clear();
+
+			final IdentityHashMap<Executor, DeliveryBatch> batches = m_pendingBatches;
+			if (batches.isEmpty())
+				return;
+
+			for (DeliveryBatch batch : batches.values())
+				execute(batch);
+			batches.clear();
+		}
+
+		private void execute(DeliveryBatch batch) {
+			final int size = batch.size();
+			if (size > m_maxBatchSize)
+				m_maxBatchSize = size;
+			m_expired += size;
+			++m_batches;
+			batch.executor().execute(batch);
 		}
 	}
 
@@ -179,7 +365,9 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 				.append(", " + P_MAX_POOLSIZE + "=").append(executor.getMaximumPoolSize())
 				.append(", " + P_KEEPALIVE_TIME + "=").append(executor.getKeepAliveTime(TimeUnit.SECONDS))
 				.append(", " + P_QUEUE_CAPACITY + "=").append(m_queueCapacity).append(", " + P_TERM_WAITTIME + "=")
-				.append(m_terminationWaitTime).append('}');
+				.append(m_terminationWaitTime).append(", " + P_TICK + "=").append(m_tickInMillis).append(", ticker=");
+		m_ticker.dump(builder);
+		builder.append('}');
 	}
 
 	@Reference(name = "scheduler", policy = ReferencePolicy.DYNAMIC)
@@ -239,14 +427,19 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 		m_terminationWaitTime = terminationWaitTime;
 
 		m_list = new LinkedList<TimeoutEvent>();
+		m_queues = newQueues(Runtime.getRuntime().availableProcessors() * 2);
+		m_queueMask = m_queues.length - 1;
+
+		final long tick = getTick(properties);
+		m_tickInMillis = tick;
+		m_tickInNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+		m_halfTickInNanos = m_tickInNanos / 2;
 
-		final TimeWheel tw1 = new TimeWheel(UNIT_TW2 * 2);
-		final TimeWheel tw2 = new TimeWheel(SCALE_TW2);
-		final IScheduler scheduler = m_scheduler;
-		scheduler.scheduleAtFixedRate(tw1, 1, 1, TimeUnit.SECONDS);
-		scheduler.scheduleAtFixedRate(tw2, UNIT_TW2, UNIT_TW2, TimeUnit.SECONDS);
-		m_tw1 = tw1;
-		m_tw2 = tw2;
+		m_tw1 = new TimeWheel(UNIT_TW2 * 2);
+		m_tw2 = new TimeWheel(scaleTw2(tick));
+		final Ticker ticker = new Ticker();
+		m_tickFuture = m_scheduler.scheduleAtFixedRate(ticker, tick, tick, TimeUnit.MILLISECONDS);
+		m_ticker = ticker;
 
 		c_logger.info(StrUtil.join("TimeoutAdmin activated: ", this));
 	}
@@ -254,6 +447,9 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 	void deactivate() {
 		c_logger.info("Deactivating TimeoutAdmin...");
 
+		m_tickFuture.cancel(false);
+		m_tickFuture = null;
+
 		try {
 			m_executor.shutdown();
 			if (m_executor.awaitTermination(m_terminationWaitTime, TimeUnit.SECONDS))
@@ -268,61 +464,82 @@ public final class TimeoutAdmin implements ITimeoutAdmin, IDumpable {
 			m_executor = null;
 		}
 
+		m_ticker = null;
 		m_tw2 = null;
 		m_tw1 = null;
+		m_queues = null;
 		m_list = null;
 
 		c_logger.info("TimeoutAdmin deactivated");
 	}
 
-	void schedule(TimeoutNotifier notifier, int timeout) {
-		final TimeoutEvent event = TimeoutEvent.get(notifier, timeout);
-		if (timeout < UNIT_TW2 * 2)
-			m_tw1.schedule(notifier, event, timeout);
-		else {
-			int offset = (timeout - UNIT_TW2 - 1) / UNIT_TW2;
-			if (offset > SCALE_TW2 - 1)
-				offset = SCALE_TW2 - 1;
-			m_tw2.schedule(notifier, event, offset);
-		}
+	long halfTickInNanos() {
+		return m_halfTickInNanos;
 	}
 
-	void reschedule(TimeoutNotifier notifier, int timeout) {
-		final TimeoutEvent event = notifier.getNode().get();
-		final ReentrantLock srcLock = event.getTimeWheel().getLock(event.getIndex());
-		if (timeout < UNIT_TW2 * 2)
-			m_tw1.reschedule(notifier, timeout, srcLock);
-		else {
-			timeout = (timeout - UNIT_TW2 - 1) / UNIT_TW2;
-			if (timeout > SCALE_TW2 - 1)
-				timeout = SCALE_TW2 - 1;
-			m_tw2.reschedule(notifier, timeout, srcLock);
-		}
+	// Producers only queue timeout events up for the ticker to apply. It's
+	// called with the lock of the notifier held, as are reschedule and cancel.
+	void schedule(TimeoutNotifier notifier, long timeoutInMillis) {
+		final TimeoutEvent event = new TimeoutEvent(notifier, timeoutInMillis);
+		notifier.setEvent(event);
+		enqueue(event);
+	}
+
+	// A timeout not earlier than the scheduled one, such as an idle timeout
+	// renewed on every message, only postpones the scheduled event. Otherwise
+	// a new event supersedes it.
+	void reschedule(TimeoutNotifier notifier, long timeoutInMillis) {
+		final TimeoutEvent scheduled = notifier.getEvent();
+		if (scheduled.postpone(timeoutInMillis))
+			return;
+
+		final TimeoutEvent event = new TimeoutEvent(notifier, timeoutInMillis);
+		event.supersede(scheduled);
+		notifier.setEvent(event);
+		enqueue(event);
 	}
 
 	void cancel(TimeoutNotifier notifier) {
-		final BiListNode<TimeoutEvent> node = notifier.getNode();
-		notifier.clearNode();
-		final TimeoutEvent event = node.get();
-		final ReentrantLock lock = event.getTimeWheel().getLock(event.getIndex());
-		m_list.syncRemove(node, lock);
-
-		// release the timeout event
-		event.release();
+		final TimeoutEvent event = notifier.getEvent();
+		notifier.setEvent(null);
+		event.cancel();
+		enqueue(event);
+	}
+
+	private void enqueue(TimeoutEvent event) {
+		m_queues[(int) Thread.currentThread().getId() & m_queueMask].offer(event);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ConcurrentLinkedQueue<TimeoutEvent>[] newQueues(int minCount) {
+		int n = 1;
+		while (n < minCount)
+			n <<= 1;
+
+		final ConcurrentLinkedQueue<TimeoutEvent>[] queues = (ConcurrentLinkedQueue<TimeoutEvent>[]) new ConcurrentLinkedQueue<?>[n];
+		for (int i = 0; i < n; ++i)
+			queues[i] = new ConcurrentLinkedQueue<TimeoutEvent>();
+		return queues;
 	}
 
-	void fireTimeout(TimeoutNotifier notifier) {
-		final BiListNode<TimeoutEvent> node = notifier.getNode();
-		notifier.clearNode();
-		final TimeoutEvent event = node.get();
-		final ReentrantLock lock = event.getTimeWheel().getLock(event.getIndex());
-		m_list.syncRemove(node, lock);
-
-		final Executor executor = notifier.getExecutor();
-		if (executor != null)
-			executor.execute(event);
-		else
-			m_executor.execute(event);
+	// the number of slots for the second wheel to cover COVER_DAYS
+	private static int scaleTw2(long tickInMillis) {
+		final long ticks = TimeUnit.DAYS.toMillis(COVER_DAYS) / tickInMillis;
+		int n = 1;
+		for (long i = (ticks + UNIT_TW2 - 1) / UNIT_TW2 + 1; i != 0; i >>= 1)
+			n <<= 1;
+		return n;
+	}
+
+	private static long getTick(Map<String, ?> properties) throws Exception {
+		final Object v = properties.get(P_TICK);
+		if (v == null)
+			return 10L;
+
+		final int tick = (Integer) v;
+		if (tick < 1)
+			throw new Exception("Property[" + P_TICK + "] has to be positive");
+		return tick;
 	}
 
 	private static boolean getAllowCoreThreadTimeOut(Map<String, ?> properties) {
@@ -15,9 +15,8 @@ package org.jruyi.timeoutadmin.internal;
 
 import java.util.concurrent.TimeUnit;
 
-import org.jruyi.common.IThreadLocalCache;
+import org.jruyi.common.BiListNode;
 import org.jruyi.common.StrUtil;
-import org.jruyi.common.ThreadLocalCache;
 import org.jruyi.timeoutadmin.ITimeoutEvent;
 import org.jruyi.timeoutadmin.ITimeoutListener;
 import org.slf4j.Logger;
@@ -26,25 +25,20 @@ import org.slf4j.LoggerFactory;
 final class TimeoutEvent implements ITimeoutEvent, Runnable {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(TimeoutEvent.class);
-	private static final IThreadLocalCache<TimeoutEvent> c_cache = ThreadLocalCache.weakLinkedCache();
+	private final TimeoutNotifier m_notifier;
 	private int m_timeout;
-	private long m_expireTime;
-	private TimeoutAdmin.TimeWheel m_timeWheel;
-	private int m_index;
-	private TimeoutNotifier m_notifier;
-
-	private TimeoutEvent() {
-	}
-
-	static TimeoutEvent get(TimeoutNotifier notifier, int timeout) {
-		TimeoutEvent event = c_cache.take();
-		if (event == null)
-			event = new TimeoutEvent();
-
-		event.m_notifier = notifier;
-		event.m_timeout = timeout;
-		event.m_expireTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
-		return event;
+	// in nanoseconds, read by the ticker without the notifier lock
+	private volatile long m_expireTime;
+	private volatile boolean m_cancelled;
+	// the event to be unlinked when this one is applied
+	private TimeoutEvent m_superseded;
+	// touched by the ticker only
+	private BiListNode<TimeoutEvent> m_node;
+
+	TimeoutEvent(TimeoutNotifier notifier, long timeoutInMillis) {
+		m_notifier = notifier;
+		m_timeout = toSeconds(timeoutInMillis);
+		m_expireTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
 	}
 
 	@Override
@@ -60,10 +54,8 @@ final class TimeoutEvent implements ITimeoutEvent, Runnable {
 	@Override
 	public void run() {
 		final ITimeoutListener listener = m_notifier.getListener();
-		if (listener == null) {
-			release();
+		if (listener == null)
 			return;
-		}
 
 		try {
 			listener.onTimeout(this);
@@ -76,26 +68,57 @@ final class TimeoutEvent implements ITimeoutEvent, Runnable {
 		return m_notifier;
 	}
 
-	TimeoutAdmin.TimeWheel getTimeWheel() {
-		return m_timeWheel;
+	boolean isCancelled() {
+		return m_cancelled;
+	}
+
+	void cancel() {
+		m_cancelled = true;
 	}
 
-	void setTimeWheelAndIndex(TimeoutAdmin.TimeWheel timeWheel, int index) {
-		m_timeWheel = timeWheel;
-		m_index = index;
+	// Cancels the given event, which is to be replaced by this one
+	void supersede(TimeoutEvent event) {
+		event.cancel();
+		m_superseded = event;
 	}
 
-	int getIndex() {
-		return m_index;
+	TimeoutEvent takeSuperseded() {
+		final TimeoutEvent superseded = m_superseded;
+		m_superseded = null;
+		return superseded;
+	}
+
+	BiListNode<TimeoutEvent> node() {
+		return m_node;
+	}
+
+	void node(BiListNode<TimeoutEvent> node) {
+		m_node = node;
 	}
 
 	long expireTime() {
 		return m_expireTime;
 	}
 
-	void release() {
-		m_notifier = null;
-		m_timeWheel = null;
-		c_cache.put(this);
+	void expireTime(long expireTime) {
+		m_expireTime = expireTime;
+	}
+
+	// Moves the expire time of this scheduled event to the given timeout from
+	// now if that is not earlier. The ticker either places the event by the
+	// new time or cascades it on expiry, when it checks the time again with
+	// the notifier lock held. Returns false if the timeout would be earlier.
+	boolean postpone(long timeoutInMillis) {
+		final long expireTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+		if (expireTime - m_expireTime < 0L)
+			return false;
+
+		m_timeout = toSeconds(timeoutInMillis);
+		m_expireTime = expireTime;
+		return true;
+	}
+
+	private static int toSeconds(long timeoutInMillis) {
+		return (int) TimeUnit.MILLISECONDS.toSeconds(timeoutInMillis + 999L);
 	}
 }
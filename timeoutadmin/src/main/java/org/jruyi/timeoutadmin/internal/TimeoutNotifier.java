@@ -17,20 +17,27 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
-import org.jruyi.common.BiListNode;
 import org.jruyi.timeoutadmin.ITimeoutListener;
 import org.jruyi.timeoutadmin.ITimeoutNotifier;
 
 final class TimeoutNotifier implements ITimeoutNotifier {
 
-	private static final long HALF_SEC = 500L;
+	static final int CANCELLED = 0;
+	static final int EXPIRED = 1;
+	static final int CASCADING = 2;
+
 	private final Object m_subject;
 	private final TimeoutAdmin m_admin;
 	private final ReentrantLock m_lock;
-	private BiListNode<TimeoutEvent> m_node;
+	// the event scheduled
+	private TimeoutEvent m_event;
 	private ITimeoutListener m_listener;
 	private IState m_state = Unscheduled.INST;
 	private Executor m_executor;
+	// positive if scheduled lazily, only changed with m_lock held
+	private volatile long m_idleTimeoutInMillis;
+	// in nanoseconds
+	private volatile long m_lastTouched;
 
 	TimeoutNotifier(Object subject, TimeoutAdmin admin) {
 		m_subject = subject;
@@ -40,7 +47,7 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 
 	interface IState {
 
-		public boolean schedule(TimeoutNotifier notifier, int timeout);
+		public boolean schedule(TimeoutNotifier notifier, long timeoutInMillis);
 
 		public boolean cancel(TimeoutNotifier notifier);
 
@@ -59,8 +66,8 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		}
 
 		@Override
-		public boolean schedule(TimeoutNotifier notifier, int timeout) {
-			notifier.getTimeoutAdmin().reschedule(notifier, timeout);
+		public boolean schedule(TimeoutNotifier notifier, long timeoutInMillis) {
+			notifier.getTimeoutAdmin().reschedule(notifier, timeoutInMillis);
 			return true;
 		}
 
@@ -96,8 +103,8 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		}
 
 		@Override
-		public boolean schedule(TimeoutNotifier notifier, int timeout) {
-			notifier.getTimeoutAdmin().schedule(notifier, timeout);
+		public boolean schedule(TimeoutNotifier notifier, long timeoutInMillis) {
+			notifier.getTimeoutAdmin().schedule(notifier, timeoutInMillis);
 			notifier.changeState(Scheduled.INST);
 			return true;
 		}
@@ -131,7 +138,7 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		}
 
 		@Override
-		public boolean schedule(TimeoutNotifier notifier, int timeout) {
+		public boolean schedule(TimeoutNotifier notifier, long timeoutInMillis) {
 			return false;
 		}
 
@@ -170,7 +177,7 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		}
 
 		@Override
-		public boolean schedule(TimeoutNotifier notifier, int timeout) {
+		public boolean schedule(TimeoutNotifier notifier, long timeoutInMillis) {
 			return false;
 		}
 
@@ -201,6 +208,11 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 
 	@Override
 	public boolean schedule(int timeout) {
+		return schedule(timeout, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public boolean schedule(long timeout, TimeUnit unit) {
 		if (timeout < 1L)
 			throw new IllegalArgumentException();
 
@@ -209,12 +221,45 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 			return false;
 
 		try {
-			return m_state.schedule(this, timeout);
+			final boolean scheduled = m_state.schedule(this, unit.toMillis(timeout));
+			if (scheduled)
+				m_idleTimeoutInMillis = 0L;
+			return scheduled;
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	@Override
+	public boolean scheduleLazily(long timeout, TimeUnit unit) {
+		if (timeout < 1L)
+			throw new IllegalArgumentException();
+
+		final ReentrantLock lock = m_lock;
+		if (!lock.tryLock()) // fail-fast
+			return false;
+
+		try {
+			final long timeoutInMillis = unit.toMillis(timeout);
+			m_lastTouched = System.nanoTime();
+			final boolean scheduled = m_state.schedule(this, timeoutInMillis);
+			if (scheduled)
+				m_idleTimeoutInMillis = timeoutInMillis;
+			return scheduled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean touch() {
+		if (m_idleTimeoutInMillis < 1L)
+			return false;
+
+		m_lastTouched = System.nanoTime();
+		return true;
+	}
+
 	@Override
 	public boolean cancel() {
 		final ReentrantLock lock = m_lock;
@@ -222,6 +267,7 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 			return false;
 
 		try {
+			m_idleTimeoutInMillis = 0L;
 			return m_state.cancel(this);
 		} finally {
 			lock.unlock();
@@ -246,6 +292,7 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		final ReentrantLock lock = m_lock;
 		lock.lock();
 		try {
+			m_idleTimeoutInMillis = 0L;
 			m_state.close(this);
 		} finally {
 			lock.unlock();
@@ -262,29 +309,24 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		m_executor = executor;
 	}
 
-	void onTimeout(TimeoutAdmin.TimeWheel timeWheel, int hand) {
+	// Called by the ticker when the given event is due. Returns EXPIRED if
+	// this notifier times out, CASCADING if the event has to be moved to a
+	// later slot, or CANCELLED if the event is not the scheduled one any more.
+	// The lock is never held for long, so just wait for it.
+	int onTick(TimeoutEvent event) {
 		final ReentrantLock lock = m_lock;
-		// If the lock cannot be acquired, which means this notifier is being
-		// cancelled, rescheduled or closed, just skip.
-		if (!lock.tryLock())
-			return;
-
+		lock.lock();
 		try {
-			// If this notifier is not in the same timeout sublist,
-			// which means it has been cancelled or rescheduled,
-			// then skip.
-			final TimeoutEvent event = m_node.get();
-			if (event == null || timeWheel != event.getTimeWheel() || hand != event.getIndex())
-				return;
-
-			long difference = event.expireTime() - System.currentTimeMillis();
-			if (difference < HALF_SEC) {
-				changeState(TimedOut.INST);
-				m_admin.fireTimeout(this);
-			} else {
-				int timeout = (int) TimeUnit.MILLISECONDS.toSeconds(difference + HALF_SEC);
-				m_admin.reschedule(this, timeout);
-			}
+			if (event != m_event)
+				return CANCELLED;
+
+			if (remainingTime(event) >= m_admin.halfTickInNanos())
+				return CASCADING;
+
+			m_idleTimeoutInMillis = 0L;
+			m_event = null;
+			changeState(TimedOut.INST);
+			return EXPIRED;
 		} finally {
 			lock.unlock();
 		}
@@ -298,25 +340,34 @@ final class TimeoutNotifier implements ITimeoutNotifier {
 		return m_executor;
 	}
 
-	// Set when scheduled
-	void setNode(BiListNode<TimeoutEvent> node) {
-		m_node = node;
-	}
-
-	// Cleared when cancelled or timeout
-	void clearNode() {
-		m_node = null;
+	// Set when scheduled, cleared when cancelled or timed out
+	void setEvent(TimeoutEvent event) {
+		m_event = event;
 	}
 
 	TimeoutAdmin getTimeoutAdmin() {
 		return m_admin;
 	}
 
-	BiListNode<TimeoutEvent> getNode() {
-		return m_node;
+	TimeoutEvent getEvent() {
+		return m_event;
 	}
 
 	void changeState(IState state) {
 		m_state = state;
 	}
+
+	// Postpones the expire time of a lazy schedule to the latest touch.
+	// Returns the remaining time in nanoseconds.
+	private long remainingTime(TimeoutEvent event) {
+		final long now = System.nanoTime();
+		final long difference = event.expireTime() - now;
+		final long idleTimeout = m_idleTimeoutInMillis;
+		if (idleTimeout < 1L || difference >= m_admin.halfTickInNanos())
+			return difference;
+
+		final long expireTime = m_lastTouched + TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+		event.expireTime(expireTime);
+		return expireTime - now;
+	}
 }
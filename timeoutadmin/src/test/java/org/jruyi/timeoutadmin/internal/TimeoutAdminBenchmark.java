@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.timeoutadmin.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.jruyi.common.StringBuilder;
+import org.jruyi.common.internal.Scheduler;
+import org.jruyi.timeoutadmin.ITimeoutEvent;
+import org.jruyi.timeoutadmin.ITimeoutListener;
+import org.jruyi.timeoutadmin.ITimeoutNotifier;
+
+/**
+ * Measures scheduling, rescheduling and cancelling with the given number of
+ * outstanding timers, and how late timers scheduled in milliseconds fire.
+ * <p>
+ * Usage: {@code TimeoutAdminBenchmark [timers] [tickInMillis]}
+ */
+public final class TimeoutAdminBenchmark {
+
+	// the range of the timeouts scheduled, in milliseconds
+	private static final int MIN_TIMEOUT = 50;
+	private static final int MAX_TIMEOUT = 200;
+
+	public static void main(String[] args) throws Throwable {
+		final int timers = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int tick = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		final Scheduler scheduler = new Scheduler();
+		scheduler.activate(new HashMap<String, Object>());
+		final TimeoutAdmin ta = new TimeoutAdmin();
+		ta.setScheduler(scheduler);
+		final Map<String, Object> props = new HashMap<>();
+		props.put("tickInMillis", tick);
+		ta.activate(props);
+		try {
+			final Random random = new Random(0L);
+			final int[] timeouts = new int[timers];
+			for (int i = 0; i < timers; ++i)
+				timeouts[i] = MIN_TIMEOUT + random.nextInt(MAX_TIMEOUT - MIN_TIMEOUT + 1);
+
+			final Executor direct = Runnable::run;
+			final ITimeoutNotifier[] notifiers = new ITimeoutNotifier[timers];
+			for (int i = 0; i < timers; ++i) {
+				notifiers[i] = ta.createNotifier(i);
+				notifiers[i].setExecutor(direct);
+			}
+
+			for (int round = 0; round < 3; ++round) {
+				// keep all the timers outstanding while measuring
+				long t = System.nanoTime();
+				for (int i = 0; i < timers; ++i)
+					notifiers[i].schedule(60, TimeUnit.SECONDS);
+				final long scheduleNanos = System.nanoTime() - t;
+
+				t = System.nanoTime();
+				for (int i = 0; i < timers; ++i)
+					notifiers[i].schedule(timeouts[i] + 60000L, TimeUnit.MILLISECONDS);
+				final long rescheduleNanos = System.nanoTime() - t;
+
+				t = System.nanoTime();
+				for (int i = 0; i < timers; ++i)
+					notifiers[i].cancel();
+				final long cancelNanos = System.nanoTime() - t;
+
+				final long[] lateness = fire(notifiers, timeouts);
+
+				System.out.printf(
+						"round %d: schedule=%dns/op reschedule=%dns/op cancel=%dns/op, lateness p50=%dms p99=%dms max=%dms%n",
+						round, scheduleNanos / timers, rescheduleNanos / timers, cancelNanos / timers,
+						lateness[lateness.length / 2], lateness[(int) (lateness.length * 0.99)],
+						lateness[lateness.length - 1]);
+			}
+
+			for (ITimeoutNotifier notifier : notifiers)
+				notifier.close();
+
+			// tick time and delivery batches
+			try (StringBuilder builder = StringBuilder.get()) {
+				ta.dump(builder);
+				System.out.println(builder);
+			}
+		} finally {
+			ta.deactivate();
+			scheduler.deactivate();
+		}
+	}
+
+	// Returns the sorted lateness of firing in milliseconds
+	private static long[] fire(ITimeoutNotifier[] notifiers, int[] timeouts) throws InterruptedException {
+		final int timers = notifiers.length;
+		final long[] lateness = new long[timers];
+		final CountDownLatch latch = new CountDownLatch(timers);
+		final long[] deadlines = new long[timers];
+		final ITimeoutListener listener = new ITimeoutListener() {
+
+			@Override
+			public void onTimeout(ITimeoutEvent event) {
+				final int i = (Integer) event.getSubject();
+				lateness[i] = System.currentTimeMillis() - deadlines[i];
+				latch.countDown();
+			}
+		};
+
+		for (int i = 0; i < timers; ++i) {
+			final ITimeoutNotifier notifier = notifiers[i];
+			notifier.setListener(listener);
+			deadlines[i] = System.currentTimeMillis() + timeouts[i];
+			notifier.schedule(timeouts[i], TimeUnit.MILLISECONDS);
+		}
+		latch.await();
+
+		for (ITimeoutNotifier notifier : notifiers) {
+			// fail-fast, the notifier may still be locked by the firing thread
+			while (!notifier.reset())
+				Thread.yield();
+			notifier.setListener(null);
+		}
+
+		Arrays.sort(lateness);
+		return lateness;
+	}
+}
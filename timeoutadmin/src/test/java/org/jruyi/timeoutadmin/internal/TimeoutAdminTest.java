@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.timeoutadmin.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jruyi.common.internal.Scheduler;
+import org.jruyi.timeoutadmin.ITimeoutEvent;
+import org.jruyi.timeoutadmin.ITimeoutListener;
+import org.jruyi.timeoutadmin.ITimeoutNotifier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeoutAdminTest {
+
+	private static final int TICK_IN_MILLIS = 5;
+	// an event may expire up to half a tick early
+	private static final long HALF_TICK_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_IN_MILLIS) / 2;
+
+	private Scheduler m_scheduler;
+	private TimeoutAdmin m_ta;
+
+	@Before
+	public void setUp() throws Throwable {
+		final Scheduler scheduler = new Scheduler();
+		scheduler.activate(new HashMap<String, Object>());
+		final TimeoutAdmin ta = new TimeoutAdmin();
+		ta.setScheduler(scheduler);
+		final Map<String, Object> props = new HashMap<String, Object>();
+		props.put("tickInMillis", TICK_IN_MILLIS);
+		ta.activate(props);
+		m_scheduler = scheduler;
+		m_ta = ta;
+	}
+
+	@After
+	public void tearDown() {
+		m_ta.deactivate();
+		m_scheduler.deactivate();
+	}
+
+	@Test
+	public void test_expire() throws Exception {
+		final Listener listener = new Listener(1);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		final long t0 = System.nanoTime();
+		Assert.assertTrue(notifier.schedule(50L, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(ITimeoutNotifier.SCHEDULED, notifier.state());
+
+		Assert.assertTrue(listener.await(5L));
+		Assert.assertTrue(listener.firstTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50L) - HALF_TICK_IN_NANOS);
+		Assert.assertEquals("subject", listener.event().getSubject());
+		Assert.assertEquals(ITimeoutNotifier.TIMEDOUT, notifier.state());
+
+		// expires only once
+		Thread.sleep(50L);
+		Assert.assertEquals(1, listener.count());
+		notifier.close();
+	}
+
+	@Test
+	public void test_cancel() throws Exception {
+		final Listener listener = new Listener(1);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		Assert.assertTrue(notifier.schedule(50L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(notifier.cancel());
+		Assert.assertEquals(ITimeoutNotifier.UNSCHEDULED, notifier.state());
+
+		Assert.assertFalse(listener.await(0L, 150L));
+		Assert.assertEquals(0, listener.count());
+
+		// schedulable again after cancelled
+		Assert.assertTrue(notifier.schedule(10L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(listener.await(5L));
+		notifier.close();
+	}
+
+	@Test
+	public void test_rescheduleEarlier() throws Exception {
+		final Listener listener = new Listener(1);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		final long t0 = System.nanoTime();
+		Assert.assertTrue(notifier.schedule(60L, TimeUnit.SECONDS));
+		// supersedes the scheduled event
+		Assert.assertTrue(notifier.schedule(50L, TimeUnit.MILLISECONDS));
+
+		Assert.assertTrue(listener.await(5L));
+		Assert.assertTrue(listener.firstTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50L) - HALF_TICK_IN_NANOS);
+		// the timeout in seconds, rounded up, is of the new event
+		Assert.assertEquals(1, listener.event().getTimeout());
+
+		// the superseded event never expires
+		Thread.sleep(50L);
+		Assert.assertEquals(1, listener.count());
+		notifier.close();
+	}
+
+	@Test
+	public void test_rescheduleLater() throws Exception {
+		final Listener listener = new Listener(1);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		Assert.assertTrue(notifier.schedule(50L, TimeUnit.MILLISECONDS));
+		// postpones the scheduled event, over and over
+		long t0 = 0L;
+		for (int i = 0; i < 10; ++i) {
+			t0 = System.nanoTime();
+			Assert.assertTrue(notifier.schedule(200L, TimeUnit.MILLISECONDS));
+			Thread.sleep(10L);
+		}
+
+		Assert.assertTrue(listener.await(5L));
+		Assert.assertTrue(listener.firstTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(200L) - HALF_TICK_IN_NANOS);
+
+		Thread.sleep(50L);
+		Assert.assertEquals(1, listener.count());
+		notifier.close();
+	}
+
+	@Test
+	public void test_rescheduleAfterTimeout() throws Exception {
+		final Listener listener = new Listener(2);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		Assert.assertTrue(notifier.schedule(10L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(listener.await(0L, 5000L));
+		Assert.assertFalse(notifier.schedule(10L, TimeUnit.MILLISECONDS));
+
+		// fail-fast, the notifier may still be locked by the ticker
+		while (!notifier.reset())
+			Thread.yield();
+		Assert.assertEquals(ITimeoutNotifier.UNSCHEDULED, notifier.state());
+		Assert.assertTrue(notifier.schedule(10L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(listener.await(5L));
+		Assert.assertEquals(2, listener.count());
+		notifier.close();
+	}
+
+	@Test
+	public void test_executor() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "test-delivery");
+			}
+		});
+		try {
+			final int n = 1000;
+			final Listener listener = new Listener(n);
+			final ITimeoutNotifier[] notifiers = new ITimeoutNotifier[n];
+			for (int i = 0; i < n; ++i) {
+				final ITimeoutNotifier notifier = m_ta.createNotifier(i);
+				notifier.setListener(listener);
+				notifier.setExecutor(executor);
+				notifiers[i] = notifier;
+			}
+
+			// many of them expire in the same tick and are delivered in batches
+			for (ITimeoutNotifier notifier : notifiers)
+				Assert.assertTrue(notifier.schedule(20L, TimeUnit.MILLISECONDS));
+
+			Assert.assertTrue(listener.await(5L));
+			Assert.assertEquals(n, listener.count());
+			Assert.assertEquals(0, listener.strangers());
+			Assert.assertEquals("test-delivery", listener.thread().getName());
+
+			for (ITimeoutNotifier notifier : notifiers)
+				notifier.close();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void test_defaultExecutor() throws Exception {
+		final Listener listener = new Listener(1);
+		final ITimeoutNotifier notifier = m_ta.createNotifier("subject");
+		notifier.setListener(listener);
+
+		Assert.assertTrue(notifier.schedule(10L, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(listener.await(5L));
+		Assert.assertEquals("jruyi-to-delivery", listener.thread().getName());
+		notifier.close();
+	}
+
+	static final class Listener implements ITimeoutListener {
+
+		private final CountDownLatch m_latch;
+		private final AtomicInteger m_count = new AtomicInteger();
+		// the number of events delivered on another thread than the first one
+		private final AtomicInteger m_strangers = new AtomicInteger();
+		private final AtomicReference<Thread> m_thread = new AtomicReference<Thread>();
+		private volatile ITimeoutEvent m_event;
+		private volatile long m_firstTime;
+
+		Listener(int count) {
+			m_latch = new CountDownLatch(count);
+		}
+
+		@Override
+		public void onTimeout(ITimeoutEvent event) {
+			final long now = System.nanoTime();
+			if (m_count.getAndIncrement() == 0) {
+				m_firstTime = now;
+				m_event = event;
+			}
+			if (!m_thread.compareAndSet(null, Thread.currentThread()) && m_thread.get() != Thread.currentThread())
+				m_strangers.incrementAndGet();
+			m_latch.countDown();
+		}
+
+		boolean await(long timeoutInSeconds) throws InterruptedException {
+			return m_latch.await(timeoutInSeconds, TimeUnit.SECONDS);
+		}
+
+		// Waits until the count has reached the given one, or times out
+		boolean await(long count, long timeoutInMillis) throws InterruptedException {
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+			while (m_count.get() <= count) {
+				if (System.nanoTime() - deadline >= 0L)
+					return false;
+				Thread.sleep(1L);
+			}
+			return true;
+		}
+
+		int count() {
+			return m_count.get();
+		}
+
+		int strangers() {
+			return m_strangers.get();
+		}
+
+		Thread thread() {
+			return m_thread.get();
+		}
+
+		ITimeoutEvent event() {
+			return m_event;
+		}
+
+		long firstTime() {
+			return m_firstTime;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.timeoutadmin.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jruyi.common.BiListNode;
+import org.jruyi.common.internal.Scheduler;
+import org.jruyi.timeoutadmin.ITimeoutNotifier;
+
+/**
+ * Compares producers scheduling and cancelling timers into the same wheel
+ * slot, which is what happens when all the IO threads schedule the same
+ * timeout at the same moment.
+ * <ul>
+ * <li>locked: each producer links/unlinks its node under the lock of the
+ * slot, which is how the wheel used to be updated</li>
+ * <li>queued: each producer offers to a striped queue, drained by a single
+ * thread linking/unlinking the nodes every tick</li>
+ * <li>admin: {@code ITimeoutNotifier#schedule}/{@code cancel} against the
+ * timeout admin</li>
+ * </ul>
+ * <p>
+ * Usage: {@code TimerInsertionBenchmark [opsPerThread]}
+ */
+public final class TimerInsertionBenchmark {
+
+	private static final int[] THREADS = { 8, 16, 32 };
+	private static final int STRIPES = 64;
+	private static final long TICK_IN_MILLIS = 10L;
+
+	public static void main(String[] args) throws Throwable {
+		final int ops = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		final Scheduler scheduler = new Scheduler();
+		scheduler.activate(new HashMap<String, Object>());
+		final TimeoutAdmin ta = new TimeoutAdmin();
+		ta.setScheduler(scheduler);
+		final Map<String, Object> props = new HashMap<>();
+		props.put("tickInMillis", (int) TICK_IN_MILLIS);
+		ta.activate(props);
+		try {
+			for (int round = 0; round < 3; ++round) {
+				for (int threads : THREADS) {
+					final long locked = locked(threads, ops);
+					final long queued = queued(threads, ops);
+					final long admin = admin(ta, threads, ops);
+					System.out.printf("round %d, %d threads: locked=%dns/op queued=%dns/op admin=%dns/op%n", round,
+							threads, locked, queued, admin);
+				}
+			}
+		} finally {
+			ta.deactivate();
+			scheduler.deactivate();
+		}
+	}
+
+	private static long locked(int threads, final int ops) throws InterruptedException {
+		final LinkedList<Object> list = new LinkedList<>();
+		final BiListNode<Object> slot = list.addLast(null);
+		list.addLast(null);
+		final ReentrantLock lock = new ReentrantLock();
+		return run(threads, ops, new Producer() {
+
+			@Override
+			public void produce(int id) {
+				final Object e = new Object();
+				for (int i = 0; i < ops; ++i) {
+					final BiListNode<Object> node;
+					lock.lock();
+					try {
+						node = list.insertAfter(slot, e);
+					} finally {
+						lock.unlock();
+					}
+					lock.lock();
+					try {
+						list.remove(node);
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		});
+	}
+
+	private static long queued(int threads, final int ops) throws InterruptedException {
+		final LinkedList<Cmd> list = new LinkedList<>();
+		final BiListNode<Cmd> slot = list.addLast(null);
+		list.addLast(null);
+		@SuppressWarnings("unchecked")
+		final ConcurrentLinkedQueue<Cmd>[] queues = (ConcurrentLinkedQueue<Cmd>[]) new ConcurrentLinkedQueue<?>[STRIPES];
+		for (int i = 0; i < STRIPES; ++i)
+			queues[i] = new ConcurrentLinkedQueue<>();
+
+		final Thread drainer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(TICK_IN_MILLIS);
+						drain(queues, list, slot);
+					}
+				} catch (InterruptedException e) {
+				}
+				drain(queues, list, slot);
+			}
+		};
+		drainer.start();
+		try {
+			return run(threads, ops, new Producer() {
+
+				@Override
+				public void produce(int id) {
+					final ConcurrentLinkedQueue<Cmd> queue = queues[id & (STRIPES - 1)];
+					for (int i = 0; i < ops; ++i) {
+						final Cmd cmd = new Cmd();
+						queue.offer(cmd);
+						cmd.m_cancelled = true;
+						queue.offer(cmd);
+					}
+				}
+			});
+		} finally {
+			drainer.interrupt();
+			drainer.join();
+		}
+	}
+
+	private static long admin(TimeoutAdmin ta, int threads, final int ops) throws InterruptedException {
+		final ITimeoutNotifier[] notifiers = new ITimeoutNotifier[threads];
+		for (int i = 0; i < threads; ++i)
+			notifiers[i] = ta.createNotifier(i);
+
+		try {
+			return run(threads, ops, new Producer() {
+
+				@Override
+				public void produce(int id) {
+					final ITimeoutNotifier notifier = notifiers[id];
+					for (int i = 0; i < ops; ++i) {
+						notifier.schedule(60, TimeUnit.SECONDS);
+						notifier.cancel();
+					}
+				}
+			});
+		} finally {
+			for (ITimeoutNotifier notifier : notifiers)
+				notifier.close();
+		}
+	}
+
+	private static void drain(ConcurrentLinkedQueue<Cmd>[] queues, LinkedList<Cmd> list, BiListNode<Cmd> slot) {
+		for (ConcurrentLinkedQueue<Cmd> queue : queues) {
+			Cmd cmd;
+			while ((cmd = queue.poll()) != null) {
+				if (cmd.m_node != null) {
+					list.remove(cmd.m_node);
+					cmd.m_node = null;
+				} else if (!cmd.m_cancelled)
+					cmd.m_node = list.insertAfter(slot, cmd);
+			}
+		}
+	}
+
+	// Returns the average time per schedule/cancel pair in nanoseconds
+	private static long run(int threads, final int ops, final Producer producer) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] producers = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			final int id = i;
+			producers[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					producer.produce(id);
+				}
+			};
+			producers[i].start();
+		}
+
+		final long t = System.nanoTime();
+		start.countDown();
+		for (Thread thread : producers)
+			thread.join();
+		return (System.nanoTime() - t) / ((long) threads * ops);
+	}
+
+	interface Producer {
+
+		void produce(int id);
+	}
+
+	static final class Cmd {
+
+		volatile boolean m_cancelled;
+		BiListNode<Cmd> m_node;
+	}
+}
@@ -15,6 +15,7 @@
 package org.jruyi.tpe.cmd;
 
 import org.jruyi.tpe.IExecutorProfiler;
+import org.jruyi.tpe.internal.ExecutorService;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 
@@ -27,7 +28,7 @@ public final class ExecutorCommand {
 	}
 
 	public static String[] commands() {
-		return new String[] { "info", "profiling" };
+		return new String[] { "info", "profiling", "sizing" };
 	}
 
 	public void profiling(String action) throws Exception {
@@ -101,6 +102,18 @@ public final class ExecutorCommand {
 		System.out.print("        AverageTimeWaitingInPool: ");
 		System.out.println(profiler.getAverageTimeWaitingInPool());
 
+		System.out.print("      ResponseTime(p50/p99/p999): ");
+		System.out.println(profiler.getResponseTimePercentile(50) + " / " + profiler.getResponseTimePercentile(99)
+				+ " / " + profiler.getResponseTimePercentile(99.9));
+
+		System.out.print("       ServiceTime(p50/p99/p999): ");
+		System.out.println(profiler.getServiceTimePercentile(50) + " / " + profiler.getServiceTimePercentile(99)
+				+ " / " + profiler.getServiceTimePercentile(99.9));
+
+		System.out.print(" TimeWaitingInPool(p50/p99/p999): ");
+		System.out.println(profiler.getTimeWaitingInPoolPercentile(50) + " / "
+				+ profiler.getTimeWaitingInPoolPercentile(99) + " / " + profiler.getTimeWaitingInPoolPercentile(99.9));
+
 		System.out.print("RatioOfActiveRequestsToCoreCount: ");
 		System.out.println(profiler.getRatioOfActiveRequestsToCoreCount());
 
@@ -111,6 +124,30 @@ public final class ExecutorCommand {
 		System.out.println(profiler.getRequestPerSecondRetirementRate());
 	}
 
+	public void sizing() throws Exception {
+		final IExecutorProfiler profiler = getExecutorProfiler();
+		if (profiler == null) {
+			System.err.println("Thread pool executor is not up");
+			return;
+		}
+
+		final String[] decisions = profiler instanceof ExecutorService ? ((ExecutorService) profiler)
+				.getSizingDecisions() : null;
+		if (decisions == null) {
+			System.err.println("Adaptive pool sizing is off");
+			return;
+		}
+
+		if (!profiler.isProfiling())
+			System.out.println("Adaptive pool sizing is paused until profiling is started");
+		System.out.print("CorePoolSize: ");
+		System.out.println(profiler.getCorePoolSize());
+		System.out.print(" MaxPoolSize: ");
+		System.out.println(profiler.getMaxPoolSize());
+		for (String decision : decisions)
+			System.out.println(decision);
+	}
+
 	private IExecutorProfiler getExecutorProfiler() throws Exception {
 		final BundleContext context = m_context;
 		final ServiceReference<IExecutorProfiler> reference = context.getServiceReference(IExecutorProfiler.class);
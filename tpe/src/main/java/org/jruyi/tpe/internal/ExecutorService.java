@@ -18,23 +18,28 @@ import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.jruyi.common.IDumpable;
+import org.jruyi.common.IScheduler;
 import org.jruyi.common.StrUtil;
 import org.jruyi.common.StringBuilder;
 import org.jruyi.tpe.IExecutorProfiler;
+import org.jruyi.tpe.IKeyedExecutor;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component(name = "jruyi.tpe", //
-service = { Executor.class, IExecutorProfiler.class }, //
+service = { Executor.class, IKeyedExecutor.class, IExecutorProfiler.class }, //
 xmlns = "http://www.osgi.org/xmlns/scr/v1.2.0")
-public final class ExecutorService implements Executor, IExecutorProfiler, IDumpable {
+public final class ExecutorService implements Executor, IKeyedExecutor, IExecutorProfiler, IDumpable {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(ExecutorService.class);
 
@@ -43,29 +48,75 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 	private static final String P_KEEPALIVE_TIME = "keepAliveTimeInSeconds";
 	private static final String P_QUEUE_CAPACITY = "queueCapacity";
 	private static final String P_TERM_WAITTIME = "terminationWaitTimeInSeconds";
-
-	private RuyiThreadPoolExecutor m_executor;
+	private static final String P_MODE = "mode";
+	private static final String P_MAX_CONCURRENCY = "maxConcurrency";
+	private static final String P_ADAPTIVE = "adaptive";
+	private static final String P_ADAPTIVE_INTERVAL = "adaptiveIntervalInSeconds";
+	private static final String P_ADAPTIVE_MIN_POOLSIZE = "adaptiveMinPoolSize";
+	private static final String P_ADAPTIVE_MAX_POOLSIZE = "adaptiveMaxPoolSize";
+
+	private static final String MODE_POOL = "pool";
+	private static final String MODE_VIRTUAL = "virtual";
+	private static final String MODE_FORK_JOIN = "forkJoin";
+
+	private final KeyedExecutor m_keyedExecutor = new KeyedExecutor(this);
+	private IScheduler m_scheduler;
+	private IProfiledExecutor m_executor;
+	private PoolSizeController m_sizeController;
 	private int m_queueCapacity = 8192;
 	private int m_terminationWaitTime = 60;
 
+	// Runs the rejected request in the caller's thread as CallerRunsPolicy
+	// does, but rejects it instead of discarding it once the executor is shut
+	// down.
+	static final class CallerRunsOrAbortPolicy implements RejectedExecutionHandler {
+
+		static final CallerRunsOrAbortPolicy INST = new CallerRunsOrAbortPolicy();
+
+		private CallerRunsOrAbortPolicy() {
+		}
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown())
+				throw new RejectedExecutionException("Executor is shut down");
+			r.run();
+		}
+	}
+
 	@Override
 	public int getCorePoolSize() {
-		return m_executor.getCorePoolSize();
+		final IProfiledExecutor executor = m_executor;
+		if (executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) executor).getCorePoolSize();
+		if (executor instanceof ForkJoinExecutor)
+			return ((ForkJoinExecutor) executor).getParallelism();
+		return ((VirtualThreadExecutor) executor).getMaxConcurrency();
 	}
 
 	@Override
 	public int getMaxPoolSize() {
-		return m_executor.getMaximumPoolSize();
+		final IProfiledExecutor executor = m_executor;
+		if (executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+		if (executor instanceof ForkJoinExecutor)
+			return ((ForkJoinExecutor) executor).getParallelism();
+		return ((VirtualThreadExecutor) executor).getMaxConcurrency();
 	}
 
 	@Override
 	public int getKeepAliveTime() {
-		return (int) m_executor.getKeepAliveTime(TimeUnit.SECONDS);
+		final IProfiledExecutor executor = m_executor;
+		if (executor instanceof ThreadPoolExecutor)
+			return (int) ((ThreadPoolExecutor) executor).getKeepAliveTime(TimeUnit.SECONDS);
+		return 0;
 	}
 
 	@Override
 	public int getQueueCapacity() {
-		return m_queueCapacity;
+		// Requests waiting in fork-join deques or for virtual threads to run
+		// are not bounded
+		return m_executor instanceof ThreadPoolExecutor ? m_queueCapacity : -1;
 	}
 
 	@Override
@@ -75,7 +126,7 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 
 	@Override
 	public int getCurrentQueueLength() {
-		return m_executor.getQueue().size();
+		return m_executor.getQueueLength();
 	}
 
 	@Override
@@ -85,7 +136,7 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 
 	@Override
 	public void startProfiling() {
-		m_executor.startProfiling(m_queueCapacity);
+		m_executor.startProfiling();
 	}
 
 	@Override
@@ -118,6 +169,21 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 		return m_executor.getAverageResponseTime();
 	}
 
+	@Override
+	public double getServiceTimePercentile(double percentile) {
+		return m_executor.getServiceTimePercentile(percentile);
+	}
+
+	@Override
+	public double getTimeWaitingInPoolPercentile(double percentile) {
+		return m_executor.getTimeWaitingInPoolPercentile(percentile);
+	}
+
+	@Override
+	public double getResponseTimePercentile(double percentile) {
+		return m_executor.getResponseTimePercentile(percentile);
+	}
+
 	@Override
 	public double getEstimatedAverageNumberOfActiveRequests() {
 		return m_executor.getEstimatedAverageNumberOfActiveRequests();
@@ -135,22 +201,82 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 
 	@Override
 	public void execute(Runnable command) {
-		m_executor.execute(command);
+		final IProfiledExecutor executor = m_executor;
+		if (executor == null)
+			throw new RejectedExecutionException("ExecutorService is not active");
+		executor.execute(command);
+	}
+
+	@Override
+	public void execute(Object key, Runnable command) {
+		m_keyedExecutor.execute(key, command);
+	}
+
+	/**
+	 * Returns the latest decisions of the adaptive pool sizing, oldest first,
+	 * or null if it is off.
+	 */
+	public String[] getSizingDecisions() {
+		final PoolSizeController sizeController = m_sizeController;
+		return sizeController == null ? null : sizeController.decisions();
 	}
 
 	@Override
 	public void dump(StringBuilder builder) {
-		final ThreadPoolExecutor executor = m_executor;
-		builder.append("{" + P_CORE_POOLSIZE + "=").append(executor.getCorePoolSize())
+		final IProfiledExecutor ipe = m_executor;
+		if (ipe instanceof VirtualThreadExecutor) {
+			builder.append("{" + P_MODE + "=" + MODE_VIRTUAL + ", " + P_MAX_CONCURRENCY + "=")
+					.append(((VirtualThreadExecutor) ipe).getMaxConcurrency()).append(", " + P_TERM_WAITTIME + "=")
+					.append(m_terminationWaitTime).append('}');
+			return;
+		}
+
+		if (ipe instanceof ForkJoinExecutor) {
+			builder.append("{" + P_MODE + "=" + MODE_FORK_JOIN + ", " + P_CORE_POOLSIZE + "=")
+					.append(((ForkJoinExecutor) ipe).getParallelism()).append(", " + P_TERM_WAITTIME + "=")
+					.append(m_terminationWaitTime).append('}');
+			return;
+		}
+
+		final ThreadPoolExecutor executor = (ThreadPoolExecutor) ipe;
+		builder.append("{" + P_MODE + "=" + MODE_POOL + ", " + P_CORE_POOLSIZE + "=").append(executor.getCorePoolSize())
 				.append(", " + P_MAX_POOLSIZE + "=").append(executor.getMaximumPoolSize())
 				.append(", " + P_KEEPALIVE_TIME + "=").append(executor.getKeepAliveTime(TimeUnit.SECONDS))
 				.append(", " + P_QUEUE_CAPACITY + "=").append(m_queueCapacity).append(", " + P_TERM_WAITTIME + "=")
-				.append(m_terminationWaitTime).append('}');
+				.append(m_terminationWaitTime);
+		final PoolSizeController sizeController = m_sizeController;
+		if (sizeController != null)
+			builder.append(", " + P_ADAPTIVE_MIN_POOLSIZE + "=").append(sizeController.minPoolSize())
+					.append(", " + P_ADAPTIVE_MAX_POOLSIZE + "=").append(sizeController.maxPoolSize());
+		builder.append('}');
+	}
+
+	@Reference(name = "scheduler")
+	void setScheduler(IScheduler scheduler) {
+		m_scheduler = scheduler;
+	}
+
+	void unsetScheduler(IScheduler scheduler) {
+		m_scheduler = null;
 	}
 
 	@Modified
 	void modified(Map<String, ?> properties) throws Exception {
-		final ThreadPoolExecutor executor = m_executor;
+		stopSizeController();
+		final IProfiledExecutor ipe = m_executor;
+		final String mode = getMode(properties);
+		if (!MODE_POOL.equals(mode) || !(ipe instanceof RuyiThreadPoolExecutor)) {
+			m_executor = newExecutor(mode, properties);
+			m_queueCapacity = getQueueCapacity(properties);
+			m_terminationWaitTime = getTerminationWaitTime(properties);
+			ipe.shutdown();
+			startSizeController(properties);
+
+			c_logger.info(StrUtil.join("ExecutorService updated: ", this));
+			return;
+		}
+
+		final ThreadPoolExecutor executor = (ThreadPoolExecutor) ipe;
 		final int keepAliveTime = getKeepAliveTime(properties, (int) executor.getKeepAliveTime(TimeUnit.SECONDS));
 		final int corePoolSize = getCorePoolSize(properties);
 		final int maxPoolSize = getMaxPoolSize(properties, corePoolSize);
@@ -174,6 +300,7 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 		}
 
 		m_terminationWaitTime = terminationWaitTime;
+		startSizeController(properties);
 
 		c_logger.info(StrUtil.join("ExecutorService updated: ", this));
 	}
@@ -181,15 +308,13 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 	void activate(Map<String, ?> properties) throws Exception {
 		c_logger.info("Activating ExecutorService...");
 
-		final int keepAliveTime = getKeepAliveTime(properties, 10);
-		final int corePoolSize = getCorePoolSize(properties);
-		final int maxPoolSize = getMaxPoolSize(properties, corePoolSize);
 		final int queueCapacity = getQueueCapacity(properties);
 		final int terminationWaitTime = getTerminationWaitTime(properties);
 
-		m_executor = newExecutor(corePoolSize, maxPoolSize, keepAliveTime, queueCapacity);
+		m_executor = newExecutor(getMode(properties), properties);
 		m_queueCapacity = queueCapacity;
 		m_terminationWaitTime = terminationWaitTime;
+		startSizeController(properties);
 
 		c_logger.info(StrUtil.join("ExecutorService activated: ", this));
 	}
@@ -197,6 +322,7 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 	void deactivate() {
 		c_logger.info("Deactivating ExecutorService...");
 
+		stopSizeController();
 		try {
 			m_executor.shutdown();
 			if (m_executor.awaitTermination(m_terminationWaitTime, TimeUnit.SECONDS))
@@ -214,13 +340,77 @@ public final class ExecutorService implements Executor, IExecutorProfiler, IDump
 		}
 	}
 
+	private void startSizeController(Map<String, ?> properties) {
+		if (!Boolean.TRUE.equals(properties.get(P_ADAPTIVE)))
+			return;
+
+		final IProfiledExecutor executor = m_executor;
+		if (!(executor instanceof RuyiThreadPoolExecutor)) {
+			c_logger.warn(P_ADAPTIVE + " is ignored unless " + P_MODE + "=" + MODE_POOL);
+			return;
+		}
+
+		final PoolSizeController sizeController = new PoolSizeController((RuyiThreadPoolExecutor) executor,
+				getInt(properties, P_ADAPTIVE_MIN_POOLSIZE, Runtime.getRuntime().availableProcessors()), getInt(
+						properties, P_ADAPTIVE_MAX_POOLSIZE, 256));
+		sizeController.start(m_scheduler, getInt(properties, P_ADAPTIVE_INTERVAL, 10));
+		m_sizeController = sizeController;
+	}
+
+	private void stopSizeController() {
+		final PoolSizeController sizeController = m_sizeController;
+		if (sizeController != null) {
+			sizeController.stop();
+			m_sizeController = null;
+		}
+	}
+
+	private IProfiledExecutor newExecutor(String mode, Map<String, ?> properties) throws Exception {
+		if (MODE_VIRTUAL.equals(mode))
+			return VirtualThreadExecutor.create(getMaxConcurrency(properties));
+		if (MODE_FORK_JOIN.equals(mode))
+			return new ForkJoinExecutor(getCorePoolSize(properties));
+		return newExecutor(properties, getKeepAliveTime(properties, 10));
+	}
+
+	private RuyiThreadPoolExecutor newExecutor(Map<String, ?> properties, int keepAliveTime) throws Exception {
+		final int corePoolSize = getCorePoolSize(properties);
+		return newExecutor(corePoolSize, getMaxPoolSize(properties, corePoolSize), keepAliveTime,
+				getQueueCapacity(properties));
+	}
+
 	private static RuyiThreadPoolExecutor newExecutor(int corePoolSize, int maxPoolSize, long keepAliveTime,
 			int queueCapacity) {
 		return new RuyiThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.SECONDS,
 				queueCapacity < 0 ? new LinkedBlockingQueue<Runnable>()
 						: (queueCapacity > 0 ? new ArrayBlockingQueue<Runnable>(queueCapacity)
 								: new SynchronousQueue<Runnable>()), new PooledThreadFactory(),
-				new ThreadPoolExecutor.CallerRunsPolicy());
+				CallerRunsOrAbortPolicy.INST);
+	}
+
+	private static String getMode(Map<String, ?> properties) {
+		final Object mode = properties.get(P_MODE);
+		if (MODE_FORK_JOIN.equals(mode))
+			return MODE_FORK_JOIN;
+
+		if (!MODE_VIRTUAL.equals(mode))
+			return MODE_POOL;
+
+		if (VirtualThreadExecutor.isSupported())
+			return MODE_VIRTUAL;
+
+		c_logger.warn("Virtual threads are not supported by this JVM. Falling back to " + P_MODE + "=" + MODE_POOL);
+		return MODE_POOL;
+	}
+
+	private static int getInt(Map<String, ?> properties, String name, int defaultValue) {
+		final Integer value = (Integer) properties.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	private static int getMaxConcurrency(Map<String, ?> properties) {
+		final Integer maxConcurrency = (Integer) properties.get(P_MAX_CONCURRENCY);
+		return maxConcurrency == null ? 0 : maxConcurrency;
 	}
 
 	private static int getCorePoolSize(Map<String, ?> properties) {
@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruyi.tpe.internal.RuyiThreadPoolExecutor.InactiveProfile;
+import org.jruyi.tpe.internal.RuyiThreadPoolExecutor.Profiler;
+
+/**
+ * An executor backed by a {@code ForkJoinPool} in async mode. Each worker
+ * has its own deque that idle workers steal from. Requests submitted from a
+ * worker are pushed to its own deque instead of a queue shared by all.
+ */
+final class ForkJoinExecutor extends AbstractExecutorService implements IProfiledExecutor {
+
+	private final ForkJoinPool m_pool;
+	private volatile Profiler m_profile = InactiveProfile.get();
+
+	static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		private final AtomicLong m_sequence = new AtomicLong(-1);
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			final ForkJoinWorkerThread thread = new WorkerThread(pool);
+			thread.setName("jruyi-executor-fj-" + m_sequence.incrementAndGet());
+			return thread;
+		}
+	}
+
+	static final class WorkerThread extends ForkJoinWorkerThread {
+
+		WorkerThread(ForkJoinPool pool) {
+			super(pool);
+		}
+	}
+
+	ForkJoinExecutor(int parallelism) {
+		m_pool = new ForkJoinPool(parallelism, new WorkerThreadFactory(), null, true);
+	}
+
+	public int getParallelism() {
+		return m_pool.getParallelism();
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (command == null)
+			throw new NullPointerException();
+		m_pool.execute(m_profile.execute(command));
+	}
+
+	@Override
+	public void shutdown() {
+		m_pool.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return m_pool.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return m_pool.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return m_pool.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return m_pool.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public int getActiveCount() {
+		return m_pool.getActiveThreadCount();
+	}
+
+	@Override
+	public int getQueueLength() {
+		final ForkJoinPool pool = m_pool;
+		return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+	}
+
+	@Override
+	public void startProfiling() {
+		m_profile = m_profile.start();
+	}
+
+	@Override
+	public void stopProfiling() {
+		m_profile = m_profile.stop();
+	}
+
+	@Override
+	public boolean isProfiling() {
+		return m_profile.isProfiling();
+	}
+
+	@Override
+	public long getNumberOfRequestsRetired() {
+		return m_profile.getNumberOfRequestsRetired();
+	}
+
+	@Override
+	public double getRequestPerSecondRetirementRate() {
+		return m_profile.getRequestPerSecondRetirementRate();
+	}
+
+	@Override
+	public double getAverageServiceTime() {
+		return m_profile.getAverageServiceTime();
+	}
+
+	@Override
+	public double getAverageTimeWaitingInPool() {
+		return m_profile.getAverageTimeWaitingInPool();
+	}
+
+	@Override
+	public double getAverageResponseTime() {
+		return m_profile.getAverageResponseTime();
+	}
+
+	@Override
+	public double getServiceTimePercentile(double percentile) {
+		return m_profile.getServiceTimePercentile(percentile);
+	}
+
+	@Override
+	public double getTimeWaitingInPoolPercentile(double percentile) {
+		return m_profile.getTimeWaitingInPoolPercentile(percentile);
+	}
+
+	@Override
+	public double getResponseTimePercentile(double percentile) {
+		return m_profile.getResponseTimePercentile(percentile);
+	}
+
+	@Override
+	public double getEstimatedAverageNumberOfActiveRequests() {
+		return m_profile.getEstimatedAverageNumberOfActiveRequests();
+	}
+
+	@Override
+	public double getRatioOfDeadTimeToResponseTime() {
+		return m_profile.getRatioOfDeadTimeToResponseTime();
+	}
+
+	@Override
+	public double getRatioOfActiveRequestsToCoreCount() {
+		return m_profile.getRatioOfActiveRequestsToCoreCount();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+interface IProfiledExecutor extends java.util.concurrent.ExecutorService {
+
+	public void startProfiling();
+
+	public void stopProfiling();
+
+	public boolean isProfiling();
+
+	// the number of the requests being run
+	public int getActiveCount();
+
+	// the number of the requests waiting to be run
+	public int getQueueLength();
+
+	public long getNumberOfRequestsRetired();
+
+	public double getRequestPerSecondRetirementRate();
+
+	public double getAverageServiceTime();
+
+	public double getAverageTimeWaitingInPool();
+
+	public double getAverageResponseTime();
+
+	public double getServiceTimePercentile(double percentile);
+
+	public double getTimeWaitingInPoolPercentile(double percentile);
+
+	public double getResponseTimePercentile(double percentile);
+
+	public double getEstimatedAverageNumberOfActiveRequests();
+
+	public double getRatioOfDeadTimeToResponseTime();
+
+	public double getRatioOfActiveRequestsToCoreCount();
+}
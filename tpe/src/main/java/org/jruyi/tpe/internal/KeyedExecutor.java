@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jruyi.tpe.IKeyedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keys are hashed onto a fixed number of lanes. Each lane is a lock-free queue
+ * drained by at most one worker at a time, the one that claims the lane. A
+ * claimed lane runs up to {@link #MAX_BATCH_SIZE} requests before it gives the
+ * worker back to the executor so that busy lanes do not starve the others.
+ * Keys sharing a lane are ordered together.
+ * <p>
+ * If the executor refuses a lane, the thread holding the claim drains it in
+ * place, so the lane never stays claimed without a worker.
+ */
+final class KeyedExecutor implements IKeyedExecutor {
+
+	private static final Logger c_logger = LoggerFactory.getLogger(KeyedExecutor.class);
+
+	private static final int LANES = 1024;
+	private static final int MAX_BATCH_SIZE = 64;
+
+	private final Executor m_executor;
+	private final Lane[] m_lanes;
+
+	final class Lane implements Runnable {
+
+		private final ConcurrentLinkedQueue<Runnable> m_queue = new ConcurrentLinkedQueue<Runnable>();
+		private final AtomicBoolean m_claimed = new AtomicBoolean();
+
+		void offer(Runnable command) {
+			m_queue.offer(command);
+			if (claim() && !handOff())
+				run();
+		}
+
+		@Override
+		public void run() {
+			while (drain() && !handOff())
+				;
+		}
+
+		// Runs a batch and releases the claim. Returns true if this lane is
+		// claimed again for the requests left.
+		private boolean drain() {
+			final ConcurrentLinkedQueue<Runnable> queue = m_queue;
+			Runnable command;
+			for (int i = 0; i < MAX_BATCH_SIZE && (command = queue.poll()) != null; ++i) {
+				try {
+					command.run();
+				} catch (Throwable t) {
+					c_logger.error("Unexpected Error", t);
+				}
+			}
+
+			m_claimed.set(false);
+			// The requests offered after the last poll may have failed to
+			// claim this lane
+			return !queue.isEmpty() && claim();
+		}
+
+		// Returns false, with the claim still held, if the executor refuses
+		// this lane
+		private boolean handOff() {
+			try {
+				m_executor.execute(this);
+				return true;
+			} catch (RejectedExecutionException e) {
+				return false;
+			} catch (Throwable t) {
+				c_logger.error("Failed to hand a lane over to the executor", t);
+				return false;
+			}
+		}
+
+		private boolean claim() {
+			final AtomicBoolean claimed = m_claimed;
+			return !claimed.get() && claimed.compareAndSet(false, true);
+		}
+	}
+
+	KeyedExecutor(Executor executor) {
+		final Lane[] lanes = new Lane[LANES];
+		for (int i = 0; i < LANES; ++i)
+			lanes[i] = new Lane();
+		m_lanes = lanes;
+		m_executor = executor;
+	}
+
+	@Override
+	public void execute(Object key, Runnable command) {
+		if (command == null)
+			throw new NullPointerException();
+
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		m_lanes[h & (LANES - 1)].offer(command);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram of non-negative values, as HdrHistogram
+ * keeps them. Values below {@code 64} are counted exactly. Above, each power
+ * of 2 is split into 64 buckets, which bounds the relative error of the
+ * recorded values to about 1.6%.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long value) {
+		m_counts.getAndIncrement(index(value < 0L ? 0L : value));
+	}
+
+	/**
+	 * Returns the value at the given {@code percentile}, which is from 0 to
+	 * 100, or 0 if nothing is recorded.
+	 */
+	public long valueAt(double percentile) {
+		final AtomicLongArray counts = m_counts;
+		final long[] snapshot = new long[BUCKETS];
+		long total = 0L;
+		for (int i = 0; i < BUCKETS; ++i)
+			total += (snapshot[i] = counts.get(i));
+
+		if (total < 1L)
+			return 0L;
+
+		long rank = (long) Math.ceil(total * percentile / 100.0D);
+		if (rank < 1L)
+			rank = 1L;
+
+		long count = 0L;
+		for (int i = 0; i < BUCKETS; ++i) {
+			count += snapshot[i];
+			if (count >= rank)
+				return valueOf(i);
+		}
+		return valueOf(BUCKETS - 1);
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	// Returns the middle of the values counted in the given bucket
+	static long valueOf(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		final long lowest = (long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+		return lowest + ((1L << shift) >>> 1);
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jruyi.common.IScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resizes the thread pool periodically within {@code [minPoolSize,
+ * maxPoolSize]} from the profile of the last interval.
+ * <p>
+ * If requests hardly wait in pool, the pool is shrunk to what Little's law
+ * says is busy on average, {@code throughput * serviceTime}, plus a quarter.
+ * Otherwise, the pool is hill climbed on throughput: it keeps moving the same
+ * way while throughput goes up, turns back if throughput goes down, and
+ * gives up growing for a while if throughput stays flat. Growing goes straight
+ * to what Little's law says the arrivals need, {@code (throughput + queue
+ * growth rate) * serviceTime}, if that is larger than a step.
+ * <p>
+ * This controller turns the profiling of the executor on if it is off, and
+ * back off when stopped. While the profiling is stopped by an operator, the
+ * pool is not resized until it is started again.
+ */
+final class PoolSizeController implements Runnable {
+
+	private static final Logger c_logger = LoggerFactory.getLogger(PoolSizeController.class);
+
+	private static final int HISTORY = 16;
+	// throughput changes within 5% are taken as flat
+	private static final double TOLERANCE = 0.05D;
+	// requests waiting less than 10% of their response time are not short of
+	// threads
+	private static final double DEAD_TIME_THRESHOLD = 0.1D;
+	// intervals not to grow after growing did not help
+	private static final int COOLDOWN = 3;
+
+	private final RuyiThreadPoolExecutor m_executor;
+	private final int m_minPoolSize;
+	private final int m_maxPoolSize;
+	// how many threads maxPoolSize is above corePoolSize
+	private final int m_burst;
+	private final String[] m_decisions = new String[HISTORY];
+	private int m_numberOfDecisions;
+	private ScheduledFuture<?> m_future;
+	// whether the profiling was turned on by this controller
+	private boolean m_profiling;
+
+	// touched by the scheduler thread only
+	private long m_lastTime;
+	private long m_lastRetired;
+	private double m_lastServiceTime;
+	private double m_lastPoolTime;
+	private int m_lastQueueLength;
+	private double m_lastThroughput;
+	private int m_lastMove;
+	private int m_cooldown;
+
+	PoolSizeController(RuyiThreadPoolExecutor executor, int minPoolSize, int maxPoolSize) {
+		m_executor = executor;
+		m_minPoolSize = minPoolSize;
+		m_maxPoolSize = maxPoolSize;
+		m_burst = Math.max(0, executor.getMaximumPoolSize() - executor.getCorePoolSize());
+	}
+
+	synchronized void start(IScheduler scheduler, int intervalInSeconds) {
+		final RuyiThreadPoolExecutor executor = m_executor;
+		if (!executor.isProfiling()) {
+			executor.startProfiling();
+			m_profiling = true;
+		}
+		m_future = scheduler.scheduleAtFixedRate(this, intervalInSeconds, intervalInSeconds, TimeUnit.SECONDS);
+	}
+
+	synchronized void stop() {
+		final ScheduledFuture<?> future = m_future;
+		if (future != null) {
+			future.cancel(false);
+			m_future = null;
+		}
+
+		if (m_profiling) {
+			m_executor.stopProfiling();
+			m_profiling = false;
+		}
+	}
+
+	/**
+	 * Returns the latest decisions, oldest first.
+	 */
+	synchronized String[] decisions() {
+		final int n = Math.min(m_numberOfDecisions, HISTORY);
+		final String[] decisions = new String[n];
+		for (int i = 0, j = m_numberOfDecisions - n; i < n; ++i, ++j)
+			decisions[i] = m_decisions[j % HISTORY];
+		return decisions;
+	}
+
+	int minPoolSize() {
+		return m_minPoolSize;
+	}
+
+	int maxPoolSize() {
+		return m_maxPoolSize;
+	}
+
+	@Override
+	public void run() {
+		try {
+			adjust();
+		} catch (Throwable t) {
+			c_logger.error("Failed to adjust the pool size", t);
+		}
+	}
+
+	private void adjust() {
+		final RuyiThreadPoolExecutor executor = m_executor;
+		// stopped by an operator, to be sampled afresh once started again
+		if (!executor.isProfiling()) {
+			m_lastTime = 0L;
+			return;
+		}
+
+		final long now = System.nanoTime();
+		final long retired = executor.getNumberOfRequestsRetired();
+		final double serviceTime = retired > 0L ? retired * executor.getAverageServiceTime() : 0.0D;
+		final double poolTime = retired > 0L ? retired * executor.getAverageTimeWaitingInPool() : 0.0D;
+		final int queueLength = executor.getQueueLength();
+
+		final long lastTime = m_lastTime;
+		final long lastRetired = m_lastRetired;
+		final double lastServiceTime = m_lastServiceTime;
+		final double lastPoolTime = m_lastPoolTime;
+		final int lastQueueLength = m_lastQueueLength;
+		m_lastTime = now;
+		m_lastRetired = retired;
+		m_lastServiceTime = serviceTime;
+		m_lastPoolTime = poolTime;
+		m_lastQueueLength = queueLength;
+
+		// the first sample, or profiling restarted
+		if (lastTime == 0L || retired < lastRetired)
+			return;
+
+		final long n = retired - lastRetired;
+		// idle, nothing to learn from
+		if (n < 1L)
+			return;
+
+		final double interval = (now - lastTime) / 1000000000.0D;
+		final double x = n / interval;
+		final double s = (serviceTime - lastServiceTime) / n;
+		final double w = (poolTime - lastPoolTime) / n;
+		final int littleSize = (int) Math.ceil(x * s);
+		final int demandSize = (int) Math.ceil((x + (queueLength - lastQueueLength) / interval) * s);
+		final int size = executor.getCorePoolSize();
+
+		int target;
+		final String reason;
+		if (w < (w + s) * DEAD_TIME_THRESHOLD) {
+			target = littleSize + (littleSize >> 2) + 1;
+			if (target < size)
+				reason = "threads idle";
+			else {
+				target = size;
+				reason = null;
+			}
+		} else {
+			final int lastMove = m_lastMove;
+			final double lastThroughput = m_lastThroughput;
+			final int move;
+			if (lastMove == 0) {
+				move = m_cooldown > 0 ? 0 : 1;
+				reason = "requests waiting";
+			} else if (x > lastThroughput * (1.0D + TOLERANCE)) {
+				move = lastMove;
+				reason = "throughput up";
+			} else if (x < lastThroughput * (1.0D - TOLERANCE)) {
+				move = -lastMove;
+				reason = "throughput down";
+			} else {
+				move = lastMove > 0 ? -1 : 0;
+				if (move < 0)
+					m_cooldown = COOLDOWN + 1;
+				reason = "throughput flat";
+			}
+			target = size + move * Math.max(1, size >> 3);
+			if (move > 0 && demandSize > target)
+				target = demandSize;
+			else if (target < littleSize)
+				target = littleSize;
+		}
+
+		if (m_cooldown > 0)
+			--m_cooldown;
+
+		if (target < m_minPoolSize)
+			target = m_minPoolSize;
+		else if (target > m_maxPoolSize)
+			target = m_maxPoolSize;
+
+		m_lastMove = target > size ? 1 : (target < size ? -1 : 0);
+		m_lastThroughput = x;
+
+		if (target == size)
+			return;
+
+		resize(target);
+
+		final String decision = String.format(
+				"%tF %<tT corePoolSize %d -> %d, %s: throughput=%.1f/s, serviceTime=%.6fs, timeWaitingInPool=%.6fs, littleSize=%d, demandSize=%d",
+				new Date(), size, target, reason, x, s, w, littleSize, demandSize);
+		synchronized (this) {
+			m_decisions[m_numberOfDecisions++ % HISTORY] = decision;
+		}
+		c_logger.info(decision);
+	}
+
+	private void resize(int corePoolSize) {
+		final RuyiThreadPoolExecutor executor = m_executor;
+		final int maxPoolSize = corePoolSize + m_burst;
+		if (corePoolSize > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxPoolSize);
+			executor.setCorePoolSize(corePoolSize);
+		} else {
+			executor.setCorePoolSize(corePoolSize);
+			executor.setMaximumPoolSize(maxPoolSize);
+		}
+	}
+}
@@ -13,33 +13,26 @@
  */
 package org.jruyi.tpe.internal;
 
-import java.util.IdentityHashMap;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
 
-public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
+public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor implements IProfiledExecutor {
 
-	private Profiler m_profile = InactiveProfile.get();
+	private volatile Profiler m_profile = InactiveProfile.get();
 
 	interface Profiler {
 
-		public Profiler start(int queueCapacity);
+		public Profiler start();
 
 		public Profiler stop();
 
 		public boolean isProfiling();
 
-		public void beforeExecute();
-
-		public void execute(Runnable task);
-
-		public void afterExecute(Runnable task);
+		// Returns the request to be run in place of the given one
+		public Runnable execute(Runnable command);
 
 		public long getNumberOfRequestsRetired();
 
@@ -51,6 +44,12 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 
 		public double getAverageResponseTime();
 
+		public double getServiceTimePercentile(double percentile);
+
+		public double getTimeWaitingInPoolPercentile(double percentile);
+
+		public double getResponseTimePercentile(double percentile);
+
 		public double getEstimatedAverageNumberOfActiveRequests();
 
 		public double getRatioOfDeadTimeToResponseTime();
@@ -70,8 +69,8 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 		}
 
 		@Override
-		public Profiler start(int queueCapacity) {
-			return ActiveProfile.get(queueCapacity);
+		public Profiler start() {
+			return ActiveProfile.get();
 		}
 
 		@Override
@@ -85,15 +84,8 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 		}
 
 		@Override
-		public void beforeExecute() {
-		}
-
-		@Override
-		public void execute(Runnable task) {
-		}
-
-		@Override
-		public void afterExecute(Runnable task) {
+		public Runnable execute(Runnable command) {
+			return command;
 		}
 
 		@Override
@@ -121,6 +113,21 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 			return 0.0D;
 		}
 
+		@Override
+		public double getServiceTimePercentile(double percentile) {
+			return 0.0D;
+		}
+
+		@Override
+		public double getTimeWaitingInPoolPercentile(double percentile) {
+			return 0.0D;
+		}
+
+		@Override
+		public double getResponseTimePercentile(double percentile) {
+			return 0.0D;
+		}
+
 		@Override
 		public double getEstimatedAverageNumberOfActiveRequests() {
 			return 0.0D;
@@ -137,36 +144,37 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 		}
 	}
 
+	/**
+	 * Each request carries its own arrival time in a {@link ProfiledRequest}
+	 * and reports its times when it retires. No lock is taken and nothing but
+	 * the request wrapper is allocated.
+	 */
 	static final class ActiveProfile implements Profiler {
 
-		private final IdentityHashMap<Runnable, BlockingQueue<Long>> m_timeOfRequest;
-		private final ThreadLocal<Long> m_startTime;
-		private final AtomicLong m_aggregateInterRequestArrivalTime;
-		private final AtomicLong m_totalServiceTime;
-		private final AtomicLong m_totalPoolTime;
-		private final AtomicLong m_numberOfRequestsRetired;
-		private final ReentrantLock m_lock;
-		private Long m_lastArrivalTime;
+		private final long m_startTime;
+		private final StripedCounter m_totalServiceTime;
+		private final StripedCounter m_totalPoolTime;
+		private final StripedCounter m_numberOfRequestsRetired;
+		private final LatencyHistogram m_serviceTimes;
+		private final LatencyHistogram m_poolTimes;
+		private final LatencyHistogram m_responseTimes;
 
-		private ActiveProfile(int queueCapacity) {
-			m_startTime = new ThreadLocal<Long>();
-			if (queueCapacity < 1)
-				queueCapacity = 6000;
-			m_timeOfRequest = new IdentityHashMap<Runnable, BlockingQueue<Long>>(
-					queueCapacity);
-			m_totalServiceTime = new AtomicLong();
-			m_totalPoolTime = new AtomicLong();
-			m_aggregateInterRequestArrivalTime = new AtomicLong();
-			m_numberOfRequestsRetired = new AtomicLong();
-			m_lock = new ReentrantLock();
+		private ActiveProfile() {
+			m_startTime = System.nanoTime();
+			m_totalServiceTime = new StripedCounter();
+			m_totalPoolTime = new StripedCounter();
+			m_numberOfRequestsRetired = new StripedCounter();
+			m_serviceTimes = new LatencyHistogram();
+			m_poolTimes = new LatencyHistogram();
+			m_responseTimes = new LatencyHistogram();
 		}
 
-		public static ActiveProfile get(int queueCapacity) {
-			return new ActiveProfile(queueCapacity);
+		public static ActiveProfile get() {
+			return new ActiveProfile();
 		}
 
 		@Override
-		public Profiler start(int queueCapacity) {
+		public Profiler start() {
 			return this;
 		}
 
@@ -181,79 +189,39 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 		}
 
 		@Override
-		public void execute(Runnable task) {
-			final Long lastArrivalTime;
-			final long now = System.nanoTime();
-			final ReentrantLock lock = m_lock;
-			lock.lock();
-			try {
-				lastArrivalTime = m_lastArrivalTime;
-				m_lastArrivalTime = now;
-				BlockingQueue<Long> queue = m_timeOfRequest.get(task);
-				if (queue == null) {
-					queue = new LinkedBlockingQueue<Long>();
-					m_timeOfRequest.put(task, queue);
-				}
-				queue.offer(now);
-			} finally {
-				lock.unlock();
-			}
-
-			if (lastArrivalTime != null)
-				m_aggregateInterRequestArrivalTime.addAndGet(now
-						- lastArrivalTime);
-		}
-
-		@Override
-		public void beforeExecute() {
-			m_startTime.set(System.nanoTime());
+		public Runnable execute(Runnable command) {
+			return new ProfiledRequest(command, this, System.nanoTime());
 		}
 
-		@Override
-		public void afterExecute(Runnable task) {
-			Long startTime = m_startTime.get();
-			if (startTime == null)
-				return;
-
-			final Long enqueueTime;
-			final BlockingQueue<Long> queue;
-			final ReentrantLock lock = m_lock;
-			lock.lock();
-			try {
-				queue = m_timeOfRequest.get(task);
-				enqueueTime = queue.poll();
-				if (queue.isEmpty())
-					m_timeOfRequest.remove(task);
-			} finally {
-				lock.unlock();
-			}
-
-			m_totalServiceTime.addAndGet(System.nanoTime() - startTime);
-			m_totalPoolTime.addAndGet(startTime - enqueueTime);
-			m_numberOfRequestsRetired.incrementAndGet();
+		void retire(long arrivalTime, long startTime, long endTime) {
+			final long serviceTime = endTime - startTime;
+			final long poolTime = startTime - arrivalTime;
+			m_totalServiceTime.add(serviceTime);
+			m_totalPoolTime.add(poolTime);
+			m_numberOfRequestsRetired.increment();
+			m_serviceTimes.record(serviceTime);
+			m_poolTimes.record(poolTime);
+			m_responseTimes.record(endTime - arrivalTime);
 		}
 
 		@Override
 		public long getNumberOfRequestsRetired() {
-			return m_numberOfRequestsRetired.longValue();
+			return m_numberOfRequestsRetired.sum();
 		}
 
 		@Override
 		public double getRequestPerSecondRetirementRate() {
-			return m_numberOfRequestsRetired.doubleValue()
-					/ fromNanoToSeconds(m_aggregateInterRequestArrivalTime);
+			return m_numberOfRequestsRetired.sum() / fromNanoToSeconds(System.nanoTime() - m_startTime);
 		}
 
 		@Override
 		public double getAverageServiceTime() {
-			return fromNanoToSeconds(m_totalServiceTime)
-					/ m_numberOfRequestsRetired.doubleValue();
+			return fromNanoToSeconds(m_totalServiceTime.sum()) / m_numberOfRequestsRetired.sum();
 		}
 
 		@Override
 		public double getAverageTimeWaitingInPool() {
-			return fromNanoToSeconds(m_totalPoolTime)
-					/ m_numberOfRequestsRetired.doubleValue();
+			return fromNanoToSeconds(m_totalPoolTime.sum()) / m_numberOfRequestsRetired.sum();
 		}
 
 		@Override
@@ -261,26 +229,62 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 			return getAverageServiceTime() + getAverageTimeWaitingInPool();
 		}
 
+		@Override
+		public double getServiceTimePercentile(double percentile) {
+			return fromNanoToSeconds(m_serviceTimes.valueAt(percentile));
+		}
+
+		@Override
+		public double getTimeWaitingInPoolPercentile(double percentile) {
+			return fromNanoToSeconds(m_poolTimes.valueAt(percentile));
+		}
+
+		@Override
+		public double getResponseTimePercentile(double percentile) {
+			return fromNanoToSeconds(m_responseTimes.valueAt(percentile));
+		}
+
 		@Override
 		public double getEstimatedAverageNumberOfActiveRequests() {
-			return getRequestPerSecondRetirementRate()
-					* (getAverageServiceTime() + getAverageTimeWaitingInPool());
+			return getRequestPerSecondRetirementRate() * (getAverageServiceTime() + getAverageTimeWaitingInPool());
 		}
 
 		@Override
 		public double getRatioOfDeadTimeToResponseTime() {
-			double poolTime = m_totalPoolTime.doubleValue();
-			return poolTime / (poolTime + m_totalServiceTime.doubleValue());
+			final double poolTime = m_totalPoolTime.sum();
+			return poolTime / (poolTime + m_totalServiceTime.sum());
 		}
 
 		@Override
 		public double getRatioOfActiveRequestsToCoreCount() {
-			return getEstimatedAverageNumberOfActiveRequests()
-					/ (double) Runtime.getRuntime().availableProcessors();
+			return getEstimatedAverageNumberOfActiveRequests() / (double) Runtime.getRuntime().availableProcessors();
+		}
+
+		private static double fromNanoToSeconds(long nano) {
+			return nano / 1000000000.0D;
+		}
+	}
+
+	static final class ProfiledRequest implements Runnable {
+
+		private final Runnable m_command;
+		private final ActiveProfile m_profile;
+		private final long m_arrivalTime;
+
+		ProfiledRequest(Runnable command, ActiveProfile profile, long arrivalTime) {
+			m_command = command;
+			m_profile = profile;
+			m_arrivalTime = arrivalTime;
 		}
 
-		private static double fromNanoToSeconds(AtomicLong nano) {
-			return nano.doubleValue() / 1000000000.0D;
+		@Override
+		public void run() {
+			final long startTime = System.nanoTime();
+			try {
+				m_command.run();
+			} finally {
+				m_profile.retire(m_arrivalTime, startTime, System.nanoTime());
+			}
 		}
 	}
 
@@ -292,67 +296,84 @@ public final class RuyiThreadPoolExecutor extends ThreadPoolExecutor {
 				threadFactory, handler);
 	}
 
-	@Override
-	protected void beforeExecute(Thread t, Runnable r) {
-		super.beforeExecute(t, r);
-		m_profile.beforeExecute();
-	}
-
 	@Override
 	public void execute(Runnable command) {
-		m_profile.execute(command);
-		super.execute(command);
+		if (command == null)
+			throw new NullPointerException();
+		super.execute(m_profile.execute(command));
 	}
 
 	@Override
-	protected void afterExecute(Runnable r, Throwable t) {
-		try {
-			m_profile.afterExecute(r);
-		} finally {
-			super.afterExecute(r, t);
-		}
+	public int getQueueLength() {
+		return getQueue().size();
 	}
 
-	public void startProfiling(int queueCapacity) {
-		m_profile = m_profile.start(queueCapacity);
+	@Override
+	public void startProfiling() {
+		m_profile = m_profile.start();
 	}
 
+	@Override
 	public void stopProfiling() {
 		m_profile = m_profile.stop();
 	}
 
+	@Override
 	public long getNumberOfRequestsRetired() {
 		return m_profile.getNumberOfRequestsRetired();
 	}
 
+	@Override
 	public double getRequestPerSecondRetirementRate() {
 		return m_profile.getRequestPerSecondRetirementRate();
 	}
 
+	@Override
 	public double getAverageServiceTime() {
 		return m_profile.getAverageServiceTime();
 	}
 
+	@Override
 	public double getAverageTimeWaitingInPool() {
 		return m_profile.getAverageTimeWaitingInPool();
 	}
 
+	@Override
 	public double getAverageResponseTime() {
 		return m_profile.getAverageResponseTime();
 	}
 
+	@Override
+	public double getServiceTimePercentile(double percentile) {
+		return m_profile.getServiceTimePercentile(percentile);
+	}
+
+	@Override
+	public double getTimeWaitingInPoolPercentile(double percentile) {
+		return m_profile.getTimeWaitingInPoolPercentile(percentile);
+	}
+
+	@Override
+	public double getResponseTimePercentile(double percentile) {
+		return m_profile.getResponseTimePercentile(percentile);
+	}
+
+	@Override
 	public double getEstimatedAverageNumberOfActiveRequests() {
 		return m_profile.getEstimatedAverageNumberOfActiveRequests();
 	}
 
+	@Override
 	public double getRatioOfDeadTimeToResponseTime() {
 		return m_profile.getRatioOfDeadTimeToResponseTime();
 	}
 
+	@Override
 	public double getRatioOfActiveRequestsToCoreCount() {
 		return m_profile.getRatioOfActiveRequestsToCoreCount();
 	}
 
+	@Override
 	public boolean isProfiling() {
 		return m_profile.isProfiling();
 	}
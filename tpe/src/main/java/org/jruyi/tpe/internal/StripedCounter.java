@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spreading its updates over cells picked by thread ID, each on its
+ * own cache line, the way {@code LongAdder} does on Java 8.
+ */
+final class StripedCounter {
+
+	// 8 longs make a 64-byte cache line
+	private static final int STRIDE_SHIFT = 3;
+	private static final int CELLS;
+
+	static {
+		final int n = Runtime.getRuntime().availableProcessors() << 1;
+		int cells = 1;
+		while (cells < n)
+			cells <<= 1;
+		CELLS = cells;
+	}
+
+	private final AtomicLongArray m_cells = new AtomicLongArray(CELLS << STRIDE_SHIFT);
+
+	public void add(long x) {
+		m_cells.getAndAdd(((int) Thread.currentThread().getId() & (CELLS - 1)) << STRIDE_SHIFT, x);
+	}
+
+	public void increment() {
+		add(1L);
+	}
+
+	public long sum() {
+		final AtomicLongArray cells = m_cells;
+		long sum = 0L;
+		for (int i = 0; i < CELLS; ++i)
+			sum += cells.get(i << STRIDE_SHIFT);
+		return sum;
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.tpe.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jruyi.tpe.internal.RuyiThreadPoolExecutor.InactiveProfile;
+import org.jruyi.tpe.internal.RuyiThreadPoolExecutor.Profiler;
+
+/**
+ * An executor running each request on a new virtual thread. If
+ * {@code maxConcurrency} is positive, at most {@code maxConcurrency} requests
+ * are run at the same time. The others wait for a permit on their own virtual
+ * threads, so {@link #execute(Runnable)} never blocks.
+ * <p>
+ * Virtual threads are looked up reflectively as this bundle is built for Java
+ * 7. {@link #create(int)} throws {@code UnsupportedOperationException} if the
+ * running JVM does not provide them.
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService implements IProfiledExecutor {
+
+	private final ThreadFactory m_threadFactory;
+	// null if not bounded
+	private final Semaphore m_permits;
+	private final int m_maxConcurrency;
+	private final AtomicInteger m_active = new AtomicInteger();
+	private final AtomicInteger m_waiting = new AtomicInteger();
+	// the number of the requests accepted but not retired
+	private final AtomicInteger m_pending = new AtomicInteger();
+	private final CountDownLatch m_terminated = new CountDownLatch(1);
+	private volatile Profiler m_profile = InactiveProfile.get();
+	private volatile boolean m_shutdown;
+
+	final class Request implements Runnable {
+
+		private final Runnable m_command;
+
+		Request(Runnable command) {
+			m_command = command;
+		}
+
+		@Override
+		public void run() {
+			final Semaphore permits = m_permits;
+			try {
+				if (permits != null) {
+					m_waiting.incrementAndGet();
+					permits.acquireUninterruptibly();
+					m_waiting.decrementAndGet();
+				}
+				m_active.incrementAndGet();
+				try {
+					m_command.run();
+				} finally {
+					m_active.decrementAndGet();
+					if (permits != null)
+						permits.release();
+				}
+			} finally {
+				retire();
+			}
+		}
+	}
+
+	VirtualThreadExecutor(ThreadFactory threadFactory, int maxConcurrency) {
+		m_threadFactory = threadFactory;
+		m_maxConcurrency = maxConcurrency;
+		m_permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+	}
+
+	static VirtualThreadExecutor create(int maxConcurrency) {
+		return new VirtualThreadExecutor(newVirtualThreadFactory(), maxConcurrency);
+	}
+
+	static boolean isSupported() {
+		try {
+			newVirtualThreadFactory();
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	public int getMaxConcurrency() {
+		return m_maxConcurrency;
+	}
+
+	// Requests coming after shutdown are rejected
+	@Override
+	public void execute(Runnable command) {
+		if (command == null)
+			throw new NullPointerException();
+
+		m_pending.incrementAndGet();
+		if (m_shutdown) {
+			retire();
+			throw new RejectedExecutionException("Executor is shut down");
+		}
+
+		try {
+			m_threadFactory.newThread(new Request(m_profile.execute(command))).start();
+		} catch (Throwable t) {
+			retire();
+			throw t;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		m_shutdown = true;
+		if (m_pending.get() == 0)
+			m_terminated.countDown();
+	}
+
+	// Running requests are not interrupted
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return m_shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return m_terminated.getCount() == 0L;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return m_terminated.await(timeout, unit);
+	}
+
+	@Override
+	public int getActiveCount() {
+		return m_active.get();
+	}
+
+	@Override
+	public int getQueueLength() {
+		return m_waiting.get();
+	}
+
+	@Override
+	public void startProfiling() {
+		m_profile = m_profile.start();
+	}
+
+	@Override
+	public void stopProfiling() {
+		m_profile = m_profile.stop();
+	}
+
+	@Override
+	public boolean isProfiling() {
+		return m_profile.isProfiling();
+	}
+
+	@Override
+	public long getNumberOfRequestsRetired() {
+		return m_profile.getNumberOfRequestsRetired();
+	}
+
+	@Override
+	public double getRequestPerSecondRetirementRate() {
+		return m_profile.getRequestPerSecondRetirementRate();
+	}
+
+	@Override
+	public double getAverageServiceTime() {
+		return m_profile.getAverageServiceTime();
+	}
+
+	@Override
+	public double getAverageTimeWaitingInPool() {
+		return m_profile.getAverageTimeWaitingInPool();
+	}
+
+	@Override
+	public double getAverageResponseTime() {
+		return m_profile.getAverageResponseTime();
+	}
+
+	@Override
+	public double getServiceTimePercentile(double percentile) {
+		return m_profile.getServiceTimePercentile(percentile);
+	}
+
+	@Override
+	public double getTimeWaitingInPoolPercentile(double percentile) {
+		return m_profile.getTimeWaitingInPoolPercentile(percentile);
+	}
+
+	@Override
+	public double getResponseTimePercentile(double percentile) {
+		return m_profile.getResponseTimePercentile(percentile);
+	}
+
+	@Override
+	public double getEstimatedAverageNumberOfActiveRequests() {
+		return m_profile.getEstimatedAverageNumberOfActiveRequests();
+	}
+
+	@Override
+	public double getRatioOfDeadTimeToResponseTime() {
+		return m_profile.getRatioOfDeadTimeToResponseTime();
+	}
+
+	@Override
+	public double getRatioOfActiveRequestsToCoreCount() {
+		return m_profile.getRatioOfActiveRequestsToCoreCount();
+	}
+
+	private void retire() {
+		if (m_pending.decrementAndGet() == 0 && m_shutdown)
+			m_terminated.countDown();
+	}
+
+	// Thread.ofVirtual().name("jruyi-vexecutor-", 0).factory()
+	private static ThreadFactory newVirtualThreadFactory() {
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builderClass.getMethod("name", String.class, long.class).invoke(builder, "jruyi-vexecutor-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Throwable t) {
+			throw new UnsupportedOperationException("Virtual threads are not supported", t);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.tpe.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of requests blocking for a while, as JDBC calls or
+ * file IO do, run by the thread pool against run by virtual threads. The
+ * executor is profiled to show the statistics still hold in both modes.
+ * <p>
+ * Usage:
+ * {@code BlockingTaskBenchmark [requests] [blockTimeInMillis] [corePoolSize] [maxConcurrency]}
+ */
+public final class BlockingTaskBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final long blockTime = args.length > 1 ? Long.parseLong(args[1]) : 10L;
+		final int corePoolSize = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		final int maxConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+		final Map<String, Object> pool = new HashMap<>();
+		pool.put("corePoolSize", corePoolSize);
+		pool.put("maxPoolSize", corePoolSize);
+
+		final Map<String, Object> virtual = new HashMap<>();
+		virtual.put("mode", "virtual");
+		virtual.put("maxConcurrency", maxConcurrency);
+
+		if (!VirtualThreadExecutor.isSupported())
+			System.out.println("Virtual threads are not supported by this JVM, only the pool is measured");
+
+		for (int round = 0; round < 3; ++round) {
+			run("pool", pool, requests, blockTime);
+			if (VirtualThreadExecutor.isSupported())
+				run("virtual", virtual, requests, blockTime);
+		}
+	}
+
+	private static void run(String name, Map<String, Object> properties, int requests, final long blockTime)
+			throws Exception {
+		final ExecutorService es = new ExecutorService();
+		es.activate(properties);
+		es.startProfiling();
+		try {
+			final CountDownLatch done = new CountDownLatch(requests);
+			final Runnable request = new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(blockTime);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			};
+
+			final long t = System.nanoTime();
+			for (int i = 0; i < requests; ++i)
+				es.execute(request);
+			done.await();
+			final long elapsed = System.nanoTime() - t;
+
+			System.out.printf(
+					"%s: %.0f requests/s, retired=%d, avgServiceTime=%.4fs, avgTimeWaitingInPool=%.4fs, responseTime(p50/p99/p999)=%.4fs/%.4fs/%.4fs%n",
+					name, requests * 1e9 / elapsed, es.getNumberOfRequestsRetired(), es.getAverageServiceTime(),
+					es.getAverageTimeWaitingInPool(), es.getResponseTimePercentile(50), es.getResponseTimePercentile(99),
+					es.getResponseTimePercentile(99.9));
+		} finally {
+			es.deactivate();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.tpe.internal;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs requests keyed by session, each of which has to see the requests of
+ * its session in order.
+ * <ul>
+ * <li>locked: the requests are executed independently and each handler locks
+ * its session, which is what handlers had to do before, and still may see
+ * the requests out of order</li>
+ * <li>keyed: the requests are executed by session through
+ * {@code IKeyedExecutor}</li>
+ * </ul>
+ * <p>
+ * Usage: {@code KeyedExecutorBenchmark [requests] [sessions] [workInNanos]}
+ */
+public final class KeyedExecutorBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		final long work = args.length > 2 ? Long.parseLong(args[2]) : 2000L;
+
+		final ExecutorService es = new ExecutorService();
+		es.activate(new HashMap<String, Object>());
+		try {
+			for (int round = 0; round < 3; ++round) {
+				final Result locked = run(es, false, requests, sessions, work);
+				final Result keyed = run(es, true, requests, sessions, work);
+				System.out.printf(
+						"round %d: locked=%dns/request (%d out of order), keyed=%dns/request (%d out of order)%n",
+						round, locked.m_nanosPerRequest, locked.m_outOfOrder, keyed.m_nanosPerRequest,
+						keyed.m_outOfOrder);
+			}
+		} finally {
+			es.deactivate();
+		}
+	}
+
+	private static Result run(ExecutorService es, boolean keyed, int requests, int sessions, final long work)
+			throws InterruptedException {
+		final Session[] ss = new Session[sessions];
+		for (int i = 0; i < sessions; ++i)
+			ss[i] = new Session();
+
+		final CountDownLatch done = new CountDownLatch(requests);
+		final AtomicInteger outOfOrder = new AtomicInteger();
+		final long t = System.nanoTime();
+		for (int i = 0; i < requests; ++i) {
+			final Session session = ss[i % sessions];
+			final int seq = session.m_submitted++;
+			final Runnable request = new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (session) {
+						if (session.m_next++ != seq)
+							outOfOrder.incrementAndGet();
+						spin(work);
+					}
+					done.countDown();
+				}
+			};
+			if (keyed)
+				es.execute(session, request);
+			else
+				es.execute(request);
+		}
+		done.await();
+		return new Result((System.nanoTime() - t) / requests, outOfOrder.get());
+	}
+
+	static void spin(long nanos) {
+		final long deadline = System.nanoTime() + nanos;
+		while (System.nanoTime() < deadline)
+			;
+	}
+
+	static final class Session {
+
+		// touched by the submitter only
+		int m_submitted;
+		// touched under the lock of this session
+		int m_next;
+	}
+
+	static final class Result {
+
+		final long m_nanosPerRequest;
+		final int m_outOfOrder;
+
+		Result(long nanosPerRequest, int outOfOrder) {
+			m_nanosPerRequest = nanosPerRequest;
+			m_outOfOrder = outOfOrder;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.tpe.internal;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyedExecutorTest {
+
+	private static final int KEYS = 64;
+	private static final int REQUESTS_PER_KEY = 2000;
+
+	private ThreadPoolExecutor m_pool;
+
+	@Before
+	public void setUp() {
+		m_pool = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		m_pool.shutdownNow();
+		m_pool.awaitTermination(5L, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void test_perKeyFifo() throws Exception {
+		final KeyedExecutor executor = new KeyedExecutor(m_pool);
+		final Checker checker = new Checker(KEYS * REQUESTS_PER_KEY);
+		final Thread[] producers = new Thread[4];
+		for (int p = 0; p < producers.length; ++p) {
+			final int producer = p;
+			producers[p] = new Thread() {
+
+				@Override
+				public void run() {
+					// interleave the keys owned by this producer
+					for (int seq = 0; seq < REQUESTS_PER_KEY; ++seq) {
+						for (int key = producer; key < KEYS; key += producers.length)
+							executor.execute(key, checker.request(key, seq));
+					}
+				}
+			};
+		}
+		for (Thread producer : producers)
+			producer.start();
+		for (Thread producer : producers)
+			producer.join();
+
+		checker.await();
+	}
+
+	@Test
+	public void test_rejectingExecutor() throws Exception {
+		final Executor rejecting = new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+		final KeyedExecutor executor = new KeyedExecutor(rejecting);
+		final Checker checker = new Checker(KEYS * 10);
+		final Thread caller = Thread.currentThread();
+		for (int seq = 0; seq < 10; ++seq) {
+			for (int key = 0; key < KEYS; ++key) {
+				final Runnable request = checker.request(key, seq);
+				executor.execute(key, new Runnable() {
+
+					@Override
+					public void run() {
+						// run in place by the caller
+						Assert.assertSame(caller, Thread.currentThread());
+						request.run();
+					}
+				});
+			}
+		}
+
+		checker.await();
+	}
+
+	@Test
+	public void test_recoverFromRejection() throws Exception {
+		final AtomicInteger rejections = new AtomicInteger(100);
+		final Executor flaky = new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				if (rejections.getAndDecrement() > 0)
+					throw new RejectedExecutionException();
+				m_pool.execute(command);
+			}
+		};
+		final KeyedExecutor executor = new KeyedExecutor(flaky);
+		final Checker checker = new Checker(KEYS * REQUESTS_PER_KEY);
+		for (int seq = 0; seq < REQUESTS_PER_KEY; ++seq) {
+			for (int key = 0; key < KEYS; ++key)
+				executor.execute(key, checker.request(key, seq));
+		}
+
+		checker.await();
+		Assert.assertTrue(rejections.get() < 0);
+	}
+
+	@Test
+	public void test_shutdownExecutors() throws Exception {
+		final RuyiThreadPoolExecutor pool = new RuyiThreadPoolExecutor(1, 1, 10L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), Executors.defaultThreadFactory(),
+				ExecutorService.CallerRunsOrAbortPolicy.INST);
+		final VirtualThreadExecutor virtual = new VirtualThreadExecutor(Executors.defaultThreadFactory(), 0);
+		final IProfiledExecutor[] executors = { pool, virtual, new ForkJoinExecutor(1) };
+		for (IProfiledExecutor shutDown : executors) {
+			shutDown.shutdown();
+			try {
+				shutDown.execute(new Checker(1).request(0, 0));
+				Assert.fail("RejectedExecutionException expected: " + shutDown);
+			} catch (RejectedExecutionException e) {
+			}
+
+			// nothing is dropped by a keyed executor over a shut-down executor
+			final KeyedExecutor executor = new KeyedExecutor(shutDown);
+			final Checker checker = new Checker(KEYS);
+			for (int key = 0; key < KEYS; ++key)
+				executor.execute(key, checker.request(key, 0));
+			checker.await();
+		}
+	}
+
+	// Checks that the requests of each key run one at a time in order
+	static final class Checker {
+
+		private final AtomicIntegerArray m_next = new AtomicIntegerArray(KEYS);
+		private final AtomicIntegerArray m_running = new AtomicIntegerArray(KEYS);
+		private final AtomicInteger m_errors = new AtomicInteger();
+		private final CountDownLatch m_latch;
+
+		Checker(int requests) {
+			m_latch = new CountDownLatch(requests);
+		}
+
+		Runnable request(final int key, final int seq) {
+			return new Runnable() {
+
+				@Override
+				public void run() {
+					if (!m_running.compareAndSet(key, 0, 1))
+						m_errors.incrementAndGet();
+					if (m_next.get(key) != seq)
+						m_errors.incrementAndGet();
+					m_next.set(key, seq + 1);
+					m_running.set(key, 0);
+					m_latch.countDown();
+				}
+			};
+		}
+
+		void await() throws InterruptedException {
+			Assert.assertTrue("Requests lost", m_latch.await(10L, TimeUnit.SECONDS));
+			Assert.assertEquals("Requests out of order", 0, m_errors.get());
+		}
+	}
+}
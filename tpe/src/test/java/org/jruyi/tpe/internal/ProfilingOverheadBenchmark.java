@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.tpe.internal;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures what profiling costs to submitters: producers submit short
+ * requests to the same executor with profiling stopped and then started.
+ * <p>
+ * Usage: {@code ProfilingOverheadBenchmark [requestsPerProducer]}
+ */
+public final class ProfilingOverheadBenchmark {
+
+	private static final int[] PRODUCERS = { 1, 4, 16 };
+
+	public static void main(String[] args) throws Exception {
+		final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		final HashMap<String, Object> properties = new HashMap<>();
+		properties.put("queueCapacity", -1);
+		final ExecutorService es = new ExecutorService();
+		es.activate(properties);
+		try {
+			for (int round = 0; round < 3; ++round) {
+				for (int producers : PRODUCERS) {
+					es.stopProfiling();
+					final long off = run(es, producers, requests);
+					es.startProfiling();
+					final long on = run(es, producers, requests);
+					System.out.printf("round %d, %d producers: off=%dns/request on=%dns/request, p99=%.6fs%n", round,
+							producers, off, on, es.getResponseTimePercentile(99));
+				}
+			}
+		} finally {
+			es.deactivate();
+		}
+	}
+
+	// Returns the average time per request in nanoseconds, from submission to
+	// the retirement of all
+	private static long run(final ExecutorService es, int producers, final int requests) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(producers * requests);
+		final Runnable request = new Runnable() {
+
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		};
+
+		final Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; ++i) {
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < requests; ++j)
+						es.execute(request);
+				}
+			};
+			threads[i].start();
+		}
+
+		final long t = System.nanoTime();
+		start.countDown();
+		done.await();
+		return (System.nanoTime() - t) / ((long) producers * requests);
+	}
+}
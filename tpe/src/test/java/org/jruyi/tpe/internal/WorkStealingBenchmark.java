@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jruyi.tpe.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of message hops the way the message engine runs
+ * them: the handler of each message, run by a worker, produces the next
+ * message, which is then executed from that worker. The pool mode puts every
+ * message to the queue shared by all the workers, while the forkJoin mode
+ * pushes it to the deque of the producing worker.
+ * <p>
+ * Usage:
+ * {@code WorkStealingBenchmark [messagesInFlight] [hopsPerMessage] [workInNanos]}
+ */
+public final class WorkStealingBenchmark {
+
+	private static final int[] WORKERS = { 8, 16, 32, 64 };
+
+	public static void main(String[] args) throws Exception {
+		final int inFlight = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		final int hops = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		final long work = args.length > 2 ? Long.parseLong(args[2]) : 500L;
+
+		System.out.println("Processors: " + Runtime.getRuntime().availableProcessors());
+		for (int round = 0; round < 3; ++round) {
+			for (int workers : WORKERS) {
+				final long pool = run("pool", workers, inFlight, hops, work);
+				final long forkJoin = run("forkJoin", workers, inFlight, hops, work);
+				System.out.printf("round %d, %d workers: pool=%d hops/s, forkJoin=%d hops/s%n", round, workers, pool,
+						forkJoin);
+			}
+		}
+	}
+
+	// Returns hops per second
+	private static long run(String mode, int workers, int inFlight, final int hops, final long work)
+			throws Exception {
+		final Map<String, Object> properties = new HashMap<>();
+		properties.put("mode", mode);
+		properties.put("corePoolSize", workers);
+		properties.put("maxPoolSize", workers);
+		final ExecutorService es = new ExecutorService();
+		es.activate(properties);
+		try {
+			final CountDownLatch done = new CountDownLatch(inFlight);
+			final long t = System.nanoTime();
+			for (int i = 0; i < inFlight; ++i)
+				es.execute(new Hop(es, done, hops, work));
+			done.await();
+			return (long) inFlight * hops * 1000000000L / (System.nanoTime() - t);
+		} finally {
+			es.deactivate();
+		}
+	}
+
+	static final class Hop implements Runnable {
+
+		private final ExecutorService m_es;
+		private final CountDownLatch m_done;
+		private final long m_work;
+		private int m_hopsLeft;
+
+		Hop(ExecutorService es, CountDownLatch done, int hops, long work) {
+			m_es = es;
+			m_done = done;
+			m_hopsLeft = hops;
+			m_work = work;
+		}
+
+		@Override
+		public void run() {
+			final long deadline = System.nanoTime() + m_work;
+			while (System.nanoTime() < deadline)
+				;
+
+			if (--m_hopsLeft > 0)
+				m_es.execute(this);
+			else
+				m_done.countDown();
+		}
+	}
+}